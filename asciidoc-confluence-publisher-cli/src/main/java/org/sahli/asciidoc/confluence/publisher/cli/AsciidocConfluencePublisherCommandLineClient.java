@@ -19,15 +19,20 @@ package org.sahli.asciidoc.confluence.publisher.cli;
 import org.asciidoctor.Attributes;
 import org.sahli.asciidoc.confluence.publisher.client.ConfluencePublisher;
 import org.sahli.asciidoc.confluence.publisher.client.ConfluencePublisherListener;
+import org.sahli.asciidoc.confluence.publisher.client.http.CachingConfluenceClient;
+import org.sahli.asciidoc.confluence.publisher.client.http.ConfluenceClient;
 import org.sahli.asciidoc.confluence.publisher.client.http.ConfluencePage;
 import org.sahli.asciidoc.confluence.publisher.client.http.ConfluenceRestClient;
+import org.sahli.asciidoc.confluence.publisher.client.http.RateLimitingConfluenceClient;
 import org.sahli.asciidoc.confluence.publisher.client.metadata.ConfluencePublisherMetadata;
 import org.sahli.asciidoc.confluence.publisher.client.metadata.ConfluencePublisherPublishStrategy;
+import org.sahli.asciidoc.confluence.publisher.client.metadata.ConfluencePublisherTarget;
 import org.sahli.asciidoc.confluence.publisher.converter.AsciidocConfluenceConverter;
 import org.sahli.asciidoc.confluence.publisher.converter.PageTitlePostProcessor;
 import org.sahli.asciidoc.confluence.publisher.converter.PrefixAndSuffixPageTitlePostProcessor;
 import org.sahli.asciidoc.confluence.publisher.converter.providers.AsciidocPagesStructureProvider;
 import org.sahli.asciidoc.confluence.publisher.converter.providers.FolderBasedAsciidocPagesStructureProvider;
+import org.sahli.asciidoc.confluence.publisher.converter.providers.GitChangedFiles;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
@@ -36,15 +41,24 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 
 import static java.nio.file.FileVisitResult.CONTINUE;
 import static java.nio.file.Files.*;
 import static java.util.Arrays.stream;
+import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
+import static org.sahli.asciidoc.confluence.publisher.client.http.ConfluenceRestClient.REQUEST_COMPRESSION_DISABLED;
 
 public class AsciidocConfluencePublisherCommandLineClient {
 
     private final static String ATTR_PREFIX = "attr:";
+    private final static String TARGET_PREFIX = "target.";
 
     public static void main(String[] args) throws Exception {
         String rootConfluenceUrl = mandatoryArgument("rootConfluenceUrl", args);
@@ -62,6 +76,20 @@ public class AsciidocConfluencePublisherCommandLineClient {
         Charset sourceEncoding = Charset.forName(optionalArgument("sourceEncoding", args).orElse("UTF-8"));
         String prefix = optionalArgument("pageTitlePrefix", args).orElse(null);
         String suffix = optionalArgument("pageTitleSuffix", args).orElse(null);
+        List<String> includes = listArgument("includes", args);
+        List<String> excludes = listArgument("excludes", args);
+        boolean pipelined = Boolean.parseBoolean(optionalArgument("pipelined", args).orElse("false"));
+        List<String> scope = listArgument("scope", args);
+        String changedSinceRevision = optionalArgument("changedSinceRevision", args).orElse(null);
+        Path journalFile = optionalArgument("journalFile", args).map(Paths::get).orElse(null);
+        String sharedAttachmentsPageTitle = optionalArgument("sharedAttachmentsPageTitle", args).orElse(null);
+        boolean optimizeImages = Boolean.parseBoolean(optionalArgument("optimizeImages", args).orElse("false"));
+        Integer maxImageWidth = optionalArgument("maxImageWidth", args).map(Integer::valueOf).orElse(null);
+        Path imageCacheFolder = optionalArgument("imageCacheFolder", args).map(Paths::get).orElse(null);
+        int requestCompressionThreshold = optionalArgument("requestCompressionThreshold", args).map(Integer::parseInt).orElse(REQUEST_COMPRESSION_DISABLED);
+        Double maxRequestsPerSecond = optionalArgument("maxRequestsPerSecond", args).map(Double::valueOf).orElse(null);
+        List<ConfluencePublisherTarget> additionalTargets = additionalTargets(args);
+        Optional<String> diagramCacheFolder = optionalArgument("diagramCacheFolder", args);
 
         String attrs = stream(args)
             .filter(attribute -> attribute.startsWith(ATTR_PREFIX))
@@ -70,17 +98,69 @@ public class AsciidocConfluencePublisherCommandLineClient {
             .reduce("", (identity, b) -> b, (a, b) -> a + " " + b);
 
         try {
-            AsciidocPagesStructureProvider asciidocPagesStructureProvider = new FolderBasedAsciidocPagesStructureProvider(documentationRootFolder, sourceEncoding);
+            AsciidocPagesStructureProvider asciidocPagesStructureProvider = new FolderBasedAsciidocPagesStructureProvider(documentationRootFolder, sourceEncoding, includes, excludes);
             PageTitlePostProcessor pageTitlePostProcessor = new PrefixAndSuffixPageTitlePostProcessor(prefix, suffix);
 
-            AsciidocConfluenceConverter asciidocConfluenceConverter = new AsciidocConfluenceConverter(spaceKey, ancestorId);
+            AsciidocConfluenceConverter asciidocConfluenceConverter = new AsciidocConfluenceConverter(spaceKey, ancestorId, sharedAttachmentsPageTitle, optimizeImages, maxImageWidth, imageCacheFolder);
             Attributes attributes = new Attributes(attrs);
-            ConfluencePublisherMetadata confluencePublisherMetadata = asciidocConfluenceConverter.convert(asciidocPagesStructureProvider, pageTitlePostProcessor, buildFolder, attributes);
-            confluencePublisherMetadata.setPublishStrategy(publishStrategy);
+            // the build folder is temporary, so the diagram cache is only kept across runs in an explicit folder
+            diagramCacheFolder.ifPresent((folder) -> attributes.setAttribute("diagram-cachedir", Paths.get(folder).toAbsolutePath().toString()));
+            ConfluenceRestClient confluenceRestClient = new ConfluenceRestClient(rootConfluenceUrl, username, password, requestCompressionThreshold);
+            ConfluenceClient confluenceClient = confluenceClient(confluenceRestClient, maxRequestsPerSecond);
+            Function<ConfluencePublisherTarget, ConfluenceClient> additionalTargetClientFactory = (target) -> confluenceClient(
+                    new ConfluenceRestClient(target.getRootConfluenceUrl(), target.getUsername(), target.getPassword(), requestCompressionThreshold), target.getMaxRequestsPerSecond());
 
-            ConfluenceRestClient confluenceClient = new ConfluenceRestClient(rootConfluenceUrl, username, password);
-            ConfluencePublisher confluencePublisher = new ConfluencePublisher(confluencePublisherMetadata, confluenceClient, new SystemOutLoggingConfluencePublisherListener());
-            confluencePublisher.publish();
+            if (changedSinceRevision != null && (pipelined || !scope.isEmpty())) {
+                throw new IllegalArgumentException("argument 'changedSinceRevision' cannot be combined with arguments 'scope' or 'pipelined'");
+            }
+
+            if (sharedAttachmentsPageTitle != null && (pipelined || !scope.isEmpty() || changedSinceRevision != null || publishStrategy == ConfluencePublisherPublishStrategy.REPLACE_ANCESTOR)) {
+                throw new IllegalArgumentException("argument 'sharedAttachmentsPageTitle' cannot be combined with arguments 'scope', 'changedSinceRevision', 'pipelined' or strategy 'REPLACE_ANCESTOR'");
+            }
+
+            List<String> scopePagePaths = scope.stream().filter((scopeEntry) -> scopeEntry.endsWith(".adoc")).collect(toList());
+            boolean scopeWithoutChildren = false;
+
+            if (changedSinceRevision != null) {
+                Optional<List<Path>> affectedPages = asciidocPagesStructureProvider.affectedPages(GitChangedFiles.changedFilesSince(documentationRootFolder, changedSinceRevision));
+
+                if (!affectedPages.isPresent()) {
+                    System.out.println("Pages affected by changes since '" + changedSinceRevision + "' cannot be determined, publishing all pages");
+                } else if (affectedPages.get().isEmpty()) {
+                    System.out.println("No pages affected by changes since '" + changedSinceRevision + "', skipping publishing");
+                    return;
+                } else {
+                    scopePagePaths = affectedPages.get().stream().map((page) -> page.toAbsolutePath().normalize().toString()).collect(toList());
+                    scopeWithoutChildren = true;
+                }
+            }
+
+            if (pipelined) {
+                if (!scope.isEmpty()) {
+                    throw new IllegalArgumentException("argument 'scope' is not supported for pipelined publishing");
+                }
+
+                ConfluencePublisherMetadata confluencePublisherMetadata = new ConfluencePublisherMetadata();
+                confluencePublisherMetadata.setSpaceKey(spaceKey);
+                confluencePublisherMetadata.setAncestorId(ancestorId);
+                confluencePublisherMetadata.setPublishStrategy(publishStrategy);
+                confluencePublisherMetadata.getAdditionalTargets().addAll(additionalTargets);
+
+                ConfluencePublisher confluencePublisher = new ConfluencePublisher(confluencePublisherMetadata, confluenceClient, new SystemOutLoggingConfluencePublisherListener(), journalFile, additionalTargetClientFactory);
+                confluencePublisher.publish((pageSink) -> asciidocConfluenceConverter.convert(asciidocPagesStructureProvider, pageTitlePostProcessor, emptyList(), buildFolder, attributes, pageSink));
+            } else {
+                List<String> scopePageTitles = scope.stream().filter((scopeEntry) -> !scopeEntry.endsWith(".adoc")).collect(toList());
+
+                ConfluencePublisherMetadata confluencePublisherMetadata = asciidocConfluenceConverter.convert(asciidocPagesStructureProvider, pageTitlePostProcessor, emptyList(), buildFolder, attributes, scopePagePaths, scopeWithoutChildren);
+                confluencePublisherMetadata.getScope().addAll(scopePageTitles);
+                confluencePublisherMetadata.setPublishStrategy(publishStrategy);
+                confluencePublisherMetadata.getAdditionalTargets().addAll(additionalTargets);
+
+                ConfluencePublisher confluencePublisher = new ConfluencePublisher(confluencePublisherMetadata, confluenceClient, new SystemOutLoggingConfluencePublisherListener(), journalFile, additionalTargetClientFactory);
+                confluencePublisher.publish();
+            }
+
+            System.out.println("Compressed transport: " + confluenceRestClient.transferStatistics());
         } finally {
             deleteDirectory(buildFolder);
         }
@@ -99,6 +179,68 @@ public class AsciidocConfluencePublisherCommandLineClient {
                 .findFirst();
     }
 
+    private static List<String> listArgument(String key, String[] args) {
+        return optionalArgument(key, args)
+                .map((value) -> stream(value.split(",")).map(String::trim).filter((item) -> !item.isEmpty()).collect(toList()))
+                .orElse(emptyList());
+    }
+
+    /**
+     * Collects the additional targets from the arguments of the form {@code target.<name>.<property>=<value>}, e.g.
+     * {@code target.mirror.rootConfluenceUrl=https://mirror.example.com}.
+     */
+    private static List<ConfluencePublisherTarget> additionalTargets(String[] args) {
+        Map<String, ConfluencePublisherTarget> targetsByName = new LinkedHashMap<>();
+
+        stream(args)
+                .filter((keyAndValue) -> keyAndValue.startsWith(TARGET_PREFIX) && keyAndValue.contains("="))
+                .forEach((keyAndValue) -> {
+                    String key = keyAndValue.substring(0, keyAndValue.indexOf('='));
+                    String value = keyAndValue.substring(keyAndValue.indexOf('=') + 1);
+                    int propertySeparatorIndex = key.lastIndexOf('.');
+                    if (propertySeparatorIndex <= TARGET_PREFIX.length()) {
+                        throw new IllegalArgumentException("argument '" + key + "' must be of the form 'target.<name>.<property>'");
+                    }
+
+                    String name = key.substring(TARGET_PREFIX.length(), propertySeparatorIndex);
+                    ConfluencePublisherTarget target = targetsByName.computeIfAbsent(name, (ignored) -> new ConfluencePublisherTarget());
+
+                    switch (key.substring(propertySeparatorIndex + 1)) {
+                        case "rootConfluenceUrl":
+                            target.setRootConfluenceUrl(value);
+                            break;
+                        case "username":
+                            target.setUsername(value);
+                            break;
+                        case "password":
+                            target.setPassword(value);
+                            break;
+                        case "spaceKey":
+                            target.setSpaceKey(value);
+                            break;
+                        case "ancestorId":
+                            target.setAncestorId(value);
+                            break;
+                        case "maxRequestsPerSecond":
+                            target.setMaxRequestsPerSecond(value.isEmpty() ? null : Double.valueOf(value));
+                            break;
+                        default:
+                            throw new IllegalArgumentException("argument '" + key + "' refers to an unknown target property");
+                    }
+                });
+
+        return new ArrayList<>(targetsByName.values());
+    }
+
+    private static ConfluenceClient confluenceClient(ConfluenceRestClient confluenceRestClient, Double maxRequestsPerSecond) {
+        ConfluenceClient confluenceClient = confluenceRestClient;
+        if (maxRequestsPerSecond != null) {
+            confluenceClient = new RateLimitingConfluenceClient(confluenceClient, maxRequestsPerSecond);
+        }
+
+        return new CachingConfluenceClient(confluenceClient);
+    }
+
     private static void deleteDirectory(Path buildFolder) throws IOException {
         walkFileTree(buildFolder, new SimpleFileVisitor<Path>() {
 
@@ -137,6 +279,11 @@ public class AsciidocConfluencePublisherCommandLineClient {
             System.out.println("Deleted page '" + deletedPage.getTitle() + "' (id " + deletedPage.getContentId() + ")");
         }
 
+        @Override
+        public void deletionProgress(int deletedPages, int pagesToDelete) {
+            System.out.println("Deleted " + deletedPages + " of " + pagesToDelete + " pages");
+        }
+
         @Override
         public void publishCompleted() {
             System.out.println("Documentation successfully published to Confluence");
@@ -17,10 +17,13 @@
 package org.sahli.asciidoc.confluence.publisher.client;
 
 import org.apache.commons.lang.StringUtils;
+import org.sahli.asciidoc.confluence.publisher.client.PublishingJournal.CompletedPage;
 import org.sahli.asciidoc.confluence.publisher.client.http.*;
 import org.sahli.asciidoc.confluence.publisher.client.metadata.ConfluencePageMetadata;
+import org.sahli.asciidoc.confluence.publisher.client.metadata.ConfluencePageMetadataProducer;
 import org.sahli.asciidoc.confluence.publisher.client.metadata.ConfluencePublisherMetadata;
 import org.sahli.asciidoc.confluence.publisher.client.metadata.ConfluencePublisherPublishStrategy;
+import org.sahli.asciidoc.confluence.publisher.client.metadata.ConfluencePublisherTarget;
 
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -28,15 +31,36 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
+import static java.util.Collections.reverseOrder;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
 import static java.util.stream.Collectors.toList;
 import static org.apache.commons.codec.digest.DigestUtils.sha256Hex;
 import static org.apache.commons.lang.StringUtils.isNotBlank;
+import static org.apache.http.HttpStatus.SC_CONFLICT;
 import static org.sahli.asciidoc.confluence.publisher.client.utils.AssertUtils.assertMandatoryParameter;
 import static org.sahli.asciidoc.confluence.publisher.client.utils.InputStreamUtils.fileContent;
 
@@ -48,25 +72,79 @@ public class ConfluencePublisher {
 
     static final String CONTENT_HASH_PROPERTY_KEY = "content-hash";
     static final int INITIAL_PAGE_VERSION = 1;
+    static final int DEFAULT_PAGE_QUEUE_CAPACITY = 16;
+    static final int DELETION_PARALLELISM = 4;
+    static final int ATTACHMENT_PARALLELISM_PER_PUBLICATION = 4;
+    static final int MAX_CONCURRENT_ATTACHMENT_SYNCHRONIZATIONS = 8;
+
+    // shared by all publishers, so that concurrent publications (e.g. to additional targets or of several modules in
+    // the same build) together synchronize at most MAX_CONCURRENT_ATTACHMENT_SYNCHRONIZATIONS attachments at once
+    static final Semaphore ATTACHMENT_SYNCHRONIZATION_PERMITS = new Semaphore(MAX_CONCURRENT_ATTACHMENT_SYNCHRONIZATIONS, true);
 
     private final ConfluencePublisherMetadata metadata;
     private final ConfluenceClient confluenceClient;
     private final ConfluencePublisherListener confluencePublisherListener;
+    private final Path journalFile;
+    private final Function<ConfluencePublisherTarget, ConfluenceClient> additionalTargetClientFactory;
+    private PublishingJournal journal = PublishingJournal.disabled();
+    private ExecutorService attachmentExecutor;
 
     public ConfluencePublisher(ConfluencePublisherMetadata metadata, ConfluenceClient confluenceClient) {
         this(metadata, confluenceClient, new NoOpConfluencePublisherListener());
     }
 
     public ConfluencePublisher(ConfluencePublisherMetadata metadata, ConfluenceClient confluenceClient, ConfluencePublisherListener confluencePublisherListener) {
+        this(metadata, confluenceClient, confluencePublisherListener, null);
+    }
+
+    /**
+     * Creates a publisher recording the completely published pages in the given journal file (if not {@code null}). If
+     * a publication fails, publishing the same pages again resumes it: pages recorded as completed that neither changed
+     * locally nor on Confluence since are not verified again. The journal file is deleted once a publication completes.
+     */
+    public ConfluencePublisher(ConfluencePublisherMetadata metadata, ConfluenceClient confluenceClient, ConfluencePublisherListener confluencePublisherListener, Path journalFile) {
+        this(metadata, confluenceClient, confluencePublisherListener, journalFile, ConfluencePublisher::defaultAdditionalTargetClient);
+    }
+
+    /**
+     * Creates a publisher using the given factory to create the clients for the additional targets of the metadata.
+     */
+    public ConfluencePublisher(ConfluencePublisherMetadata metadata, ConfluenceClient confluenceClient, ConfluencePublisherListener confluencePublisherListener, Path journalFile,
+                               Function<ConfluencePublisherTarget, ConfluenceClient> additionalTargetClientFactory) {
         this.metadata = metadata;
         this.confluenceClient = confluenceClient;
         this.confluencePublisherListener = confluencePublisherListener;
+        this.journalFile = journalFile;
+        this.additionalTargetClientFactory = additionalTargetClientFactory;
     }
 
     public void publish() {
         assertMandatoryParameter(isNotBlank(metadata.getSpaceKey()), "spaceKey");
         assertMandatoryParameter(isNotBlank(metadata.getAncestorId()), "ancestorId");
 
+        if (hasAdditionalTargets()) {
+            publishToAllTargets();
+            return;
+        }
+
+        this.attachmentExecutor = newFixedThreadPool(ATTACHMENT_PARALLELISM_PER_PUBLICATION);
+        try (PublishingJournal journal = openJournal(metadata.getPages())) {
+            this.journal = journal;
+            publishPages();
+            journal.publicationCompleted();
+        } finally {
+            this.journal = PublishingJournal.disabled();
+            this.attachmentExecutor.shutdownNow();
+        }
+    }
+
+    private void publishPages() {
+        if (metadata.getScope() != null && !metadata.getScope().isEmpty()) {
+            metadata.getScope().forEach(this::publishScope);
+            confluencePublisherListener.publishCompleted();
+            return;
+        }
+
         switch (metadata.getPublishStrategy()) {
             case APPEND_TO_ANCESTOR:
                 startPublishingUnderAncestorId(metadata.getPages(), metadata.getSpaceKey(), metadata.getAncestorId());
@@ -74,11 +152,7 @@ public class ConfluencePublisher {
             case REPLACE_ANCESTOR:
                 // verify that only a single root exists
                 if (metadata.getPages().size() > 1) {
-                    throw new IllegalArgumentException(String.format("Multiple root pages detected: %s. " +
-                        "Publishing to confluence with the %s strategy only allows a single root to be defined.",
-                        StringUtils.join(metadata.getPages().stream().map(page -> "'" + page.getTitle() + "'").collect(Collectors.toList()), ", "),
-                        ConfluencePublisherPublishStrategy.REPLACE_ANCESTOR.name())
-                    );
+                    throw multipleRootPagesException(metadata.getPages());
                 }
 
                 if (metadata.getPages().size() > 0) {
@@ -88,10 +162,7 @@ public class ConfluencePublisher {
                     startPublishingUnderAncestorId(rootPageMetaData.getChildren(), metadata.getSpaceKey(), metadata.getAncestorId());
 
                     // replace ancestor title with single root page title
-                    ConfluencePage rootPage = confluenceClient.getPageWithContentAndVersionById(metadata.getAncestorId());
-                    updatePage(rootPage, rootPageMetaData);
-                    deleteConfluenceAttachmentsNotPresentUnderPage(metadata.getAncestorId(), rootPageMetaData.getAttachments());
-                    addAttachments(metadata.getAncestorId(), rootPageMetaData.getAttachments());
+                    replaceAncestor(rootPageMetaData);
                 }
                 break;
             default:
@@ -100,102 +171,554 @@ public class ConfluencePublisher {
         confluencePublisherListener.publishCompleted();
     }
 
+    /**
+     * Publishes the pages as they are produced, like {@link #publish(ConfluencePageMetadataProducer, int)}, with at most
+     * 16 produced pages waiting to be published.
+     */
+    public void publish(ConfluencePageMetadataProducer pageProducer) {
+        publish(pageProducer, DEFAULT_PAGE_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Publishes the pages as they are produced, while the producer keeps producing the next pages in a separate thread.
+     * At most the given number of produced pages wait to be published, so that producing pages (e.g. converting them)
+     * overlaps with publishing them without buffering the whole page tree.
+     * <p>
+     * Pages existing on Confluence but no longer produced are deleted after all produced pages are published, and the
+     * pages of the publisher metadata are ignored. If producing pages fails, the pages published so far are kept, no
+     * pages are deleted and the failure is thrown as cause of the resulting exception. Scopes and additional targets
+     * of the metadata are not supported.
+     */
+    public void publish(ConfluencePageMetadataProducer pageProducer, int pageQueueCapacity) {
+        assertMandatoryParameter(isNotBlank(metadata.getSpaceKey()), "spaceKey");
+        assertMandatoryParameter(isNotBlank(metadata.getAncestorId()), "ancestorId");
+
+        if (metadata.getScope() != null && !metadata.getScope().isEmpty()) {
+            throw new IllegalArgumentException("Publishing a scope is not supported when publishing pages as they are produced");
+        }
+
+        if (hasAdditionalTargets()) {
+            throw new IllegalArgumentException("Publishing to additional targets is not supported when publishing pages as they are produced");
+        }
+
+        BlockingQueue<PageToPublish> pageQueue = new ArrayBlockingQueue<>(pageQueueCapacity);
+        ExecutorService pageProducerExecutor = newSingleThreadExecutor();
+        this.attachmentExecutor = newFixedThreadPool(ATTACHMENT_PARALLELISM_PER_PUBLICATION);
+
+        try (PublishingJournal journal = openJournal(emptyList())) {
+            this.journal = journal;
+
+            Future<?> pageProduction = pageProducerExecutor.submit(() -> {
+                try {
+                    pageProducer.produce((parentPage, page) -> enqueue(pageQueue, new PageToPublish(parentPage, page)));
+                } finally {
+                    enqueue(pageQueue, PageToPublish.END_OF_PAGES);
+                }
+            });
+
+            PipelinedPublication pipelinedPublication = new PipelinedPublication();
+            PageToPublish pageToPublish;
+            while ((pageToPublish = dequeue(pageQueue)) != PageToPublish.END_OF_PAGES) {
+                pipelinedPublication.publish(pageToPublish.parentPage, pageToPublish.page);
+            }
+
+            awaitPageProduction(pageProduction);
+            pipelinedPublication.deletePagesNotPublished();
+            journal.publicationCompleted();
+        } finally {
+            this.journal = PublishingJournal.disabled();
+            pageProducerExecutor.shutdownNow();
+            this.attachmentExecutor.shutdownNow();
+        }
+
+        confluencePublisherListener.publishCompleted();
+    }
+
+    private boolean hasAdditionalTargets() {
+        return metadata.getAdditionalTargets() != null && !metadata.getAdditionalTargets().isEmpty();
+    }
+
+    /**
+     * Publishes the pages to the space and ancestor of the metadata and to all additional targets concurrently, using
+     * a separate publisher and client per target. A failure to publish to one target does not stop the publication to
+     * the other targets.
+     */
+    private void publishToAllTargets() {
+        if (journalFile != null) {
+            throw new IllegalArgumentException("Publishing to additional targets is not supported with a journal file");
+        }
+
+        Map<String, ConfluencePublisher> publishersByTargetName = new LinkedHashMap<>();
+        publishersByTargetName.put("space '" + metadata.getSpaceKey() + "' under ancestor '" + metadata.getAncestorId() + "'",
+                new ConfluencePublisher(metadataForTarget(metadata.getSpaceKey(), metadata.getAncestorId()), confluenceClient, confluencePublisherListener));
+        metadata.getAdditionalTargets().forEach(target -> publishersByTargetName.put(target.getRootConfluenceUrl() + " space '" + target.getSpaceKey() + "' under ancestor '" + target.getAncestorId() + "'",
+                new ConfluencePublisher(metadataForTarget(target.getSpaceKey(), target.getAncestorId()), additionalTargetClientFactory.apply(target), confluencePublisherListener)));
+
+        ExecutorService targetExecutor = newFixedThreadPool(publishersByTargetName.size());
+        try {
+            Map<String, Future<?>> publications = new LinkedHashMap<>();
+            publishersByTargetName.forEach((targetName, publisher) -> publications.put(targetName, targetExecutor.submit(() -> publisher.publish())));
+
+            RuntimeException failure = null;
+            for (Map.Entry<String, Future<?>> publication : publications.entrySet()) {
+                try {
+                    awaitPublication(publication.getKey(), publication.getValue());
+                } catch (RuntimeException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            targetExecutor.shutdownNow();
+        }
+    }
+
+    private ConfluencePublisherMetadata metadataForTarget(String spaceKey, String ancestorId) {
+        ConfluencePublisherMetadata targetMetadata = new ConfluencePublisherMetadata();
+        targetMetadata.setSpaceKey(spaceKey);
+        targetMetadata.setAncestorId(ancestorId);
+        targetMetadata.setPages(metadata.getPages());
+        targetMetadata.setPublishStrategy(metadata.getPublishStrategy());
+        targetMetadata.setScope(metadata.getScope());
+        targetMetadata.setScopeWithoutChildren(metadata.isScopeWithoutChildren());
+
+        return targetMetadata;
+    }
+
+    private static void awaitPublication(String targetName, Future<?> publication) {
+        try {
+            publication.get();
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Could not publish to " + targetName, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Could not wait for publication to " + targetName, e);
+        }
+    }
+
+    private static ConfluenceClient defaultAdditionalTargetClient(ConfluencePublisherTarget target) {
+        ConfluenceClient targetClient = new ConfluenceRestClient(target.getRootConfluenceUrl(), target.getUsername(), target.getPassword());
+        if (target.getMaxRequestsPerSecond() != null) {
+            targetClient = new RateLimitingConfluenceClient(targetClient, target.getMaxRequestsPerSecond());
+        }
+
+        return new CachingConfluenceClient(targetClient);
+    }
+
+    private void publishScope(String scopePageTitle) {
+        List<ConfluencePageMetadata> pathToScopePage = pathToPage(metadata.getPages(), scopePageTitle);
+        if (pathToScopePage.isEmpty()) {
+            throw new IllegalArgumentException("Page '" + scopePageTitle + "' of scope not found");
+        }
+
+        // with the replace ancestor strategy, the single root page is published as the ancestor itself
+        List<ConfluencePageMetadata> pathUnderAncestor = pathToScopePage;
+        if (metadata.getPublishStrategy() == ConfluencePublisherPublishStrategy.REPLACE_ANCESTOR) {
+            if (metadata.getPages().size() > 1) {
+                throw multipleRootPagesException(metadata.getPages());
+            }
+
+            if (pathToScopePage.size() == 1) {
+                if (!metadata.isScopeWithoutChildren()) {
+                    startPublishingUnderAncestorId(pathToScopePage.get(0).getChildren(), metadata.getSpaceKey(), metadata.getAncestorId());
+                }
+
+                replaceAncestor(pathToScopePage.get(0));
+                return;
+            }
+
+            pathUnderAncestor = pathToScopePage.subList(1, pathToScopePage.size());
+        }
+
+        // resolve parent of scope page on confluence without touching any pages outside of the scope
+        String ancestorId = metadata.getAncestorId();
+        for (ConfluencePageMetadata parentPage : pathUnderAncestor.subList(0, pathUnderAncestor.size() - 1)) {
+            ancestorId = confluenceClient.getChildPages(ancestorId).stream()
+                .filter(childPage -> childPage.getTitle().equals(parentPage.getTitle()))
+                .map(ConfluencePage::getContentId)
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Parent page '" + parentPage.getTitle() + "' of page '" + scopePageTitle + "' of scope not published yet"));
+        }
+
+        ConfluencePageMetadata scopePage = pathUnderAncestor.get(pathUnderAncestor.size() - 1);
+        String contentId = publishPageUnderAncestorId(scopePage, confluenceClient.getChildPages(ancestorId), metadata.getSpaceKey(), ancestorId);
+        if (!metadata.isScopeWithoutChildren()) {
+            startPublishingUnderAncestorId(scopePage.getChildren(), metadata.getSpaceKey(), contentId);
+        }
+    }
+
+    private static List<ConfluencePageMetadata> pathToPage(List<ConfluencePageMetadata> pages, String title) {
+        for (ConfluencePageMetadata page : pages) {
+            if (page.getTitle().equals(title)) {
+                return singletonList(page);
+            }
+
+            List<ConfluencePageMetadata> pathFromChildren = pathToPage(page.getChildren(), title);
+            if (!pathFromChildren.isEmpty()) {
+                List<ConfluencePageMetadata> path = new ArrayList<>();
+                path.add(page);
+                path.addAll(pathFromChildren);
+
+                return path;
+            }
+        }
+
+        return emptyList();
+    }
+
+    /**
+     * Publishes the given pages and their children under the given ancestor. Existing pages are looked up by title in
+     * the whole page tree below the ancestor, so that a page moved to another parent is updated with its new parent
+     * instead of being deleted and added again (page titles are unique per space). Pages of the page tree that are not
+     * published are deleted afterwards, children first.
+     */
     private void startPublishingUnderAncestorId(List<ConfluencePageMetadata> pages, String spaceKey, String ancestorId) {
-        List<ConfluencePage> actualPages = deleteConfluencePagesNotPresentUnderAncestor(pages, ancestorId);
+        ConfluencePageTree pageTreeOnConfluence = pageTreeOnConfluence(ancestorId);
+        publishPagesUnderAncestorId(pages, pageTreeOnConfluence, spaceKey, ancestorId);
+
+        Set<String> publishedTitles = new HashSet<>();
+        collectTitles(pages, publishedTitles);
+        deleteConfluencePagesNotPublished(pageTreeOnConfluence, ancestorId, publishedTitles);
+    }
+
+    private void publishPagesUnderAncestorId(List<ConfluencePageMetadata> pages, ConfluencePageTree pageTreeOnConfluence, String spaceKey, String ancestorId) {
         pages.forEach(page -> {
-            // look for page in existing pages
-            String contentId;
-            ConfluencePage actualPage = actualPages.stream()
-                .filter(p -> p.getTitle().equals(page.getTitle()))
-                .reduce(null, (previousPage, newPage) -> {
-                    if (previousPage != null) {
-                        throw new MultipleResultsException();
-                    }
-                    return newPage;
-                });
-
-            if (actualPage != null) {
-                // update page when it already exists ...
-                contentId = actualPage.getContentId();
-                updatePage(actualPage, page);
-            } else {
-                // ... or add it when it doesn't exist yet
-                String content = fileContent(page.getContentFilePath(), UTF_8);
-                contentId = confluenceClient.addPageUnderAncestor(spaceKey, ancestorId, page.getTitle(), content);
-                confluenceClient.setPropertyByKey(contentId, CONTENT_HASH_PROPERTY_KEY, contentHash(content));
-                confluencePublisherListener.pageAdded(new ConfluencePage(ancestorId, contentId, page.getTitle(), content, INITIAL_PAGE_VERSION));
+            String contentId = publishPageUnderAncestorId(page, pageTreeOnConfluence.pageByTitle(page.getTitle()), spaceKey, ancestorId);
+            publishPagesUnderAncestorId(page.getChildren(), pageTreeOnConfluence, spaceKey, contentId);
+        });
+    }
+
+    /**
+     * Reads the page tree below the given ancestor with a single descendant query.
+     */
+    private ConfluencePageTree pageTreeOnConfluence(String ancestorId) {
+        ConfluencePageTree pageTreeOnConfluence = new ConfluencePageTree();
+        confluenceClient.getDescendantPages(ancestorId).forEach(page -> pageTreeOnConfluence.add(page.getAncestorId(), page));
+
+        return pageTreeOnConfluence;
+    }
+
+    private static void collectTitles(List<ConfluencePageMetadata> pages, Set<String> titles) {
+        pages.forEach(page -> {
+            titles.add(page.getTitle());
+            collectTitles(page.getChildren(), titles);
+        });
+    }
+
+    private void deleteConfluencePagesNotPublished(ConfluencePageTree pageTreeOnConfluence, String ancestorId, Set<String> publishedTitles) {
+        List<ConfluencePage> pagesToDelete = new ArrayList<>();
+        collectPagesNotPublished(pageTreeOnConfluence, ancestorId, publishedTitles, pagesToDelete);
+
+        deletePages(pagesToDelete);
+    }
+
+    private static void collectPagesNotPublished(ConfluencePageTree pageTreeOnConfluence, String ancestorId, Set<String> publishedTitles, List<ConfluencePage> pagesNotPublished) {
+        pageTreeOnConfluence.childPages(ancestorId).forEach(childPage -> {
+            if (!publishedTitles.contains(childPage.getTitle())) {
+                pagesNotPublished.add(childPage);
             }
 
-            deleteConfluenceAttachmentsNotPresentUnderPage(contentId, page.getAttachments());
-            addAttachments(contentId, page.getAttachments());
-            startPublishingUnderAncestorId(page.getChildren(), spaceKey, contentId);
+            collectPagesNotPublished(pageTreeOnConfluence, childPage.getContentId(), publishedTitles, pagesNotPublished);
         });
     }
 
-    private List<ConfluencePage> deleteConfluencePagesNotPresentUnderAncestor(List<ConfluencePageMetadata> pagesToKeep, String ancestorId) {
-        List<ConfluencePage> childPagesOnConfluence = confluenceClient.getChildPages(ancestorId);
+    private String publishPageUnderAncestorId(ConfluencePageMetadata page, List<ConfluencePage> actualPages, String spaceKey, String ancestorId) {
+        // look for page in existing pages
+        ConfluencePage actualPage = actualPages.stream()
+            .filter(p -> p.getTitle().equals(page.getTitle()))
+            .reduce(null, (previousPage, newPage) -> {
+                if (previousPage != null) {
+                    throw new MultipleResultsException();
+                }
+                return newPage;
+            });
+
+        return publishPageUnderAncestorId(page, actualPage, spaceKey, ancestorId);
+    }
+
+    private String publishPageUnderAncestorId(ConfluencePageMetadata page, ConfluencePage actualPage, String spaceKey, String ancestorId) {
+        String fingerprint = journal.isEnabled() ? pageFingerprint(page) : null;
+
+        // skip page completely published by a previous run that neither changed locally nor on confluence since
+        if (actualPage != null && fingerprint != null) {
+            CompletedPage completedPage = journal.completedPage(ancestorId, page.getTitle(), fingerprint);
+            if (completedPage != null && completedPage.contentId.equals(actualPage.getContentId()) && completedPage.version == actualPage.getVersion() && ancestorId.equals(actualPage.getAncestorId())) {
+                return actualPage.getContentId();
+            }
+        }
 
-        List<ConfluencePage> childPagesOnConfluenceToDelete = childPagesOnConfluence.stream()
-                .filter(childPageOnConfluence -> pagesToKeep.stream().noneMatch(page -> page.getTitle().equals(childPageOnConfluence.getTitle())))
-                .collect(toList());
+        String contentId;
+        int version;
+
+        if (actualPage != null) {
+            // update (and possibly move) page when it already exists ...
+            contentId = actualPage.getContentId();
+            version = updatePage(actualPage, page, ancestorId);
+        } else {
+            // ... or add it when it doesn't exist yet
+            String content = fileContent(page.getContentFilePath(), UTF_8);
+            contentId = confluenceClient.addPageUnderAncestor(spaceKey, ancestorId, page.getTitle(), content);
+            confluenceClient.setPropertyByKey(contentId, CONTENT_HASH_PROPERTY_KEY, contentHash(content));
+            confluencePublisherListener.pageAdded(new ConfluencePage(ancestorId, contentId, page.getTitle(), content, INITIAL_PAGE_VERSION));
+            version = INITIAL_PAGE_VERSION;
+        }
+
+        synchronizeAttachments(contentId, page.getAttachments());
+
+        if (fingerprint != null) {
+            journal.pageCompleted(ancestorId, page.getTitle(), fingerprint, contentId, version);
+        }
+
+        return contentId;
+    }
 
-        childPagesOnConfluenceToDelete.forEach(pageToDelete -> {
-            List<ConfluencePage> pageScheduledForDeletionChildPagesOnConfluence = confluenceClient.getChildPages(pageToDelete.getContentId());
-            pageScheduledForDeletionChildPagesOnConfluence.forEach(parentPageToDelete -> deleteConfluencePagesNotPresentUnderAncestor(emptyList(), pageToDelete.getContentId()));
-            confluenceClient.deletePage(pageToDelete.getContentId());
-            confluencePublisherListener.pageDeleted(pageToDelete);
+    private PublishingJournal openJournal(List<ConfluencePageMetadata> pages) {
+        return journalFile != null ? PublishingJournal.open(journalFile, planId(pages)) : PublishingJournal.disabled();
+    }
+
+    private String planId(List<ConfluencePageMetadata> pages) {
+        StringBuilder plan = new StringBuilder()
+                .append(metadata.getSpaceKey()).append('\n')
+                .append(metadata.getAncestorId()).append('\n')
+                .append(metadata.getPublishStrategy()).append('\n')
+                .append(metadata.getScope()).append('\n')
+                .append(metadata.isScopeWithoutChildren()).append('\n');
+        appendPageTitles(plan, pages, 0);
+
+        return sha256Hex(plan.toString());
+    }
+
+    private static void appendPageTitles(StringBuilder plan, List<ConfluencePageMetadata> pages, int depth) {
+        pages.forEach(page -> {
+            plan.append(depth).append(' ').append(page.getTitle()).append('\n');
+            appendPageTitles(plan, page.getChildren(), depth + 1);
         });
+    }
+
+    private String pageFingerprint(ConfluencePageMetadata page) {
+        StringBuilder fingerprint = new StringBuilder(contentHash(fileContent(page.getContentFilePath(), UTF_8)));
+        new TreeMap<>(page.getAttachments()).forEach((attachmentFileName, attachmentPath) -> fingerprint
+                .append(' ').append(attachmentFileName)
+                .append(' ').append(sha256Hash(fileInputStream(absoluteAttachmentPath(attachmentPath)))));
 
-        return childPagesOnConfluence;
+        return sha256Hex(fingerprint.toString());
     }
 
-    private void deleteConfluenceAttachmentsNotPresentUnderPage(String contentId, Map<String, String> attachments) {
-        List<ConfluenceAttachment> confluenceAttachments = confluenceClient.getAttachments(contentId);
+    private void replaceAncestor(ConfluencePageMetadata rootPageMetaData) {
+        ConfluencePage rootPage = confluenceClient.getPageWithVersionById(metadata.getAncestorId());
+        updatePage(rootPage, rootPageMetaData, rootPage.getAncestorId());
+        synchronizeAttachments(metadata.getAncestorId(), rootPageMetaData.getAttachments());
+    }
+
+    /**
+     * Deletes the given pages leaves first: pages are grouped by their depth among the pages to delete, and the groups
+     * are deleted from the deepest one up, each group with up to {@link #DELETION_PARALLELISM} concurrent requests.
+     */
+    private void deletePages(List<ConfluencePage> pagesToDelete) {
+        if (pagesToDelete.isEmpty()) {
+            return;
+        }
+
+        Map<String, ConfluencePage> pagesToDeleteByContentId = new HashMap<>();
+        pagesToDelete.forEach(pageToDelete -> pagesToDeleteByContentId.put(pageToDelete.getContentId(), pageToDelete));
 
-        List<String> confluenceAttachmentsToDelete = confluenceAttachments.stream()
-                .filter(confluenceAttachment -> attachments.keySet().stream().noneMatch(attachmentFileName -> attachmentFileName.equals(confluenceAttachment.getTitle())))
-                .map(ConfluenceAttachment::getId)
-                .collect(toList());
+        TreeMap<Integer, List<ConfluencePage>> pagesToDeleteByDepth = new TreeMap<>(reverseOrder());
+        pagesToDelete.forEach(pageToDelete -> pagesToDeleteByDepth.computeIfAbsent(depth(pageToDelete, pagesToDeleteByContentId), (ignored) -> new ArrayList<>()).add(pageToDelete));
+
+        ExecutorService deletionExecutor = newFixedThreadPool(Math.min(DELETION_PARALLELISM, pagesToDelete.size()));
+        try {
+            int deletedPages = 0;
+            for (List<ConfluencePage> pagesToDeleteAtDepth : pagesToDeleteByDepth.values()) {
+                List<Future<?>> deletions = pagesToDeleteAtDepth.stream()
+                        .map(pageToDelete -> deletionExecutor.submit(() -> confluenceClient.deletePage(pageToDelete.getContentId())))
+                        .collect(toList());
+
+                for (int i = 0; i < deletions.size(); i++) {
+                    awaitDeletion(deletions.get(i), pagesToDeleteAtDepth.get(i));
+                    confluencePublisherListener.pageDeleted(pagesToDeleteAtDepth.get(i));
+                }
 
-        confluenceAttachmentsToDelete.forEach(confluenceClient::deleteAttachment);
+                deletedPages += pagesToDeleteAtDepth.size();
+                confluencePublisherListener.deletionProgress(deletedPages, pagesToDelete.size());
+            }
+        } finally {
+            deletionExecutor.shutdownNow();
+        }
+    }
+
+    private static int depth(ConfluencePage page, Map<String, ConfluencePage> pagesByContentId) {
+        int depth = 0;
+        ConfluencePage parentPage = pagesByContentId.get(page.getAncestorId());
+        while (parentPage != null) {
+            depth++;
+            parentPage = pagesByContentId.get(parentPage.getAncestorId());
+        }
+
+        return depth;
     }
 
-    private void updatePage(ConfluencePage existingPage, ConfluencePageMetadata page) {
+    private static void awaitDeletion(Future<?> deletion, ConfluencePage pageToDelete) {
+        try {
+            deletion.get();
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Could not delete page '" + pageToDelete.getTitle() + "'", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Could not wait for deletion of page '" + pageToDelete.getTitle() + "'", e);
+        }
+    }
+
+    private static IllegalArgumentException multipleRootPagesException(List<ConfluencePageMetadata> rootPages) {
+        return new IllegalArgumentException(String.format("Multiple root pages detected: %s. " +
+            "Publishing to confluence with the %s strategy only allows a single root to be defined.",
+            StringUtils.join(rootPages.stream().map(page -> "'" + page.getTitle() + "'").collect(Collectors.toList()), ", "),
+            ConfluencePublisherPublishStrategy.REPLACE_ANCESTOR.name())
+        );
+    }
+
+    private static void enqueue(BlockingQueue<PageToPublish> pageQueue, PageToPublish pageToPublish) {
+        try {
+            pageQueue.put(pageToPublish);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Could not pass page to publisher", e);
+        }
+    }
+
+    private static PageToPublish dequeue(BlockingQueue<PageToPublish> pageQueue) {
+        try {
+            return pageQueue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Could not wait for page to publish", e);
+        }
+    }
+
+    private static void awaitPageProduction(Future<?> pageProduction) {
+        try {
+            pageProduction.get();
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Could not produce pages to publish", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Could not wait for pages to publish", e);
+        }
+    }
+
+    /**
+     * Synchronizes the attachments of the page with the given attachments, based on a single listing of the attachments
+     * on Confluence: attachments no longer present are deleted, new ones are added and existing ones are updated if their
+     * content differs. The attachments are synchronized concurrently by the attachment executor of the publication,
+     * holding one of the {@link #ATTACHMENT_SYNCHRONIZATION_PERMITS} shared by all publications per attachment.
+     */
+    private void synchronizeAttachments(String contentId, Map<String, String> attachments) {
+        Map<String, ConfluenceAttachment> confluenceAttachmentsByTitle = new HashMap<>();
+        confluenceClient.getAttachments(contentId).forEach(confluenceAttachment -> confluenceAttachmentsByTitle.put(confluenceAttachment.getTitle(), confluenceAttachment));
+
+        Map<String, Runnable> synchronizationsByAttachmentFileName = new LinkedHashMap<>();
+        confluenceAttachmentsByTitle.values().stream()
+                .filter(confluenceAttachment -> !attachments.containsKey(confluenceAttachment.getTitle()))
+                .forEach(confluenceAttachment -> synchronizationsByAttachmentFileName.put(confluenceAttachment.getTitle(), () -> confluenceClient.deleteAttachment(confluenceAttachment.getId())));
+        attachments.forEach((attachmentFileName, attachmentPath) -> synchronizationsByAttachmentFileName.put(attachmentFileName,
+                () -> addOrUpdateAttachment(contentId, absoluteAttachmentPath(attachmentPath), attachmentFileName, confluenceAttachmentsByTitle.get(attachmentFileName))));
+
+        Map<String, Future<?>> synchronizations = new LinkedHashMap<>();
+        synchronizationsByAttachmentFileName.forEach((attachmentFileName, synchronization) -> synchronizations.put(attachmentFileName,
+                this.attachmentExecutor.submit(() -> withAttachmentSynchronizationPermit(synchronization))));
+
+        try {
+            synchronizations.forEach(ConfluencePublisher::awaitAttachmentSynchronization);
+        } finally {
+            synchronizations.values().forEach(synchronization -> synchronization.cancel(true));
+        }
+    }
+
+    private static void withAttachmentSynchronizationPermit(Runnable synchronization) {
+        try {
+            ATTACHMENT_SYNCHRONIZATION_PERMITS.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Could not wait for permit to synchronize attachment", e);
+        }
+
+        try {
+            synchronization.run();
+        } finally {
+            ATTACHMENT_SYNCHRONIZATION_PERMITS.release();
+        }
+    }
+
+    private static void awaitAttachmentSynchronization(String attachmentFileName, Future<?> synchronization) {
+        try {
+            synchronization.get();
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Could not synchronize attachment '" + attachmentFileName + "'", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Could not wait for synchronization of attachment '" + attachmentFileName + "'", e);
+        }
+    }
+
+    private int updatePage(ConfluencePage existingPage, ConfluencePageMetadata page, String ancestorId) {
         String content = fileContent(page.getContentFilePath(), UTF_8);
         String contentId = existingPage.getContentId();
         String existingContentHash = confluenceClient.getPropertyByKey(contentId, CONTENT_HASH_PROPERTY_KEY);
         String newContentHash = contentHash(content);
 
-        if (notSameContentHash(existingContentHash, newContentHash) || !existingPage.getTitle().equals(page.getTitle())) {
+        if (notSameContentHash(existingContentHash, newContentHash) || !existingPage.getTitle().equals(page.getTitle()) || !Objects.equals(ancestorId, existingPage.getAncestorId())) {
             confluenceClient.deletePropertyByKey(contentId, CONTENT_HASH_PROPERTY_KEY);
-            int newPageVersion = existingPage.getVersion() + 1;
-            confluenceClient.updatePage(contentId, existingPage.getAncestorId(), page.getTitle(), content, newPageVersion);
+            int newPageVersion = updatePageWithVersionConflictRetry(contentId, ancestorId, page.getTitle(), content, existingPage.getVersion() + 1);
             confluenceClient.setPropertyByKey(contentId, CONTENT_HASH_PROPERTY_KEY, contentHash(content));
-            confluencePublisherListener.pageUpdated(existingPage, new ConfluencePage(existingPage.getAncestorId(), contentId, page.getTitle(), content, newPageVersion));
-        }
-    }
+            confluencePublisherListener.pageUpdated(existingPage, new ConfluencePage(ancestorId, contentId, page.getTitle(), content, newPageVersion));
 
-    private static String contentHash(String content) {
-        return sha256Hex(content);
-    }
+            return newPageVersion;
+        }
 
-    private void addAttachments(String contentId, Map<String, String> attachments) {
-        attachments.forEach((attachmentFileName, attachmentPath) -> addOrUpdateAttachment(contentId, attachmentPath, attachmentFileName));
+        return existingPage.getVersion();
     }
 
-    private void addOrUpdateAttachment(String contentId, String attachmentPath, String attachmentFileName) {
-        Path absoluteAttachmentPath = absoluteAttachmentPath(attachmentPath);
-
+    /**
+     * Updates the page optimistically to the given version. If the page was changed on Confluence in the meantime (409
+     * conflict), the update is retried once based on the current version of the page.
+     */
+    private int updatePageWithVersionConflictRetry(String contentId, String ancestorId, String title, String content, int newPageVersion) {
         try {
-            ConfluenceAttachment existingAttachment = confluenceClient.getAttachmentByFileName(contentId, attachmentFileName);
-            InputStream existingAttachmentContent = confluenceClient.getAttachmentContent(existingAttachment.getRelativeDownloadLink());
+            confluenceClient.updatePage(contentId, ancestorId, title, content, newPageVersion);
 
-            if (!isSameContent(existingAttachmentContent, fileInputStream(absoluteAttachmentPath))) {
-                confluenceClient.updateAttachmentContent(contentId, existingAttachment.getId(), fileInputStream(absoluteAttachmentPath));
+            return newPageVersion;
+        } catch (RequestFailedException e) {
+            if (e.getStatusCode() != SC_CONFLICT) {
+                throw e;
             }
 
-        } catch (NotFoundException e) {
+            int retriedPageVersion = confluenceClient.getPageWithVersionById(contentId).getVersion() + 1;
+            confluenceClient.updatePage(contentId, ancestorId, title, content, retriedPageVersion);
+
+            return retriedPageVersion;
+        }
+    }
+
+    private static String contentHash(String content) {
+        return sha256Hex(content);
+    }
+
+    private void addOrUpdateAttachment(String contentId, Path absoluteAttachmentPath, String attachmentFileName, ConfluenceAttachment existingAttachment) {
+        if (existingAttachment == null) {
             confluenceClient.addAttachment(contentId, attachmentFileName, fileInputStream(absoluteAttachmentPath));
+            return;
+        }
+
+        InputStream existingAttachmentContent = confluenceClient.getAttachmentContent(existingAttachment.getRelativeDownloadLink());
+
+        if (!isSameContent(existingAttachmentContent, fileInputStream(absoluteAttachmentPath))) {
+            confluenceClient.updateAttachmentContent(contentId, existingAttachment.getId(), fileInputStream(absoluteAttachmentPath));
         }
     }
 
@@ -236,6 +759,90 @@ public class ConfluencePublisher {
     }
 
 
+    /**
+     * Publishes pages as they are produced. Like {@link #startPublishingUnderAncestorId(List, String, String)}, existing
+     * pages are looked up by title in the whole page tree below the ancestor, so that moved pages are updated with their
+     * new parent.
+     */
+    private class PipelinedPublication {
+
+        private final Map<ConfluencePageMetadata, String> contentIdByPage = new IdentityHashMap<>();
+        private final ConfluencePageTree pageTreeOnConfluence = pageTreeOnConfluence(metadata.getAncestorId());
+        private final Set<String> publishedTitles = new HashSet<>();
+        private ConfluencePageMetadata rootPage;
+
+        void publish(ConfluencePageMetadata parentPage, ConfluencePageMetadata page) {
+            if (parentPage == null && metadata.getPublishStrategy() == ConfluencePublisherPublishStrategy.REPLACE_ANCESTOR) {
+                if (rootPage != null) {
+                    throw multipleRootPagesException(asList(rootPage, page));
+                }
+
+                // replace ancestor title with single root page title, children of root page are published under ancestor
+                rootPage = page;
+                replaceAncestor(page);
+                contentIdByPage.put(page, metadata.getAncestorId());
+                return;
+            }
+
+            String ancestorId = parentPage == null ? metadata.getAncestorId() : contentIdByPage.get(parentPage);
+            if (ancestorId == null) {
+                throw new IllegalStateException("Page '" + page.getTitle() + "' produced before its parent page '" + parentPage.getTitle() + "'");
+            }
+
+            String contentId = publishPageUnderAncestorId(page, pageTreeOnConfluence.pageByTitle(page.getTitle()), metadata.getSpaceKey(), ancestorId);
+
+            contentIdByPage.put(page, contentId);
+            publishedTitles.add(page.getTitle());
+        }
+
+        void deletePagesNotPublished() {
+            deleteConfluencePagesNotPublished(pageTreeOnConfluence, metadata.getAncestorId(), publishedTitles);
+        }
+
+    }
+
+
+    private static class ConfluencePageTree {
+
+        private final Map<String, List<ConfluencePage>> childPagesByAncestorId = new HashMap<>();
+        private final Map<String, ConfluencePage> pagesByTitle = new HashMap<>();
+
+        void add(String ancestorId, ConfluencePage childPage) {
+            // the parent the page was found under is its actual ancestor, regardless of the ancestors reported for it
+            ConfluencePage childPageUnderAncestor = new ConfluencePage(ancestorId, childPage.getContentId(), childPage.getTitle(), childPage.getContent(), childPage.getVersion());
+
+            childPagesByAncestorId.computeIfAbsent(ancestorId, (ignored) -> new ArrayList<>()).add(childPageUnderAncestor);
+            if (pagesByTitle.putIfAbsent(childPage.getTitle(), childPageUnderAncestor) != null) {
+                throw new MultipleResultsException();
+            }
+        }
+
+        List<ConfluencePage> childPages(String ancestorId) {
+            return childPagesByAncestorId.getOrDefault(ancestorId, emptyList());
+        }
+
+        ConfluencePage pageByTitle(String title) {
+            return pagesByTitle.get(title);
+        }
+
+    }
+
+
+    private static class PageToPublish {
+
+        static final PageToPublish END_OF_PAGES = new PageToPublish(null, null);
+
+        final ConfluencePageMetadata parentPage;
+        final ConfluencePageMetadata page;
+
+        PageToPublish(ConfluencePageMetadata parentPage, ConfluencePageMetadata page) {
+            this.parentPage = parentPage;
+            this.page = page;
+        }
+
+    }
+
+
     private static class NoOpConfluencePublisherListener implements ConfluencePublisherListener {
 
         @Override
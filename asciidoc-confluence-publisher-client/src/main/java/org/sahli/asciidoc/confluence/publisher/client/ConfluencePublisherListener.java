@@ -13,6 +13,15 @@ public interface ConfluencePublisherListener {
 
     void pageDeleted(ConfluencePage deletedPage);
 
+    /**
+     * Called when removed pages are deleted, after each batch of pages at the same depth (deepest pages first) has been
+     * deleted, with the number of pages deleted so far out of all pages to delete. {@link #pageDeleted(ConfluencePage)}
+     * has been called for every page of the batch before. Called from the publishing thread, and not called at all if
+     * no pages are deleted. Does nothing by default.
+     */
+    default void deletionProgress(int deletedPages, int pagesToDelete) {
+    }
+
     void publishCompleted();
 
 }
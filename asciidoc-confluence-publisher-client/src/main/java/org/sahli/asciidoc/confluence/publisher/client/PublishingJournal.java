@@ -0,0 +1,237 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sahli.asciidoc.confluence.publisher.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.deleteIfExists;
+import static java.nio.file.Files.exists;
+import static java.nio.file.Files.readAllLines;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Collections.emptyList;
+
+/**
+ * Append-only journal of the pages completely published by a publication, used to resume a failed publication without
+ * verifying the already published pages again.
+ * <p>
+ * The journal starts with the identifier of the publication plan, and a journal written for another plan is discarded.
+ * Completed pages are appended in batches of {@link #SYNC_INTERVAL} records, each batch being forced to disk once. A
+ * crash therefore loses at most the last batch, whose pages are verified again when resuming. The journal is deleted
+ * once the publication completes.
+ */
+final class PublishingJournal implements Closeable {
+
+    static final int SYNC_INTERVAL = 32;
+
+    private static final String PLAN_RECORD = "plan";
+    private static final String PAGE_RECORD = "page";
+
+    private final Path journalFile;
+    private final Map<String, CompletedPage> completedPagesByKey = new HashMap<>();
+    private final StringBuilder pendingRecords = new StringBuilder();
+    private int pendingRecordCount;
+    private FileChannel journalChannel;
+
+    private PublishingJournal(Path journalFile) {
+        this.journalFile = journalFile;
+    }
+
+    static PublishingJournal disabled() {
+        return new PublishingJournal(null);
+    }
+
+    static PublishingJournal open(Path journalFile, String planId) {
+        PublishingJournal journal = new PublishingJournal(journalFile);
+
+        try {
+            List<String> completedPageRecords = journal.readCompletedPages(planId);
+
+            if (journalFile.getParent() != null) {
+                createDirectories(journalFile.getParent());
+            }
+
+            // rewrite the journal with the valid records only, so that appended records never continue a partial one
+            journal.journalChannel = FileChannel.open(journalFile, CREATE, WRITE, TRUNCATE_EXISTING);
+            journal.append(PLAN_RECORD + " " + planId);
+            completedPageRecords.forEach(journal::append);
+            journal.sync();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not open publishing journal " + journalFile, e);
+        }
+
+        return journal;
+    }
+
+    /**
+     * Returns the page recorded as completed for the given ancestor, title and fingerprint by a previous run of the
+     * same plan, or {@code null} if there is none.
+     */
+    CompletedPage completedPage(String ancestorId, String title, String fingerprint) {
+        CompletedPage completedPage = this.completedPagesByKey.get(key(ancestorId, title));
+
+        return completedPage != null && completedPage.fingerprint.equals(fingerprint) ? completedPage : null;
+    }
+
+    void pageCompleted(String ancestorId, String title, String fingerprint, String contentId, int version) {
+        if (this.journalChannel == null) {
+            return;
+        }
+
+        append(PAGE_RECORD + " " + ancestorId + " " + contentId + " " + version + " " + fingerprint + " " + encode(title));
+
+        if (this.pendingRecordCount >= SYNC_INTERVAL) {
+            sync();
+        }
+    }
+
+    boolean isEnabled() {
+        return this.journalFile != null;
+    }
+
+    /**
+     * Deletes the journal after the publication completed.
+     */
+    void publicationCompleted() {
+        if (this.journalChannel == null) {
+            return;
+        }
+
+        try {
+            this.journalChannel.close();
+            this.journalChannel = null;
+            deleteIfExists(this.journalFile);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not delete publishing journal " + this.journalFile, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (this.journalChannel == null) {
+            return;
+        }
+
+        try {
+            sync();
+            this.journalChannel.close();
+            this.journalChannel = null;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not close publishing journal " + this.journalFile, e);
+        }
+    }
+
+    private List<String> readCompletedPages(String planId) throws IOException {
+        if (!exists(this.journalFile)) {
+            return emptyList();
+        }
+
+        List<String> records = readAllLines(this.journalFile, UTF_8);
+        if (records.isEmpty() || !records.get(0).equals(PLAN_RECORD + " " + planId)) {
+            return emptyList();
+        }
+
+        // a partially written last record (e.g. after a crash) has less fields and is ignored
+        List<String> completedPageRecords = new ArrayList<>();
+        records.stream().skip(1).filter((record) -> record.startsWith(PAGE_RECORD + " ")).forEach((record) -> {
+            String[] fields = record.split(" ");
+            if (fields.length == 6) {
+                try {
+                    this.completedPagesByKey.put(key(fields[1], decode(fields[5])), new CompletedPage(fields[2], Integer.parseInt(fields[3]), fields[4]));
+                    completedPageRecords.add(record);
+                } catch (IllegalArgumentException ignored) {
+                }
+            }
+        });
+
+        return completedPageRecords;
+    }
+
+    private void append(String record) {
+        this.pendingRecords.append(record).append('\n');
+        this.pendingRecordCount++;
+    }
+
+    private void sync() {
+        if (this.pendingRecordCount == 0) {
+            return;
+        }
+
+        try {
+            ByteBuffer records = ByteBuffer.wrap(this.pendingRecords.toString().getBytes(UTF_8));
+            while (records.hasRemaining()) {
+                this.journalChannel.write(records);
+            }
+            this.journalChannel.force(false);
+
+            this.pendingRecords.setLength(0);
+            this.pendingRecordCount = 0;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write publishing journal " + this.journalFile, e);
+        }
+    }
+
+    private static String key(String ancestorId, String title) {
+        return ancestorId + " " + title;
+    }
+
+    private static String encode(String title) {
+        try {
+            return URLEncoder.encode(title, UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException("Could not encode title " + title, e);
+        }
+    }
+
+    private static String decode(String encodedTitle) {
+        try {
+            return URLDecoder.decode(encodedTitle, UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException("Could not decode title " + encodedTitle, e);
+        }
+    }
+
+
+    static final class CompletedPage {
+
+        final String contentId;
+        final int version;
+        final String fingerprint;
+
+        CompletedPage(String contentId, int version, String fingerprint) {
+            this.contentId = contentId;
+            this.version = version;
+            this.fingerprint = fingerprint;
+        }
+
+    }
+
+}
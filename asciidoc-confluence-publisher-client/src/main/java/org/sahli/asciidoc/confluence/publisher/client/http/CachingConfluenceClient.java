@@ -0,0 +1,285 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sahli.asciidoc.confluence.publisher.client.http;
+
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiPredicate;
+import java.util.function.Supplier;
+
+import static java.util.Collections.unmodifiableList;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Caches the child pages, attachments and properties read from Confluence for the lifetime of the client (i.e. a
+ * publish session), and invalidates the cached entries affected by writes made through the client. Changes made to
+ * Confluence by other clients in the meantime are not seen.
+ * <p>
+ * Attachments looked up by file name are served from the cached attachments of the page if they have been listed
+ * before.
+ * <p>
+ * Entries are invalidated once a write has completed, and values loaded while a write is in progress are not cached,
+ * so that concurrent publications sharing the client do not cache values read before each other's writes.
+ */
+public class CachingConfluenceClient extends ForwardingConfluenceClient {
+
+    private final Cache<String, List<ConfluencePage>> childPagesByContentId = new Cache<>();
+    private final Cache<String, List<ConfluenceAttachment>> attachmentsByContentId = new Cache<>();
+    private final Cache<AttachmentKey, ConfluenceAttachment> attachmentsByFileName = new Cache<>();
+    private final Cache<PropertyKey, Optional<String>> propertiesByKey = new Cache<>();
+
+    public CachingConfluenceClient(ConfluenceClient delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public String addPageUnderAncestor(String spaceKey, String ancestorId, String title, String content) {
+        try {
+            return super.addPageUnderAncestor(spaceKey, ancestorId, title, content);
+        } finally {
+            this.childPagesByContentId.invalidate((contentId, childPages) -> contentId.equals(ancestorId));
+        }
+    }
+
+    @Override
+    public void updatePage(String contentId, String ancestorId, String title, String content, int newVersion) {
+        try {
+            super.updatePage(contentId, ancestorId, title, content, newVersion);
+        } finally {
+            // the page may have been moved or renamed, so both its previous and its new parent are affected
+            this.childPagesByContentId.invalidate((parentContentId, childPages) -> parentContentId.equals(ancestorId) || containsPage(childPages, contentId));
+        }
+    }
+
+    @Override
+    public void deletePage(String contentId) {
+        try {
+            super.deletePage(contentId);
+        } finally {
+            this.childPagesByContentId.invalidate((parentContentId, childPages) -> parentContentId.equals(contentId) || containsPage(childPages, contentId));
+            invalidateAttachments(contentId);
+            this.propertiesByKey.invalidate((propertyKey, value) -> propertyKey.contentId.equals(contentId));
+        }
+    }
+
+    @Override
+    public void addAttachment(String contentId, String attachmentFileName, InputStream attachmentContent) {
+        try {
+            super.addAttachment(contentId, attachmentFileName, attachmentContent);
+        } finally {
+            invalidateAttachments(contentId);
+        }
+    }
+
+    @Override
+    public void updateAttachmentContent(String contentId, String attachmentId, InputStream attachmentContent) {
+        try {
+            super.updateAttachmentContent(contentId, attachmentId, attachmentContent);
+        } finally {
+            invalidateAttachments(contentId);
+        }
+    }
+
+    @Override
+    public void deleteAttachment(String attachmentId) {
+        try {
+            super.deleteAttachment(attachmentId);
+        } finally {
+            this.attachmentsByContentId.invalidate((contentId, attachments) -> attachments.stream().anyMatch((attachment) -> attachment.getId().equals(attachmentId)));
+            this.attachmentsByFileName.invalidate((attachmentKey, attachment) -> attachment.getId().equals(attachmentId));
+        }
+    }
+
+    @Override
+    public ConfluenceAttachment getAttachmentByFileName(String contentId, String attachmentFileName) throws NotFoundException, MultipleResultsException {
+        List<ConfluenceAttachment> attachments = this.attachmentsByContentId.get(contentId);
+
+        if (attachments != null) {
+            List<ConfluenceAttachment> matchingAttachments = attachments.stream()
+                    .filter((attachment) -> attachment.getTitle().equals(attachmentFileName))
+                    .collect(toList());
+
+            if (matchingAttachments.isEmpty()) {
+                throw new NotFoundException();
+            }
+
+            if (matchingAttachments.size() > 1) {
+                throw new MultipleResultsException();
+            }
+
+            return matchingAttachments.get(0);
+        }
+
+        return this.attachmentsByFileName.get(new AttachmentKey(contentId, attachmentFileName), () -> super.getAttachmentByFileName(contentId, attachmentFileName));
+    }
+
+    @Override
+    public List<ConfluencePage> getChildPages(String contentId) {
+        return this.childPagesByContentId.get(contentId, () -> unmodifiableList(super.getChildPages(contentId)));
+    }
+
+    @Override
+    public List<ConfluenceAttachment> getAttachments(String contentId) {
+        return this.attachmentsByContentId.get(contentId, () -> unmodifiableList(super.getAttachments(contentId)));
+    }
+
+    @Override
+    public void setPropertyByKey(String contentId, String key, String value) {
+        try {
+            super.setPropertyByKey(contentId, key, value);
+        } finally {
+            this.propertiesByKey.invalidate((propertyKey, cachedValue) -> propertyKey.equals(new PropertyKey(contentId, key)));
+        }
+    }
+
+    @Override
+    public String getPropertyByKey(String contentId, String key) {
+        return this.propertiesByKey.get(new PropertyKey(contentId, key), () -> Optional.ofNullable(super.getPropertyByKey(contentId, key))).orElse(null);
+    }
+
+    @Override
+    public void deletePropertyByKey(String contentId, String key) {
+        try {
+            super.deletePropertyByKey(contentId, key);
+        } finally {
+            this.propertiesByKey.invalidate((propertyKey, cachedValue) -> propertyKey.equals(new PropertyKey(contentId, key)));
+        }
+    }
+
+    private static boolean containsPage(List<ConfluencePage> pages, String contentId) {
+        return pages.stream().anyMatch((page) -> page.getContentId().equals(contentId));
+    }
+
+    private void invalidateAttachments(String contentId) {
+        this.attachmentsByContentId.invalidate((attachmentsContentId, attachments) -> attachmentsContentId.equals(contentId));
+        this.attachmentsByFileName.invalidate((attachmentKey, attachment) -> attachmentKey.contentId.equals(contentId));
+    }
+
+
+    /**
+     * Cache whose values are loaded without holding a lock, so that a slow request does not block other cache
+     * accesses. Every invalidation starts a new generation, and a value is only cached if no invalidation has happened
+     * while it was loaded, as it may have been read before the write causing the invalidation.
+     */
+    private static final class Cache<K, V> {
+
+        private final Map<K, V> values = new HashMap<>();
+        private long generation;
+
+        synchronized V get(K key) {
+            return this.values.get(key);
+        }
+
+        V get(K key, Supplier<V> loader) {
+            long loadGeneration;
+            synchronized (this) {
+                V cachedValue = this.values.get(key);
+                if (cachedValue != null) {
+                    return cachedValue;
+                }
+
+                loadGeneration = this.generation;
+            }
+
+            V loadedValue = loader.get();
+
+            synchronized (this) {
+                if (this.generation == loadGeneration) {
+                    this.values.put(key, loadedValue);
+                }
+            }
+
+            return loadedValue;
+        }
+
+        synchronized void invalidate(BiPredicate<K, V> affected) {
+            this.generation++;
+            this.values.entrySet().removeIf((entry) -> affected.test(entry.getKey(), entry.getValue()));
+        }
+
+    }
+
+
+    private static final class AttachmentKey {
+
+        private final String contentId;
+        private final String attachmentFileName;
+
+        AttachmentKey(String contentId, String attachmentFileName) {
+            this.contentId = contentId;
+            this.attachmentFileName = attachmentFileName;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+
+            if (!(other instanceof AttachmentKey)) {
+                return false;
+            }
+
+            AttachmentKey that = (AttachmentKey) other;
+
+            return this.contentId.equals(that.contentId) && this.attachmentFileName.equals(that.attachmentFileName);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.contentId.hashCode() + this.attachmentFileName.hashCode();
+        }
+
+    }
+
+
+    private static final class PropertyKey {
+
+        private final String contentId;
+        private final String key;
+
+        PropertyKey(String contentId, String key) {
+            this.contentId = contentId;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+
+            if (!(other instanceof PropertyKey)) {
+                return false;
+            }
+
+            PropertyKey that = (PropertyKey) other;
+
+            return this.contentId.equals(that.contentId) && this.key.equals(that.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.contentId.hashCode() + this.key.hashCode();
+        }
+
+    }
+
+}
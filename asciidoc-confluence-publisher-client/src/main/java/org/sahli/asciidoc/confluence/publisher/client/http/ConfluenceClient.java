@@ -40,10 +40,25 @@ public interface ConfluenceClient {
 
     ConfluencePage getPageWithContentAndVersionById(String contentId);
 
+    /**
+     * Returns the page with the given content id with its title, version and direct parent as ancestor, but without its
+     * content, e.g. to determine the current version of a page without transferring its content. Throws a
+     * {@link RequestFailedException} if the page cannot be retrieved (e.g. because it does not exist).
+     */
+    ConfluencePage getPageWithVersionById(String contentId);
+
     InputStream getAttachmentContent(String relativeDownloadLink);
 
     List<ConfluencePage> getChildPages(String contentId);
 
+    /**
+     * Returns all pages below the page with the given content id at any depth (but not the page itself), each with its
+     * version and its direct parent as ancestor, but without its content. The pages are returned in no particular
+     * order, so that callers needing the tree have to rebuild it from the ancestors. Replaces one
+     * {@link #getChildPages(String)} call per page of the tree by a single (paged) query.
+     */
+    List<ConfluencePage> getDescendantPages(String contentId);
+
     List<ConfluenceAttachment> getAttachments(String contentId);
 
     void setPropertyByKey(String contentId, String key, String value);
@@ -19,30 +19,49 @@ package org.sahli.asciidoc.confluence.publisher.client.http;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
 import org.apache.http.StatusLine;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.HttpEntityWrapper;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.apache.http.HttpHeaders.AUTHORIZATION;
+import static org.apache.http.HttpHeaders.CONTENT_ENCODING;
+import static org.apache.http.HttpHeaders.CONTENT_TYPE;
+import static org.apache.http.HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE;
+import static org.apache.http.util.EntityUtils.toByteArray;
 import static org.sahli.asciidoc.confluence.publisher.client.utils.AssertUtils.assertMandatoryParameter;
 
 /**
@@ -51,27 +70,78 @@ import static org.sahli.asciidoc.confluence.publisher.client.utils.AssertUtils.a
  */
 public class ConfluenceRestClient implements ConfluenceClient {
 
+    public static final int REQUEST_COMPRESSION_DISABLED = -1;
+
+    private static final String COMPRESSED_RESPONSE_ATTRIBUTE = "confluence-publisher.compressed-response";
+
     private final CloseableHttpClient httpClient;
     private final String username;
     private final String password;
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final HttpRequestFactory httpRequestFactory;
+    private final TransferStatistics transferStatistics;
+    private final int requestCompressionThreshold;
+    private volatile boolean requestCompressionAccepted = true;
+    private final ConcurrentMap<String, CompletableFuture<Object>> inFlightReads = new ConcurrentHashMap<>();
+    private final AtomicLong writeGeneration = new AtomicLong();
 
     public ConfluenceRestClient(String rootConfluenceUrl, String username, String password) {
-        this(rootConfluenceUrl, defaultHttpClient(), username, password);
+        this(rootConfluenceUrl, username, password, REQUEST_COMPRESSION_DISABLED);
+    }
+
+    /**
+     * Creates a client sending page bodies of at least the given number of bytes gzip-compressed (unless
+     * {@link #REQUEST_COMPRESSION_DISABLED}), using a default HTTP client with up to eight concurrent connections.
+     * <p>
+     * A compressed request answered with 415 (unsupported media type) is resent uncompressed, and compression is not
+     * used anymore. A compressed request failing with any other 4xx or 5xx status is resent uncompressed once as well,
+     * but compression is only turned off if the uncompressed request succeeds. Responses are requested gzip- or
+     * deflate-compressed regardless of the threshold.
+     */
+    public ConfluenceRestClient(String rootConfluenceUrl, String username, String password, int requestCompressionThreshold) {
+        this(rootConfluenceUrl, new TransferStatistics(), username, password, requestCompressionThreshold);
+    }
+
+    private ConfluenceRestClient(String rootConfluenceUrl, TransferStatistics transferStatistics, String username, String password, int requestCompressionThreshold) {
+        this(rootConfluenceUrl, defaultHttpClient(transferStatistics), transferStatistics, username, password, requestCompressionThreshold);
     }
 
     public ConfluenceRestClient(String rootConfluenceUrl, CloseableHttpClient httpClient, String username, String password) {
+        this(rootConfluenceUrl, httpClient, username, password, REQUEST_COMPRESSION_DISABLED);
+    }
+
+    /**
+     * Creates a client using the given HTTP client and compressing requests like
+     * {@link #ConfluenceRestClient(String, String, String, int)}. Whether responses are requested and decompressed
+     * depends on the given HTTP client, so the bytes saved on responses are not counted in the
+     * {@link #transferStatistics()}.
+     */
+    public ConfluenceRestClient(String rootConfluenceUrl, CloseableHttpClient httpClient, String username, String password, int requestCompressionThreshold) {
+        this(rootConfluenceUrl, httpClient, new TransferStatistics(), username, password, requestCompressionThreshold);
+    }
+
+    private ConfluenceRestClient(String rootConfluenceUrl, CloseableHttpClient httpClient, TransferStatistics transferStatistics, String username, String password, int requestCompressionThreshold) {
         assertMandatoryParameter(httpClient != null, "httpClient");
 
         this.httpClient = httpClient;
+        this.transferStatistics = transferStatistics;
         this.username = username;
         this.password = password;
+        this.requestCompressionThreshold = requestCompressionThreshold;
 
         this.httpRequestFactory = new HttpRequestFactory(rootConfluenceUrl);
         configureObjectMapper();
     }
 
+    /**
+     * Returns the statistics of the bytes exchanged compressed with Confluence by this client, e.g. to log the bytes
+     * saved after publishing. The statistics are updated while requests are sent, and can be read from any thread.
+     * Responses are only counted when using the default HTTP client.
+     */
+    public TransferStatistics transferStatistics() {
+        return this.transferStatistics;
+    }
+
     private void configureObjectMapper() {
         this.objectMapper.setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
     }
@@ -129,7 +199,7 @@ public class ConfluenceRestClient implements ConfluenceClient {
     public ConfluenceAttachment getAttachmentByFileName(String contentId, String attachmentFileName) throws NotFoundException, MultipleResultsException {
         HttpGet attachmentByFileNameRequest = this.httpRequestFactory.getAttachmentByFileNameRequest(contentId, attachmentFileName, "version");
 
-        return sendRequestAndFailIfNot20x(attachmentByFileNameRequest, (response) -> {
+        return sendCoalescedRequestAndFailIfNot20x(attachmentByFileNameRequest, (response) -> {
             JsonNode jsonNode = parseJsonResponse(response);
 
             int numberOfResults = jsonNode.get("size").asInt();
@@ -158,6 +228,13 @@ public class ConfluenceRestClient implements ConfluenceClient {
         });
     }
 
+    @Override
+    public ConfluencePage getPageWithVersionById(String contentId) {
+        HttpGet pageByIdRequest = this.httpRequestFactory.getPageByIdRequest(contentId, "version,ancestors");
+
+        return sendCoalescedRequestAndFailIfNot20x(pageByIdRequest, (response) -> extractConfluencePageWithoutContent(parseJsonResponse(response)));
+    }
+
     @Override
     public InputStream getAttachmentContent(String relativeDownloadLink) {
         HttpGet getAttachmentContentRequest = this.httpRequestFactory.getAttachmentContentRequest(relativeDownloadLink);
@@ -205,11 +282,102 @@ public class ConfluenceRestClient implements ConfluenceClient {
         });
     }
 
+    private <T> T sendCoalescedRequestAndFailIfNot20x(HttpGet request, Function<HttpResponse, T> responseHandler) {
+        return sendCoalescedRequest(request, () -> sendRequestAndFailIfNot20x(request, responseHandler));
+    }
+
+    /**
+     * Sends the given read request unless an identical one is already in flight, in which case its outcome (result or
+     * exception) is shared instead. Only used for requests whose results are not modified by the callers. A read only
+     * joins an identical one that started after the last completed write, so that it never returns data read before a
+     * write that completed before it was issued.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T sendCoalescedRequest(HttpGet request, Supplier<T> requestSender) {
+        String requestKey = this.writeGeneration.get() + " " + request.getURI();
+        CompletableFuture<Object> read = new CompletableFuture<>();
+        CompletableFuture<Object> inFlightRead = this.inFlightReads.putIfAbsent(requestKey, read);
+
+        if (inFlightRead != null) {
+            try {
+                return (T) inFlightRead.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+
+                throw e;
+            }
+        }
+
+        try {
+            T result = requestSender.get();
+            read.complete(result);
+
+            return result;
+        } catch (RuntimeException e) {
+            read.completeExceptionally(e);
+
+            throw e;
+        } finally {
+            this.inFlightReads.remove(requestKey, read);
+        }
+    }
+
     <T> T sendRequest(HttpRequestBase httpRequest, Function<HttpResponse, T> responseHandler) {
+        if (httpRequest instanceof HttpGet) {
+            return sendUncoalescedRequest(httpRequest, responseHandler);
+        }
+
+        try {
+            return sendUncoalescedRequest(httpRequest, responseHandler);
+        } finally {
+            // reads issued from now on must not join reads that may have started before this write
+            this.writeGeneration.incrementAndGet();
+        }
+    }
+
+    private <T> T sendUncoalescedRequest(HttpRequestBase httpRequest, Function<HttpResponse, T> responseHandler) {
         // add authorization header
         httpRequest.addHeader(AUTHORIZATION, basicAuthorizationHeaderValue(this.username, this.password));
 
-        // execute
+        byte[] uncompressedBody = compressRequestBodyIfAboveThreshold(httpRequest);
+        if (uncompressedBody == null) {
+            return execute(httpRequest, responseHandler);
+        }
+
+        // a compressed request failing for any reason is retried once uncompressed, as servers and proxies rejecting
+        // compressed bodies do not necessarily answer with 415
+        int[] compressedRequestStatusCode = {0};
+        T result = execute(httpRequest, (response) -> {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode >= 400) {
+                compressedRequestStatusCode[0] = statusCode;
+
+                return null;
+            }
+
+            return responseHandler.apply(response);
+        });
+
+        if (compressedRequestStatusCode[0] == 0) {
+            return result;
+        }
+
+        httpRequest.removeHeaders(CONTENT_ENCODING);
+        ((HttpEntityEnclosingRequestBase) httpRequest).setEntity(new ByteArrayEntity(uncompressedBody));
+
+        return execute(httpRequest, (response) -> {
+            // stop compressing if the server explicitly rejected the compressed request or accepted it uncompressed
+            if (compressedRequestStatusCode[0] == SC_UNSUPPORTED_MEDIA_TYPE || response.getStatusLine().getStatusCode() < 400) {
+                this.requestCompressionAccepted = false;
+            }
+
+            return responseHandler.apply(response);
+        });
+    }
+
+    private <T> T execute(HttpRequestBase httpRequest, Function<HttpResponse, T> responseHandler) {
         try (CloseableHttpResponse response = this.httpClient.execute(httpRequest)) {
             return responseHandler.apply(response);
         } catch (IOException e) {
@@ -217,6 +385,44 @@ public class ConfluenceRestClient implements ConfluenceClient {
         }
     }
 
+    /**
+     * Replaces the JSON body of the given request with its gzip-compressed version if request compression is enabled
+     * and the body is large enough, and returns the uncompressed body ({@code null} if the body was not compressed).
+     */
+    private byte[] compressRequestBodyIfAboveThreshold(HttpRequestBase httpRequest) {
+        if (this.requestCompressionThreshold < 0 || !this.requestCompressionAccepted || !(httpRequest instanceof HttpEntityEnclosingRequestBase)) {
+            return null;
+        }
+
+        HttpEntityEnclosingRequestBase entityEnclosingRequest = (HttpEntityEnclosingRequestBase) httpRequest;
+        Header contentType = httpRequest.getFirstHeader(CONTENT_TYPE);
+        if (entityEnclosingRequest.getEntity() == null || contentType == null || !contentType.getValue().startsWith("application/json")) {
+            return null;
+        }
+
+        try {
+            byte[] uncompressedBody = toByteArray(entityEnclosingRequest.getEntity());
+            if (uncompressedBody.length < this.requestCompressionThreshold) {
+                entityEnclosingRequest.setEntity(new ByteArrayEntity(uncompressedBody));
+
+                return null;
+            }
+
+            ByteArrayOutputStream compressedBody = new ByteArrayOutputStream(uncompressedBody.length / 4);
+            try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressedBody)) {
+                gzipOutputStream.write(uncompressedBody);
+            }
+
+            entityEnclosingRequest.setEntity(new ByteArrayEntity(compressedBody.toByteArray()));
+            httpRequest.setHeader(CONTENT_ENCODING, "gzip");
+            this.transferStatistics.compressedRequest(uncompressedBody.length, compressedBody.size());
+
+            return uncompressedBody;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not compress request body", e);
+        }
+    }
+
     @Override
     public List<ConfluencePage> getChildPages(String contentId) {
         int start = 0;
@@ -235,6 +441,24 @@ public class ConfluenceRestClient implements ConfluenceClient {
         return childPages;
     }
 
+    @Override
+    public List<ConfluencePage> getDescendantPages(String contentId) {
+        int start = 0;
+        int limit = 100;
+
+        ArrayList<ConfluencePage> descendantPages = new ArrayList<>();
+        boolean fetchMore = true;
+        while (fetchMore) {
+            List<ConfluencePage> nextDescendantPages = getNextDescendantPages(contentId, limit, start);
+            descendantPages.addAll(nextDescendantPages);
+
+            start += limit;
+            fetchMore = nextDescendantPages.size() == limit;
+        }
+
+        return descendantPages;
+    }
+
     @Override
     public List<ConfluenceAttachment> getAttachments(String contentId) {
         int start = 0;
@@ -257,7 +481,19 @@ public class ConfluenceRestClient implements ConfluenceClient {
         List<ConfluencePage> pages = new ArrayList<>(limit);
         HttpGet getChildPagesByIdRequest = this.httpRequestFactory.getChildPagesByIdRequest(contentId, limit, start, "version,ancestors");
 
-        return sendRequestAndFailIfNot20x(getChildPagesByIdRequest, (response) -> {
+        return sendCoalescedRequestAndFailIfNot20x(getChildPagesByIdRequest, (response) -> {
+            JsonNode jsonNode = parseJsonResponse(response);
+            jsonNode.withArray("results").forEach((page) -> pages.add(extractConfluencePageWithoutContent(page)));
+
+            return pages;
+        });
+    }
+
+    private List<ConfluencePage> getNextDescendantPages(String contentId, int limit, int start) {
+        List<ConfluencePage> pages = new ArrayList<>(limit);
+        HttpGet getDescendantPagesByIdRequest = this.httpRequestFactory.getDescendantPagesByIdRequest(contentId, limit, start, "version,ancestors");
+
+        return sendCoalescedRequestAndFailIfNot20x(getDescendantPagesByIdRequest, (response) -> {
             JsonNode jsonNode = parseJsonResponse(response);
             jsonNode.withArray("results").forEach((page) -> pages.add(extractConfluencePageWithoutContent(page)));
 
@@ -269,7 +505,7 @@ public class ConfluenceRestClient implements ConfluenceClient {
         List<ConfluenceAttachment> attachments = new ArrayList<>(limit);
         HttpGet getAttachmentsRequest = this.httpRequestFactory.getAttachmentsRequest(contentId, limit, start, "version");
 
-        return sendRequestAndFailIfNot20x(getAttachmentsRequest, (response) -> {
+        return sendCoalescedRequestAndFailIfNot20x(getAttachmentsRequest, (response) -> {
             JsonNode jsonNode = parseJsonResponse(response);
             jsonNode.withArray("results").forEach(attachment -> attachments.add(extractConfluenceAttachment(attachment)));
 
@@ -287,13 +523,13 @@ public class ConfluenceRestClient implements ConfluenceClient {
     public String getPropertyByKey(String contentId, String key) {
         HttpGet propertyByKeyRequest = this.httpRequestFactory.getPropertyByKeyRequest(contentId, key);
 
-        return sendRequest(propertyByKeyRequest, (response) -> {
+        return sendCoalescedRequest(propertyByKeyRequest, () -> sendRequest(propertyByKeyRequest, (response) -> {
             if (response.getStatusLine().getStatusCode() == 200) {
                 return extractPropertyValueFromJsonNode(parseJsonResponse(response));
             } else {
                 return null;
             }
-        });
+        }));
     }
 
     @Override
@@ -363,19 +599,90 @@ public class ConfluenceRestClient implements ConfluenceClient {
         }
     }
 
-    private static CloseableHttpClient defaultHttpClient() {
+    private static CloseableHttpClient defaultHttpClient(TransferStatistics transferStatistics) {
         RequestConfig requestConfig = RequestConfig.custom()
                 .setConnectionRequestTimeout(20 * 1000)
                 .setConnectTimeout(20 * 1000)
                 .build();
 
+        // allow concurrent requests (e.g. for deleting pages in parallel) beyond the default of two connections per route
         return HttpClients.custom()
                 .setDefaultRequestConfig(requestConfig)
+                .setMaxConnPerRoute(8)
+                .setMaxConnTotal(8)
+                // compressed responses are decompressed between these interceptors, so they see both sizes
+                .addInterceptorFirst(countingResponseInterceptor(COMPRESSED_RESPONSE_ATTRIBUTE, transferStatistics::compressedResponseBytesRead))
+                .addInterceptorLast(countingResponseInterceptor(null, transferStatistics::uncompressedResponseBytesRead))
                 .build();
     }
 
+    /**
+     * Counts the bytes read from compressed response entities. If a context attribute is given, the interceptor marks
+     * compressed responses with it, otherwise it only counts responses marked as compressed.
+     */
+    private static HttpResponseInterceptor countingResponseInterceptor(String markingContextAttribute, LongConsumer bytesReadConsumer) {
+        return (response, context) -> {
+            HttpEntity entity = response.getEntity();
+            if (entity == null) {
+                return;
+            }
+
+            if (markingContextAttribute != null) {
+                Header contentEncoding = entity.getContentEncoding();
+                if (contentEncoding == null || !(contentEncoding.getValue().equalsIgnoreCase("gzip") || contentEncoding.getValue().equalsIgnoreCase("deflate"))) {
+                    return;
+                }
+
+                context.setAttribute(markingContextAttribute, true);
+            } else if (context.getAttribute(COMPRESSED_RESPONSE_ATTRIBUTE) == null) {
+                return;
+            }
+
+            response.setEntity(new HttpEntityWrapper(entity) {
+
+                @Override
+                public InputStream getContent() throws IOException {
+                    return new CountingInputStream(super.getContent(), bytesReadConsumer);
+                }
+
+            });
+        };
+    }
+
     private static String basicAuthorizationHeaderValue(String username, String password) {
         return "Basic " + Base64.getEncoder().encodeToString((username + ":" + password).getBytes(UTF_8));
     }
 
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        private final LongConsumer bytesReadConsumer;
+
+        CountingInputStream(InputStream inputStream, LongConsumer bytesReadConsumer) {
+            super(inputStream);
+            this.bytesReadConsumer = bytesReadConsumer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read >= 0) {
+                this.bytesReadConsumer.accept(1);
+            }
+
+            return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                this.bytesReadConsumer.accept(read);
+            }
+
+            return read;
+        }
+
+    }
+
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sahli.asciidoc.confluence.publisher.client.http;
+
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Base class for {@link ConfluenceClient} decorators, forwarding every call to the decorated client. Decorators
+ * override the calls they add behavior to, and can be chained by decorating another decorator.
+ */
+public abstract class ForwardingConfluenceClient implements ConfluenceClient {
+
+    private final ConfluenceClient delegate;
+
+    protected ForwardingConfluenceClient(ConfluenceClient delegate) {
+        this.delegate = delegate;
+    }
+
+    protected ConfluenceClient delegate() {
+        return this.delegate;
+    }
+
+    @Override
+    public String addPageUnderAncestor(String spaceKey, String ancestorId, String title, String content) {
+        return this.delegate.addPageUnderAncestor(spaceKey, ancestorId, title, content);
+    }
+
+    @Override
+    public void updatePage(String contentId, String ancestorId, String title, String content, int newVersion) {
+        this.delegate.updatePage(contentId, ancestorId, title, content, newVersion);
+    }
+
+    @Override
+    public void deletePage(String contentId) {
+        this.delegate.deletePage(contentId);
+    }
+
+    @Override
+    public void addAttachment(String contentId, String attachmentFileName, InputStream attachmentContent) {
+        this.delegate.addAttachment(contentId, attachmentFileName, attachmentContent);
+    }
+
+    @Override
+    public void updateAttachmentContent(String contentId, String attachmentId, InputStream attachmentContent) {
+        this.delegate.updateAttachmentContent(contentId, attachmentId, attachmentContent);
+    }
+
+    @Override
+    public void deleteAttachment(String attachmentId) {
+        this.delegate.deleteAttachment(attachmentId);
+    }
+
+    @Override
+    public ConfluenceAttachment getAttachmentByFileName(String contentId, String attachmentFileName) throws NotFoundException, MultipleResultsException {
+        return this.delegate.getAttachmentByFileName(contentId, attachmentFileName);
+    }
+
+    @Override
+    public ConfluencePage getPageWithContentAndVersionById(String contentId) {
+        return this.delegate.getPageWithContentAndVersionById(contentId);
+    }
+
+    @Override
+    public ConfluencePage getPageWithVersionById(String contentId) {
+        return this.delegate.getPageWithVersionById(contentId);
+    }
+
+    @Override
+    public InputStream getAttachmentContent(String relativeDownloadLink) {
+        return this.delegate.getAttachmentContent(relativeDownloadLink);
+    }
+
+    @Override
+    public List<ConfluencePage> getChildPages(String contentId) {
+        return this.delegate.getChildPages(contentId);
+    }
+
+    @Override
+    public List<ConfluencePage> getDescendantPages(String contentId) {
+        return this.delegate.getDescendantPages(contentId);
+    }
+
+    @Override
+    public List<ConfluenceAttachment> getAttachments(String contentId) {
+        return this.delegate.getAttachments(contentId);
+    }
+
+    @Override
+    public void setPropertyByKey(String contentId, String key, String value) {
+        this.delegate.setPropertyByKey(contentId, key, value);
+    }
+
+    @Override
+    public String getPropertyByKey(String contentId, String key) {
+        return this.delegate.getPropertyByKey(contentId, key);
+    }
+
+    @Override
+    public void deletePropertyByKey(String contentId, String key) {
+        this.delegate.deletePropertyByKey(contentId, key);
+    }
+
+}
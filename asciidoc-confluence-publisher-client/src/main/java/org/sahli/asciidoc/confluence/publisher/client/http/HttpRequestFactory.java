@@ -196,6 +196,31 @@ class HttpRequestFactory {
         return getChildPagesByIdRequest;
     }
 
+    HttpGet getDescendantPagesByIdRequest(String ancestorContentId, Integer limit, Integer start, String expandOptions) {
+        assertMandatoryParameter(isNotBlank(ancestorContentId), "ancestorContentId");
+        URIBuilder uriBuilder = new URIBuilder();
+        uriBuilder.setPath(this.confluenceRestApiEndpoint + "/content/" + ancestorContentId + "/descendant/page");
+
+        if (limit != null) {
+            uriBuilder.addParameter("limit", limit.toString());
+        }
+        if (start != null) {
+            uriBuilder.addParameter("start", start.toString());
+        }
+        if (isNotBlank(expandOptions)) {
+            uriBuilder.addParameter("expand", expandOptions);
+        }
+
+        HttpGet getDescendantPagesByIdRequest;
+        try {
+            getDescendantPagesByIdRequest = new HttpGet(uriBuilder.build().toString());
+        } catch (URISyntaxException e) {
+            throw new RuntimeException("Invalid URL", e);
+        }
+
+        return getDescendantPagesByIdRequest;
+    }
+
     public HttpGet getAttachmentsRequest(String contentId, Integer limit, Integer start, String expandOptions) {
         assertMandatoryParameter(isNotBlank(contentId), "contentId");
         URIBuilder uriBuilder = new URIBuilder();
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.sahli.asciidoc.confluence.publisher.client.http;
+
+import java.io.InputStream;
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Limits the calls to the decorated client to the given number per second, spacing them evenly and delaying the
+ * calling threads as needed. A call counts once even if it results in several requests (e.g. a paginated listing).
+ */
+public class RateLimitingConfluenceClient extends ForwardingConfluenceClient {
+
+    private final long permitIntervalNanos;
+    private long nextPermitNanos;
+
+    public RateLimitingConfluenceClient(ConfluenceClient delegate, double maxRequestsPerSecond) {
+        super(delegate);
+
+        if (maxRequestsPerSecond <= 0) {
+            throw new IllegalArgumentException("maxRequestsPerSecond must be positive");
+        }
+
+        this.permitIntervalNanos = (long) (SECONDS.toNanos(1) / maxRequestsPerSecond);
+        this.nextPermitNanos = System.nanoTime();
+    }
+
+    @Override
+    public String addPageUnderAncestor(String spaceKey, String ancestorId, String title, String content) {
+        acquirePermit();
+
+        return super.addPageUnderAncestor(spaceKey, ancestorId, title, content);
+    }
+
+    @Override
+    public void updatePage(String contentId, String ancestorId, String title, String content, int newVersion) {
+        acquirePermit();
+
+        super.updatePage(contentId, ancestorId, title, content, newVersion);
+    }
+
+    @Override
+    public void deletePage(String contentId) {
+        acquirePermit();
+
+        super.deletePage(contentId);
+    }
+
+    @Override
+    public void addAttachment(String contentId, String attachmentFileName, InputStream attachmentContent) {
+        acquirePermit();
+
+        super.addAttachment(contentId, attachmentFileName, attachmentContent);
+    }
+
+    @Override
+    public void updateAttachmentContent(String contentId, String attachmentId, InputStream attachmentContent) {
+        acquirePermit();
+
+        super.updateAttachmentContent(contentId, attachmentId, attachmentContent);
+    }
+
+    @Override
+    public void deleteAttachment(String attachmentId) {
+        acquirePermit();
+
+        super.deleteAttachment(attachmentId);
+    }
+
+    @Override
+    public ConfluenceAttachment getAttachmentByFileName(String contentId, String attachmentFileName) throws NotFoundException, MultipleResultsException {
+        acquirePermit();
+
+        return super.getAttachmentByFileName(contentId, attachmentFileName);
+    }
+
+    @Override
+    public ConfluencePage getPageWithContentAndVersionById(String contentId) {
+        acquirePermit();
+
+        return super.getPageWithContentAndVersionById(contentId);
+    }
+
+    @Override
+    public ConfluencePage getPageWithVersionById(String contentId) {
+        acquirePermit();
+
+        return super.getPageWithVersionById(contentId);
+    }
+
+    @Override
+    public InputStream getAttachmentContent(String relativeDownloadLink) {
+        acquirePermit();
+
+        return super.getAttachmentContent(relativeDownloadLink);
+    }
+
+    @Override
+    public List<ConfluencePage> getChildPages(String contentId) {
+        acquirePermit();
+
+        return super.getChildPages(contentId);
+    }
+
+    @Override
+    public List<ConfluencePage> getDescendantPages(String contentId) {
+        acquirePermit();
+
+        return super.getDescendantPages(contentId);
+    }
+
+    @Override
+    public List<ConfluenceAttachment> getAttachments(String contentId) {
+        acquirePermit();
+
+        return super.getAttachments(contentId);
+    }
+
+    @Override
+    public void setPropertyByKey(String contentId, String key, String value) {
+        acquirePermit();
+
+        super.setPropertyByKey(contentId, key, value);
+    }
+
+    @Override
+    public String getPropertyByKey(String contentId, String key) {
+        acquirePermit();
+
+        return super.getPropertyByKey(contentId, key);
+    }
+
+    @Override
+    public void deletePropertyByKey(String contentId, String key) {
+        acquirePermit();
+
+        super.deletePropertyByKey(contentId, key);
+    }
+
+    private void acquirePermit() {
+        long waitNanos;
+        synchronized (this) {
+            long nowNanos = System.nanoTime();
+            long permitNanos = Math.max(nowNanos, this.nextPermitNanos);
+            this.nextPermitNanos = permitNanos + this.permitIntervalNanos;
+            waitNanos = permitNanos - nowNanos;
+        }
+
+        if (waitNanos > 0) {
+            try {
+                NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Could not wait for request permit", e);
+            }
+        }
+    }
+
+}
@@ -34,6 +34,8 @@ import static org.sahli.asciidoc.confluence.publisher.client.utils.InputStreamUt
 @SuppressWarnings("WeakerAccess")
 public class RequestFailedException extends RuntimeException {
 
+    private final int statusCode;
+
     RequestFailedException(HttpRequest request, HttpResponse response) {
         super(""
             + response.getStatusLine().getStatusCode()
@@ -48,6 +50,12 @@ public class RequestFailedException extends RuntimeException {
             + " "
             + failedResponseContent(response)
         );
+
+        this.statusCode = response.getStatusLine().getStatusCode();
+    }
+
+    public int getStatusCode() {
+        return this.statusCode;
     }
 
     private static String failedRequestContent(HttpRequest request) {
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sahli.asciidoc.confluence.publisher.client.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the bytes of compressed requests and responses exchanged by a {@link ConfluenceRestClient}, before and after
+ * compression. Uncompressed requests and responses are not counted.
+ */
+public final class TransferStatistics {
+
+    private final AtomicLong uncompressedRequestBytes = new AtomicLong();
+    private final AtomicLong compressedRequestBytes = new AtomicLong();
+    private final AtomicLong uncompressedResponseBytes = new AtomicLong();
+    private final AtomicLong compressedResponseBytes = new AtomicLong();
+
+    void compressedRequest(long uncompressedBytes, long compressedBytes) {
+        this.uncompressedRequestBytes.addAndGet(uncompressedBytes);
+        this.compressedRequestBytes.addAndGet(compressedBytes);
+    }
+
+    void uncompressedResponseBytesRead(long bytes) {
+        this.uncompressedResponseBytes.addAndGet(bytes);
+    }
+
+    void compressedResponseBytesRead(long bytes) {
+        this.compressedResponseBytes.addAndGet(bytes);
+    }
+
+    public long uncompressedRequestBytes() {
+        return this.uncompressedRequestBytes.get();
+    }
+
+    public long compressedRequestBytes() {
+        return this.compressedRequestBytes.get();
+    }
+
+    public long uncompressedResponseBytes() {
+        return this.uncompressedResponseBytes.get();
+    }
+
+    public long compressedResponseBytes() {
+        return this.compressedResponseBytes.get();
+    }
+
+    public long bytesSaved() {
+        return uncompressedRequestBytes() - compressedRequestBytes() + uncompressedResponseBytes() - compressedResponseBytes();
+    }
+
+    @Override
+    public String toString() {
+        return "requests " + uncompressedRequestBytes() + " -> " + compressedRequestBytes() + " bytes, responses "
+                + uncompressedResponseBytes() + " -> " + compressedResponseBytes() + " bytes, " + bytesSaved() + " bytes saved";
+    }
+
+}
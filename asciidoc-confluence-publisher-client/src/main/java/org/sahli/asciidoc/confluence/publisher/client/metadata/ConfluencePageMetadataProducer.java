@@ -0,0 +1,34 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sahli.asciidoc.confluence.publisher.client.metadata;
+
+/**
+ * Produces the pages to publish incrementally, e.g. while they are converted. Used by
+ * {@link org.sahli.asciidoc.confluence.publisher.client.ConfluencePublisher#publish(ConfluencePageMetadataProducer, int)},
+ * which runs the producer in a separate thread while publishing the pages already produced.
+ */
+@FunctionalInterface
+public interface ConfluencePageMetadataProducer {
+
+    /**
+     * Passes all pages to the given sink, every page before its children, and returns once all pages are passed. The
+     * sink may block until earlier pages are published, and must not be used once this method returns. An exception
+     * thrown by this method ends the publication with the pages passed so far.
+     */
+    void produce(ConfluencePageMetadataSink pageSink);
+
+}
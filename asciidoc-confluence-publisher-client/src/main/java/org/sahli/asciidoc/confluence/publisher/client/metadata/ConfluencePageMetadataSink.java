@@ -0,0 +1,31 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sahli.asciidoc.confluence.publisher.client.metadata;
+
+/**
+ * Receives pages as soon as they are ready to be published.
+ */
+@FunctionalInterface
+public interface ConfluencePageMetadataSink {
+
+    /**
+     * @param parentPage the parent page (already passed to this sink), or {@code null} for a root page
+     * @param page       the page to publish; its children are passed separately after the page itself
+     */
+    void accept(ConfluencePageMetadata parentPage, ConfluencePageMetadata page);
+
+}
@@ -30,6 +30,9 @@ public class ConfluencePublisherMetadata {
     private String ancestorId;
     private List<ConfluencePageMetadata> pages = new ArrayList<>();
     private ConfluencePublisherPublishStrategy publishStrategy = ConfluencePublisherPublishStrategy.APPEND_TO_ANCESTOR;
+    private List<String> scope = new ArrayList<>();
+    private boolean scopeWithoutChildren;
+    private List<ConfluencePublisherTarget> additionalTargets = new ArrayList<>();
 
     public String getSpaceKey() {
         return this.spaceKey;
@@ -66,4 +69,45 @@ public class ConfluencePublisherMetadata {
     public void setPublishStrategy(ConfluencePublisherPublishStrategy publishStrategy) {
         this.publishStrategy = publishStrategy;
     }
+
+    /**
+     * Titles of the pages whose subtrees are published, or empty if all pages are published. Pages outside of these
+     * subtrees are neither published nor deleted.
+     */
+    public List<String> getScope() {
+        return this.scope;
+    }
+
+    @RuntimeUse
+    public void setScope(List<String> scope) {
+        this.scope = scope;
+    }
+
+    /**
+     * Whether only the pages in scope themselves are published, without their subtrees. Their children on Confluence are
+     * neither published nor deleted.
+     */
+    public boolean isScopeWithoutChildren() {
+        return this.scopeWithoutChildren;
+    }
+
+    @RuntimeUse
+    public void setScopeWithoutChildren(boolean scopeWithoutChildren) {
+        this.scopeWithoutChildren = scopeWithoutChildren;
+    }
+
+    /**
+     * Targets the pages are published to as well, concurrently with and independently of the space and ancestor above,
+     * or empty if the pages are only published there. A failure to publish to one target does not stop publishing to
+     * the others. Additional targets are not supported when publishing with a journal file or publishing pages as they
+     * are produced.
+     */
+    public List<ConfluencePublisherTarget> getAdditionalTargets() {
+        return this.additionalTargets;
+    }
+
+    @RuntimeUse
+    public void setAdditionalTargets(List<ConfluencePublisherTarget> additionalTargets) {
+        this.additionalTargets = additionalTargets;
+    }
 }
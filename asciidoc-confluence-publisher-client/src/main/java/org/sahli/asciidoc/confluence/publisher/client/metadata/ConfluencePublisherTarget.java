@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.sahli.asciidoc.confluence.publisher.client.metadata;
+
+import org.sahli.asciidoc.confluence.publisher.client.support.RuntimeUse;
+
+/**
+ * A Confluence instance and location the pages are published to, in addition to the space and ancestor of the
+ * publisher metadata (see {@link ConfluencePublisherMetadata#getAdditionalTargets()}). The same pages, publish strategy
+ * and scope are published to every target, using a separate client per target with its own credentials and request
+ * limit.
+ */
+public class ConfluencePublisherTarget {
+
+    private String rootConfluenceUrl;
+    private String username;
+    private String password;
+    private String spaceKey;
+    private String ancestorId;
+    private Double maxRequestsPerSecond;
+
+    /**
+     * Root URL of the Confluence instance of this target, e.g. {@code https://confluence.example.com}.
+     */
+    public String getRootConfluenceUrl() {
+        return this.rootConfluenceUrl;
+    }
+
+    @RuntimeUse
+    public void setRootConfluenceUrl(String rootConfluenceUrl) {
+        this.rootConfluenceUrl = rootConfluenceUrl;
+    }
+
+    /**
+     * Username used to publish to this target.
+     */
+    public String getUsername() {
+        return this.username;
+    }
+
+    @RuntimeUse
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    /**
+     * Password (or API token) of the user used to publish to this target.
+     */
+    public String getPassword() {
+        return this.password;
+    }
+
+    @RuntimeUse
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    /**
+     * Key of the space the pages are published to on this target.
+     */
+    public String getSpaceKey() {
+        return this.spaceKey;
+    }
+
+    @RuntimeUse
+    public void setSpaceKey(String spaceKey) {
+        this.spaceKey = spaceKey;
+    }
+
+    /**
+     * Id of the page on this target under which the pages are published (or which is replaced, depending on
+     * the publish strategy).
+     */
+    public String getAncestorId() {
+        return this.ancestorId;
+    }
+
+    @RuntimeUse
+    public void setAncestorId(String ancestorId) {
+        this.ancestorId = ancestorId;
+    }
+
+    /**
+     * Maximum number of requests sent to this target per second, or {@code null} if requests are not limited.
+     */
+    public Double getMaxRequestsPerSecond() {
+        return this.maxRequestsPerSecond;
+    }
+
+    @RuntimeUse
+    public void setMaxRequestsPerSecond(Double maxRequestsPerSecond) {
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+    }
+
+}
@@ -21,39 +21,57 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.sahli.asciidoc.confluence.publisher.client.http.ConfluenceAttachment;
 import org.sahli.asciidoc.confluence.publisher.client.http.ConfluencePage;
 import org.sahli.asciidoc.confluence.publisher.client.http.ConfluenceRestClient;
-import org.sahli.asciidoc.confluence.publisher.client.http.NotFoundException;
+import org.sahli.asciidoc.confluence.publisher.client.http.RequestFailedException;
 import org.sahli.asciidoc.confluence.publisher.client.metadata.ConfluencePageMetadata;
+import org.sahli.asciidoc.confluence.publisher.client.metadata.ConfluencePageMetadataSink;
 import org.sahli.asciidoc.confluence.publisher.client.metadata.ConfluencePublisherMetadata;
+import org.sahli.asciidoc.confluence.publisher.client.metadata.ConfluencePublisherTarget;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.exists;
 import static java.nio.file.Files.newInputStream;
+import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static java.util.stream.Collectors.toMap;
+import static org.apache.commons.codec.digest.DigestUtils.sha256Hex;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.junit.rules.ExpectedException.none;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
+import static org.sahli.asciidoc.confluence.publisher.client.ConfluencePublisher.ATTACHMENT_PARALLELISM_PER_PUBLICATION;
+import static org.sahli.asciidoc.confluence.publisher.client.ConfluencePublisher.MAX_CONCURRENT_ATTACHMENT_SYNCHRONIZATIONS;
 import static org.sahli.asciidoc.confluence.publisher.client.ConfluencePublisher.CONTENT_HASH_PROPERTY_KEY;
 import static org.sahli.asciidoc.confluence.publisher.client.ConfluencePublisher.INITIAL_PAGE_VERSION;
 import static org.sahli.asciidoc.confluence.publisher.client.utils.InputStreamUtils.inputStreamAsString;
@@ -70,6 +88,9 @@ public class ConfluencePublisherTest {
     @Rule
     public final ExpectedException expectedException = none();
 
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Test
     public void publish_withMetadataMissingSpaceKey_throwsIllegalArgumentException() {
         // assert
@@ -181,7 +202,6 @@ public class ConfluencePublisherTest {
         // arrange
         ConfluenceRestClient confluenceRestClientMock = mock(ConfluenceRestClient.class);
         when(confluenceRestClientMock.addPageUnderAncestor(anyString(), anyString(), anyString(), anyString())).thenReturn("4321");
-        when(confluenceRestClientMock.getAttachmentByFileName(anyString(), anyString())).thenThrow(new NotFoundException());
 
         ArgumentCaptor<String> contentId = ArgumentCaptor.forClass(String.class);
         ArgumentCaptor<String> attachmentFileName = ArgumentCaptor.forClass(String.class);
@@ -206,7 +226,7 @@ public class ConfluencePublisherTest {
         ConfluencePage existingPage = new ConfluencePage("1234", "3456", "Existing Page", "<h1>Some Other Confluence Content</h1>", 1);
 
         ConfluenceRestClient confluenceRestClientMock = mock(ConfluenceRestClient.class);
-        when(confluenceRestClientMock.getChildPages("1234")).thenReturn(Collections.singletonList(existingPage));
+        when(confluenceRestClientMock.getDescendantPages("1234")).thenReturn(Collections.singletonList(existingPage));
         when(confluenceRestClientMock.getPropertyByKey("3456", CONTENT_HASH_PROPERTY_KEY)).thenReturn("someWrongHash");
 
         ConfluencePublisherListener confluencePublisherListenerMock = mock(ConfluencePublisherListener.class);
@@ -228,10 +248,10 @@ public class ConfluencePublisherTest {
     @Test
     public void publish_metadataWithExistingPageWithDifferentContentUnderRootAncestorReplaceStrategy_sendsUpdateRequest() {
         // arrange
-        ConfluencePage existingPage = new ConfluencePage("ancestor", "1234", "Existing Page", "<h1>Some Other Confluence Content</h1>", 1);
+        ConfluencePage existingPage = new ConfluencePage("ancestor", "1234", "Existing Page", 1);
 
         ConfluenceRestClient confluenceRestClientMock = mock(ConfluenceRestClient.class);
-        when(confluenceRestClientMock.getPageWithContentAndVersionById("1234")).thenReturn(existingPage);
+        when(confluenceRestClientMock.getPageWithVersionById("1234")).thenReturn(existingPage);
 
         ConfluencePublisherListener confluencePublisherListenerMock = mock(ConfluencePublisherListener.class);
 
@@ -247,6 +267,31 @@ public class ConfluencePublisherTest {
         verify(confluencePublisherListenerMock, times(1)).pageUpdated(eq(existingPage), eq(new ConfluencePage("ancestor", "1234", "Existing Page", "<h1>Some Confluence Content</h1>", 2)));
         verify(confluencePublisherListenerMock, times(1)).publishCompleted();
         verifyNoMoreInteractions(confluencePublisherListenerMock);
+        verify(confluenceRestClientMock, never()).getPageWithContentAndVersionById(anyString());
+    }
+
+    @Test
+    public void publish_updateWithVersionConflict_retriesUpdateOnceWithCurrentVersion() {
+        // arrange
+        ConfluencePage existingPage = new ConfluencePage("1234", "3456", "Existing Page", 1);
+        RequestFailedException versionConflict = mock(RequestFailedException.class);
+        when(versionConflict.getStatusCode()).thenReturn(409);
+
+        ConfluenceRestClient confluenceRestClientMock = mock(ConfluenceRestClient.class);
+        when(confluenceRestClientMock.getDescendantPages("1234")).thenReturn(singletonList(existingPage));
+        when(confluenceRestClientMock.getPageWithVersionById("3456")).thenReturn(new ConfluencePage("1234", "3456", "Existing Page", 5));
+        doThrow(versionConflict).when(confluenceRestClientMock).updatePage("3456", "1234", "Existing Page", "<h1>Some Confluence Content</h1>", 2);
+
+        ConfluencePublisherListener confluencePublisherListenerMock = mock(ConfluencePublisherListener.class);
+
+        ConfluencePublisher confluencePublisher = confluencePublisher("existing-page-ancestor-id", confluenceRestClientMock, confluencePublisherListenerMock);
+
+        // act
+        confluencePublisher.publish();
+
+        // assert
+        verify(confluenceRestClientMock, times(1)).updatePage("3456", "1234", "Existing Page", "<h1>Some Confluence Content</h1>", 6);
+        verify(confluencePublisherListenerMock, times(1)).pageUpdated(eq(existingPage), eq(new ConfluencePage("1234", "3456", "Existing Page", "<h1>Some Confluence Content</h1>", 6)));
     }
 
     @Test
@@ -255,11 +300,11 @@ public class ConfluencePublisherTest {
         ConfluenceRestClient confluenceRestClientMock = mock(ConfluenceRestClient.class);
 
         ConfluencePage existingConfluencePage = new ConfluencePage("1234", "3456", "Existing Page", "<h1>Some Confluence Content</h1>", 1);
-        when(confluenceRestClientMock.getChildPages("1234")).thenReturn(Collections.singletonList(existingConfluencePage));
+        when(confluenceRestClientMock.getDescendantPages("1234")).thenReturn(Collections.singletonList(existingConfluencePage));
         when(confluenceRestClientMock.getPropertyByKey("3456", CONTENT_HASH_PROPERTY_KEY)).thenReturn(SOME_CONFLUENCE_CONTENT_SHA256_HASH);
 
         ConfluenceAttachment existingConfluenceAttachment = new ConfluenceAttachment("att12", "attachmentOne.txt", "/download/attachmentOne.txt", 1);
-        when(confluenceRestClientMock.getAttachmentByFileName("3456", "attachmentOne.txt")).thenReturn(existingConfluenceAttachment);
+        when(confluenceRestClientMock.getAttachments("3456")).thenReturn(singletonList(existingConfluenceAttachment));
 
         when(confluenceRestClientMock.getAttachmentContent(anyString())).thenReturn(new ByteArrayInputStream("Old content".getBytes()));
 
@@ -281,11 +326,11 @@ public class ConfluencePublisherTest {
         ConfluenceRestClient confluenceRestClientMock = mock(ConfluenceRestClient.class);
 
         ConfluencePage existingConfluencePage = new ConfluencePage("1234", "3456", "Existing Page", "<h1>Some Confluence Content</h1>", 1);
-        when(confluenceRestClientMock.getChildPages("1234")).thenReturn(Collections.singletonList(existingConfluencePage));
+        when(confluenceRestClientMock.getDescendantPages("1234")).thenReturn(Collections.singletonList(existingConfluencePage));
         when(confluenceRestClientMock.getPropertyByKey("3456", CONTENT_HASH_PROPERTY_KEY)).thenReturn(CONTENT_HASH_PROPERTY_KEY);
 
         ConfluenceAttachment existingConfluenceAttachment = new ConfluenceAttachment("att12", "attachmentOne.txt", "/download/attachmentOne.txt", 1);
-        when(confluenceRestClientMock.getAttachmentByFileName("3456", "attachmentOne.txt")).thenReturn(existingConfluenceAttachment);
+        when(confluenceRestClientMock.getAttachments("3456")).thenReturn(singletonList(existingConfluenceAttachment));
 
         when(confluenceRestClientMock.getAttachmentContent(anyString())).thenReturn(new ByteArrayInputStream("attachment1".getBytes()));
 
@@ -299,13 +344,118 @@ public class ConfluencePublisherTest {
         verify(confluenceRestClientMock, never()).updateAttachmentContent(anyString(), anyString(), any(InputStream.class));
     }
 
+    @Test
+    public void publish_metadataWithExistingPageAndAttachmentsOnConfluence_synchronizesAttachmentsBasedOnSingleAttachmentListing() {
+        // arrange
+        ConfluenceRestClient confluenceRestClientMock = mock(ConfluenceRestClient.class);
+
+        ConfluencePage existingConfluencePage = new ConfluencePage("1234", "3456", "Existing Page", "<h1>Some Confluence Content</h1>", 1);
+        when(confluenceRestClientMock.getDescendantPages("1234")).thenReturn(singletonList(existingConfluencePage));
+        when(confluenceRestClientMock.getPropertyByKey("3456", CONTENT_HASH_PROPERTY_KEY)).thenReturn(SOME_CONFLUENCE_CONTENT_SHA256_HASH);
+
+        ConfluenceAttachment existingConfluenceAttachment = new ConfluenceAttachment("att12", "attachmentOne.txt", "/download/attachmentOne.txt", 1);
+        ConfluenceAttachment obsoleteConfluenceAttachment = new ConfluenceAttachment("att34", "obsolete.txt", "/download/obsolete.txt", 1);
+        when(confluenceRestClientMock.getAttachments("3456")).thenReturn(asList(existingConfluenceAttachment, obsoleteConfluenceAttachment));
+        when(confluenceRestClientMock.getAttachmentContent("/download/attachmentOne.txt")).thenReturn(new ByteArrayInputStream("attachment1".getBytes()));
+
+        ConfluencePublisher confluencePublisher = confluencePublisher("existing-page-and-existing-attachment-space-key", confluenceRestClientMock);
+
+        // act
+        confluencePublisher.publish();
+
+        // assert
+        verify(confluenceRestClientMock, times(1)).getAttachments("3456");
+        verify(confluenceRestClientMock, times(1)).deleteAttachment("att34");
+        verify(confluenceRestClientMock, never()).getAttachmentByFileName(anyString(), anyString());
+        verify(confluenceRestClientMock, never()).addAttachment(anyString(), anyString(), any(InputStream.class));
+        verify(confluenceRestClientMock, never()).updateAttachmentContent(anyString(), anyString(), any(InputStream.class));
+    }
+
+    @Test
+    public void publish_pageWithMoreAttachmentsThanAttachmentParallelism_addsAtMostAttachmentParallelismAttachmentsConcurrently() throws Exception {
+        // arrange
+        ConfluencePublisherMetadata metadata = metadata("one-page-ancestor-id");
+        for (int i = 0; i < 2 * ATTACHMENT_PARALLELISM_PER_PUBLICATION; i++) {
+            metadata.getPages().get(0).getAttachments().put("attachment" + i + ".txt", this.temporaryFolder.newFile("attachment" + i + ".txt").getAbsolutePath());
+        }
+
+        AtomicInteger concurrentAttachmentRequests = new AtomicInteger();
+        AtomicInteger maxConcurrentAttachmentRequests = new AtomicInteger();
+        CountDownLatch attachmentParallelismReached = new CountDownLatch(ATTACHMENT_PARALLELISM_PER_PUBLICATION);
+
+        ConfluenceRestClient confluenceRestClientMock = mock(ConfluenceRestClient.class);
+        when(confluenceRestClientMock.addPageUnderAncestor(anyString(), anyString(), anyString(), anyString())).thenReturn("2345");
+        doAnswer((invocation) -> {
+            maxConcurrentAttachmentRequests.accumulateAndGet(concurrentAttachmentRequests.incrementAndGet(), Math::max);
+            attachmentParallelismReached.countDown();
+            attachmentParallelismReached.await(5, SECONDS);
+            concurrentAttachmentRequests.decrementAndGet();
+
+            return null;
+        }).when(confluenceRestClientMock).addAttachment(anyString(), anyString(), any(InputStream.class));
+
+        ConfluencePublisher confluencePublisher = new ConfluencePublisher(metadata, confluenceRestClientMock);
+
+        // act
+        confluencePublisher.publish();
+
+        // assert
+        verify(confluenceRestClientMock, times(2 * ATTACHMENT_PARALLELISM_PER_PUBLICATION)).addAttachment(eq("2345"), anyString(), any(InputStream.class));
+        assertThat(maxConcurrentAttachmentRequests.get(), is(ATTACHMENT_PARALLELISM_PER_PUBLICATION));
+    }
+
+    @Test
+    public void publish_concurrentPublicationsWithMoreAttachmentsThanMaxConcurrentAttachmentSynchronizations_addAtMostMaxConcurrentAttachmentSynchronizationsAttachmentsConcurrently() throws Exception {
+        // arrange
+        int publications = MAX_CONCURRENT_ATTACHMENT_SYNCHRONIZATIONS / ATTACHMENT_PARALLELISM_PER_PUBLICATION + 1;
+
+        AtomicInteger concurrentAttachmentRequests = new AtomicInteger();
+        AtomicInteger maxConcurrentAttachmentRequests = new AtomicInteger();
+        CountDownLatch maxConcurrentAttachmentSynchronizationsReached = new CountDownLatch(MAX_CONCURRENT_ATTACHMENT_SYNCHRONIZATIONS);
+
+        ConfluenceRestClient confluenceRestClientMock = mock(ConfluenceRestClient.class);
+        when(confluenceRestClientMock.addPageUnderAncestor(anyString(), anyString(), anyString(), anyString())).thenReturn("2345");
+        doAnswer((invocation) -> {
+            maxConcurrentAttachmentRequests.accumulateAndGet(concurrentAttachmentRequests.incrementAndGet(), Math::max);
+            maxConcurrentAttachmentSynchronizationsReached.countDown();
+            maxConcurrentAttachmentSynchronizationsReached.await(5, SECONDS);
+            concurrentAttachmentRequests.decrementAndGet();
+
+            return null;
+        }).when(confluenceRestClientMock).addAttachment(anyString(), anyString(), any(InputStream.class));
+
+        List<Thread> publicationThreads = new ArrayList<>();
+        for (int publication = 0; publication < publications; publication++) {
+            ConfluencePublisherMetadata metadata = metadata("one-page-ancestor-id");
+            for (int i = 0; i < ATTACHMENT_PARALLELISM_PER_PUBLICATION; i++) {
+                metadata.getPages().get(0).getAttachments().put("attachment" + i + ".txt", this.temporaryFolder.newFile("publication" + publication + "-attachment" + i + ".txt").getAbsolutePath());
+            }
+
+            ConfluencePublisher confluencePublisher = new ConfluencePublisher(metadata, confluenceRestClientMock);
+            publicationThreads.add(new Thread(confluencePublisher::publish));
+        }
+
+        // act
+        for (Thread publicationThread : publicationThreads) {
+            publicationThread.start();
+        }
+
+        for (Thread publicationThread : publicationThreads) {
+            publicationThread.join();
+        }
+
+        // assert
+        verify(confluenceRestClientMock, times(publications * ATTACHMENT_PARALLELISM_PER_PUBLICATION)).addAttachment(eq("2345"), anyString(), any(InputStream.class));
+        assertThat(maxConcurrentAttachmentRequests.get(), is(MAX_CONCURRENT_ATTACHMENT_SYNCHRONIZATIONS));
+    }
+
     @Test
     public void publish_metadataWithOneExistingPageButConfluencePageHasMissingHashPropertyValue_pageIsUpdatedAndHashPropertyIsSet() {
         // arrange
         ConfluencePage existingPage = new ConfluencePage("1234", "12", "Some Confluence Content", "<h1>Some Confluence Content</1>", 1);
 
         ConfluenceRestClient confluenceRestClientMock = mock(ConfluenceRestClient.class);
-        when(confluenceRestClientMock.getChildPages("1234")).thenReturn(singletonList(existingPage));
+        when(confluenceRestClientMock.getDescendantPages("1234")).thenReturn(singletonList(existingPage));
         when(confluenceRestClientMock.getPropertyByKey("12", CONTENT_HASH_PROPERTY_KEY)).thenReturn(null);
 
         ConfluencePublisher confluencePublisher = confluencePublisher("one-page-space-key", confluenceRestClientMock);
@@ -324,8 +474,7 @@ public class ConfluencePublisherTest {
         ConfluencePage existingChildPage = new ConfluencePage("2345", "3456", "Some Child Content", "<h1>Some Child Content</1>", 3);
 
         ConfluenceRestClient confluenceRestClientMock = mock(ConfluenceRestClient.class);
-        when(confluenceRestClientMock.getChildPages("1234")).thenReturn(singletonList(existingParentPage));
-        when(confluenceRestClientMock.getChildPages("2345")).thenReturn(singletonList(existingChildPage));
+        when(confluenceRestClientMock.getDescendantPages("1234")).thenReturn(asList(existingParentPage, existingChildPage));
 
         ConfluencePublisherListener confluencePublisherListenerMock = mock(ConfluencePublisherListener.class);
 
@@ -336,9 +485,13 @@ public class ConfluencePublisherTest {
 
         // assert
         verify(confluenceRestClientMock, times(1)).deletePage(eq("2345"));
+        verify(confluenceRestClientMock, times(1)).getDescendantPages("1234");
+        verify(confluenceRestClientMock, never()).getChildPages(anyString());
 
         verify(confluencePublisherListenerMock, times(1)).pageDeleted(eq(new ConfluencePage("1234", "2345", "Some Confluence Content", "<h1>Some Confluence Content</1>", 2)));
         verify(confluencePublisherListenerMock, times(1)).pageDeleted(eq(new ConfluencePage("2345", "3456", "Some Child Content", "<h1>Some Child Content</1>", 3)));
+        verify(confluencePublisherListenerMock, times(1)).deletionProgress(1, 2);
+        verify(confluencePublisherListenerMock, times(1)).deletionProgress(2, 2);
         verify(confluencePublisherListenerMock, times(1)).publishCompleted();
         verifyNoMoreInteractions(confluencePublisherListenerMock);
     }
@@ -350,8 +503,7 @@ public class ConfluencePublisherTest {
         ConfluencePage existingChildPage = new ConfluencePage("2345", "3456", "Some Child Content", "<h1>Some Child Content</1>", 3);
 
         ConfluenceRestClient confluenceRestClientMock = mock(ConfluenceRestClient.class);
-        when(confluenceRestClientMock.getChildPages("1234")).thenReturn(singletonList(existingParentPage));
-        when(confluenceRestClientMock.getChildPages("2345")).thenReturn(singletonList(existingChildPage));
+        when(confluenceRestClientMock.getDescendantPages("1234")).thenReturn(asList(existingParentPage, existingChildPage));
 
         ConfluencePublisherListener confluencePublisherListenerMock = mock(ConfluencePublisherListener.class);
 
@@ -368,16 +520,336 @@ public class ConfluencePublisherTest {
         verifyNoMoreInteractions(confluencePublisherListenerMock);
     }
 
+    @Test
+    public void publish_existingPageMovedUnderOtherParent_sendsUpdateRequestWithNewAncestorInsteadOfDeletingAndAddingPage() {
+        // arrange
+        ConfluencePage existingParentPage = new ConfluencePage("72189173", "1234", "Some Confluence Content", "<h1>Some Confluence Content</h1>", 1);
+        ConfluencePage existingMovedPage = new ConfluencePage("72189173", "2345", "Some Child Content", "<h1>Some Child Content</h1>", 3);
+
+        ConfluenceRestClient confluenceRestClientMock = mock(ConfluenceRestClient.class);
+        when(confluenceRestClientMock.getDescendantPages("72189173")).thenReturn(asList(existingParentPage, existingMovedPage));
+        when(confluenceRestClientMock.getPropertyByKey("1234", CONTENT_HASH_PROPERTY_KEY)).thenReturn(sha256Hex("<h1>Some Confluence Content</h1>"));
+        when(confluenceRestClientMock.getPropertyByKey("2345", CONTENT_HASH_PROPERTY_KEY)).thenReturn(sha256Hex("<h1>Some Child Content</h1>"));
+
+        ConfluencePublisherListener confluencePublisherListenerMock = mock(ConfluencePublisherListener.class);
+
+        ConfluencePublisher confluencePublisher = confluencePublisher("root-ancestor-id-multiple-pages", confluenceRestClientMock, confluencePublisherListenerMock);
+
+        // act
+        confluencePublisher.publish();
+
+        // assert
+        verify(confluenceRestClientMock, times(1)).updatePage(eq("2345"), eq("1234"), eq("Some Child Content"), eq("<h1>Some Child Content</h1>"), eq(4));
+        verify(confluenceRestClientMock, never()).updatePage(eq("1234"), anyString(), anyString(), anyString(), anyInt());
+        verify(confluenceRestClientMock, never()).addPageUnderAncestor(anyString(), anyString(), anyString(), anyString());
+        verify(confluenceRestClientMock, never()).deletePage(anyString());
+
+        verify(confluencePublisherListenerMock, times(1)).pageUpdated(eq(existingMovedPage), eq(new ConfluencePage("1234", "2345", "Some Child Content", "<h1>Some Child Content</h1>", 4)));
+        verify(confluencePublisherListenerMock, times(1)).publishCompleted();
+        verifyNoMoreInteractions(confluencePublisherListenerMock);
+    }
+
+    @Test
+    public void publish_withJournalAfterFailedPublication_resumesWithoutVerifyingCompletedPagesAgainAndDeletesJournal() throws Exception {
+        // arrange
+        Path journalFile = this.temporaryFolder.getRoot().toPath().resolve("publishing-journal");
+        ConfluencePage completedPage = new ConfluencePage("72189173", "1234", "Some Confluence Content", "<h1>Some Confluence Content</h1>", INITIAL_PAGE_VERSION);
+
+        ConfluenceRestClient confluenceRestClientMock = mock(ConfluenceRestClient.class);
+        when(confluenceRestClientMock.addPageUnderAncestor(anyString(), anyString(), anyString(), anyString()))
+                .thenReturn("1234")
+                .thenThrow(new RuntimeException("network error"))
+                .thenReturn("2345");
+
+        ConfluencePublisher confluencePublisher = new ConfluencePublisher(metadata("root-ancestor-id-multiple-pages"), confluenceRestClientMock, mock(ConfluencePublisherListener.class), journalFile);
+
+        try {
+            confluencePublisher.publish();
+            fail("first publication expected to fail");
+        } catch (RuntimeException e) {
+            assertThat(e.getMessage(), is("network error"));
+        }
+
+        when(confluenceRestClientMock.getDescendantPages("72189173")).thenReturn(singletonList(completedPage));
+
+        // act
+        confluencePublisher.publish();
+
+        // assert
+        verify(confluenceRestClientMock, times(1)).addPageUnderAncestor(eq("~personalSpace"), eq("72189173"), eq("Some Confluence Content"), anyString());
+        verify(confluenceRestClientMock, times(2)).addPageUnderAncestor(eq("~personalSpace"), eq("1234"), eq("Some Child Content"), anyString());
+        verify(confluenceRestClientMock, never()).getPropertyByKey(eq("1234"), anyString());
+        verify(confluenceRestClientMock, never()).updatePage(eq("1234"), anyString(), anyString(), anyString(), anyInt());
+        verify(confluenceRestClientMock, times(1)).getAttachments("1234");
+        assertThat(exists(journalFile), is(false));
+    }
+
+    @Test
+    public void publish_scopeWithChildPage_publishesChildPageUnderExistingParentWithoutTouchingOtherPages() {
+        // arrange
+        ConfluencePage existingParentPage = new ConfluencePage("72189173", "1234", "Some Confluence Content", "<h1>Other Content</h1>", 2);
+        ConfluencePage existingSiblingPage = new ConfluencePage("72189173", "5678", "Some Sibling Content", "<h1>Some Sibling Content</h1>", 1);
+
+        ConfluenceRestClient confluenceRestClientMock = mock(ConfluenceRestClient.class);
+        when(confluenceRestClientMock.getChildPages("72189173")).thenReturn(asList(existingParentPage, existingSiblingPage));
+        when(confluenceRestClientMock.addPageUnderAncestor(anyString(), anyString(), anyString(), anyString())).thenReturn("2345");
+
+        ConfluencePublisherMetadata metadata = metadata("root-ancestor-id-multiple-pages");
+        metadata.setScope(singletonList("Some Child Content"));
+
+        ConfluencePublisher confluencePublisher = new ConfluencePublisher(metadata, confluenceRestClientMock);
+
+        // act
+        confluencePublisher.publish();
+
+        // assert
+        verify(confluenceRestClientMock, times(1)).addPageUnderAncestor("~personalSpace", "1234", "Some Child Content", "<h1>Some Child Content</h1>");
+        verify(confluenceRestClientMock, never()).updatePage(anyString(), anyString(), anyString(), anyString(), anyInt());
+        verify(confluenceRestClientMock, never()).deletePage(anyString());
+    }
+
+    @Test
+    public void publish_scopeWithoutChildren_publishesScopePageWithoutTouchingItsChildPages() {
+        // arrange
+        ConfluencePage existingPage = new ConfluencePage("72189173", "1234", "Some Confluence Content", "<h1>Other Content</h1>", 2);
+
+        ConfluenceRestClient confluenceRestClientMock = mock(ConfluenceRestClient.class);
+        when(confluenceRestClientMock.getChildPages("72189173")).thenReturn(singletonList(existingPage));
+        when(confluenceRestClientMock.getPageWithVersionById("1234")).thenReturn(existingPage);
+
+        ConfluencePublisherMetadata metadata = metadata("root-ancestor-id-multiple-pages");
+        metadata.setScope(singletonList("Some Confluence Content"));
+        metadata.setScopeWithoutChildren(true);
+
+        ConfluencePublisher confluencePublisher = new ConfluencePublisher(metadata, confluenceRestClientMock);
+
+        // act
+        confluencePublisher.publish();
+
+        // assert
+        verify(confluenceRestClientMock, times(1)).updatePage(eq("1234"), eq("72189173"), eq("Some Confluence Content"), eq("<h1>Some Confluence Content</h1>"), eq(3));
+        verify(confluenceRestClientMock, never()).getChildPages("1234");
+        verify(confluenceRestClientMock, never()).addPageUnderAncestor(anyString(), anyString(), anyString(), anyString());
+        verify(confluenceRestClientMock, never()).deletePage(anyString());
+    }
+
+    @Test
+    public void publish_scopeWithUnknownPage_throwsIllegalArgumentException() {
+        // assert
+        this.expectedException.expect(IllegalArgumentException.class);
+        this.expectedException.expectMessage("Page 'Unknown Content' of scope not found");
+
+        // arrange
+        ConfluencePublisherMetadata metadata = metadata("root-ancestor-id-multiple-pages");
+        metadata.setScope(singletonList("Unknown Content"));
+
+        ConfluencePublisher confluencePublisher = new ConfluencePublisher(metadata, mock(ConfluenceRestClient.class));
+
+        // act
+        confluencePublisher.publish();
+    }
+
+    @Test
+    public void publish_pipelinedPagesInHierarchyWithAncestorIdAsRoot_publishesPagesUnderProducedParentPages() {
+        // arrange
+        ConfluencePage existingPageToDelete = new ConfluencePage("72189173", "9999", "Removed Content", "<h1>Removed Content</h1>", 1);
+
+        ConfluenceRestClient confluenceRestClientMock = mock(ConfluenceRestClient.class);
+        when(confluenceRestClientMock.addPageUnderAncestor(anyString(), anyString(), anyString(), anyString())).thenReturn("1234", "2345");
+        when(confluenceRestClientMock.getDescendantPages("72189173")).thenReturn(singletonList(existingPageToDelete));
+
+        ConfluencePublisherListener confluencePublisherListenerMock = mock(ConfluencePublisherListener.class);
+
+        ConfluencePublisherMetadata metadata = metadata("root-ancestor-id-multiple-pages");
+        ConfluencePublisher confluencePublisher = new ConfluencePublisher(withoutPages(metadata), confluenceRestClientMock, confluencePublisherListenerMock);
+
+        // act
+        confluencePublisher.publish((pageSink) -> produce(null, metadata.getPages(), pageSink), 1);
+
+        // assert
+        ArgumentCaptor<String> ancestorIdArgumentCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<String> titleArgumentCaptor = ArgumentCaptor.forClass(String.class);
+        verify(confluenceRestClientMock, times(2)).addPageUnderAncestor(eq("~personalSpace"), ancestorIdArgumentCaptor.capture(), titleArgumentCaptor.capture(), anyString());
+        assertThat(ancestorIdArgumentCaptor.getAllValues(), contains("72189173", "1234"));
+        assertThat(titleArgumentCaptor.getAllValues(), contains("Some Confluence Content", "Some Child Content"));
+        verify(confluenceRestClientMock, times(1)).getDescendantPages("72189173");
+        verify(confluenceRestClientMock, never()).getChildPages(anyString());
+        verify(confluenceRestClientMock, times(1)).deletePage("9999");
+
+        InOrder inOrder = inOrder(confluencePublisherListenerMock);
+        inOrder.verify(confluencePublisherListenerMock).pageAdded(eq(new ConfluencePage("72189173", "1234", "Some Confluence Content", "<h1>Some Confluence Content</h1>", INITIAL_PAGE_VERSION)));
+        inOrder.verify(confluencePublisherListenerMock).pageAdded(eq(new ConfluencePage("1234", "2345", "Some Child Content", "<h1>Some Child Content</h1>", INITIAL_PAGE_VERSION)));
+        inOrder.verify(confluencePublisherListenerMock).pageDeleted(eq(existingPageToDelete));
+        inOrder.verify(confluencePublisherListenerMock).deletionProgress(1, 1);
+        inOrder.verify(confluencePublisherListenerMock).publishCompleted();
+        verifyNoMoreInteractions(confluencePublisherListenerMock);
+    }
+
+    @Test
+    public void publish_pipelinedRemovedPageWithDescendants_deletesSubtreeFromSingleDescendantQueryLeavesFirst() {
+        // arrange
+        ConfluencePage existingPageToDelete = new ConfluencePage("72189173", "9999", "Removed Content", "<h1>Removed Content</h1>", 1);
+        ConfluencePage existingChildPageToDelete = new ConfluencePage("9999", "9998", "Removed Child Content", "<h1>Removed Child Content</h1>", 1);
+        ConfluencePage existingGrandChildPageToDelete = new ConfluencePage("9998", "9997", "Removed Grand Child Content", "<h1>Removed Grand Child Content</h1>", 1);
+
+        ConfluenceRestClient confluenceRestClientMock = mock(ConfluenceRestClient.class);
+        when(confluenceRestClientMock.addPageUnderAncestor(anyString(), anyString(), anyString(), anyString())).thenReturn("1234", "2345");
+        when(confluenceRestClientMock.getDescendantPages("72189173")).thenReturn(asList(existingPageToDelete, existingChildPageToDelete, existingGrandChildPageToDelete));
+
+        ConfluencePublisherListener confluencePublisherListenerMock = mock(ConfluencePublisherListener.class);
+
+        ConfluencePublisherMetadata metadata = metadata("root-ancestor-id-multiple-pages");
+        ConfluencePublisher confluencePublisher = new ConfluencePublisher(withoutPages(metadata), confluenceRestClientMock, confluencePublisherListenerMock);
+
+        // act
+        confluencePublisher.publish((pageSink) -> produce(null, metadata.getPages(), pageSink));
+
+        // assert
+        verify(confluenceRestClientMock, never()).getChildPages(anyString());
+
+        InOrder deletionOrder = inOrder(confluenceRestClientMock);
+        deletionOrder.verify(confluenceRestClientMock).deletePage("9997");
+        deletionOrder.verify(confluenceRestClientMock).deletePage("9998");
+        deletionOrder.verify(confluenceRestClientMock).deletePage("9999");
+
+        InOrder progressOrder = inOrder(confluencePublisherListenerMock);
+        progressOrder.verify(confluencePublisherListenerMock).deletionProgress(1, 3);
+        progressOrder.verify(confluencePublisherListenerMock).deletionProgress(2, 3);
+        progressOrder.verify(confluencePublisherListenerMock).deletionProgress(3, 3);
+        progressOrder.verify(confluencePublisherListenerMock).publishCompleted();
+    }
+
+    @Test
+    public void publish_pipelinedExistingPageMovedUnderOtherParent_sendsUpdateRequestWithNewAncestorInsteadOfDeletingAndAddingPage() {
+        // arrange
+        ConfluencePage existingParentPage = new ConfluencePage("72189173", "1234", "Some Confluence Content", "<h1>Some Confluence Content</h1>", 1);
+        ConfluencePage existingMovedPage = new ConfluencePage("72189173", "2345", "Some Child Content", "<h1>Some Child Content</h1>", 3);
+
+        ConfluenceRestClient confluenceRestClientMock = mock(ConfluenceRestClient.class);
+        when(confluenceRestClientMock.getDescendantPages("72189173")).thenReturn(asList(existingParentPage, existingMovedPage));
+        when(confluenceRestClientMock.getPropertyByKey("1234", CONTENT_HASH_PROPERTY_KEY)).thenReturn(sha256Hex("<h1>Some Confluence Content</h1>"));
+        when(confluenceRestClientMock.getPropertyByKey("2345", CONTENT_HASH_PROPERTY_KEY)).thenReturn(sha256Hex("<h1>Some Child Content</h1>"));
+
+        ConfluencePublisherMetadata metadata = metadata("root-ancestor-id-multiple-pages");
+        ConfluencePublisher confluencePublisher = new ConfluencePublisher(withoutPages(metadata), confluenceRestClientMock);
+
+        // act
+        confluencePublisher.publish((pageSink) -> produce(null, metadata.getPages(), pageSink));
+
+        // assert
+        verify(confluenceRestClientMock, times(1)).updatePage(eq("2345"), eq("1234"), eq("Some Child Content"), eq("<h1>Some Child Content</h1>"), eq(4));
+        verify(confluenceRestClientMock, never()).addPageUnderAncestor(anyString(), anyString(), anyString(), anyString());
+        verify(confluenceRestClientMock, never()).deletePage(anyString());
+    }
+
+    @Test
+    public void publish_pipelinedPageProducerFailing_throwsExceptionAndDeletesNoPages() {
+        // arrange
+        ConfluencePage existingPage = new ConfluencePage("72189173", "9999", "Other Content", "<h1>Other Content</h1>", 1);
+
+        ConfluenceRestClient confluenceRestClientMock = mock(ConfluenceRestClient.class);
+        when(confluenceRestClientMock.addPageUnderAncestor(anyString(), anyString(), anyString(), anyString())).thenReturn("1234");
+        when(confluenceRestClientMock.getDescendantPages("72189173")).thenReturn(singletonList(existingPage));
+
+        ConfluencePublisherMetadata metadata = metadata("root-ancestor-id-multiple-pages");
+        ConfluencePublisher confluencePublisher = new ConfluencePublisher(withoutPages(metadata), confluenceRestClientMock);
+
+        // act
+        try {
+            confluencePublisher.publish((pageSink) -> {
+                pageSink.accept(null, metadata.getPages().get(0));
+                throw new IllegalStateException("conversion failed");
+            });
+
+            fail("exception expected");
+        } catch (RuntimeException e) {
+            // assert
+            assertThat(e.getCause().getMessage(), is("conversion failed"));
+            verify(confluenceRestClientMock, times(1)).addPageUnderAncestor("~personalSpace", "72189173", "Some Confluence Content", "<h1>Some Confluence Content</h1>");
+            verify(confluenceRestClientMock, never()).deletePage(anyString());
+        }
+    }
+
+    @Test
+    public void publish_withAdditionalTarget_publishesPagesToAllTargets() {
+        // arrange
+        ConfluenceRestClient confluenceRestClientMock = mock(ConfluenceRestClient.class);
+        when(confluenceRestClientMock.addPageUnderAncestor(anyString(), anyString(), anyString(), anyString())).thenReturn("2345");
+
+        ConfluenceRestClient targetConfluenceRestClientMock = mock(ConfluenceRestClient.class);
+        when(targetConfluenceRestClientMock.addPageUnderAncestor(anyString(), anyString(), anyString(), anyString())).thenReturn("3456");
+
+        ConfluencePublisherMetadata metadata = metadata("one-page-ancestor-id");
+        metadata.getAdditionalTargets().add(target("http://mirror.confluence.com", "MIRROR", "1000"));
+
+        ConfluencePublisher confluencePublisher = new ConfluencePublisher(metadata, confluenceRestClientMock, mock(ConfluencePublisherListener.class), null, (target) -> targetConfluenceRestClientMock);
+
+        // act
+        confluencePublisher.publish();
+
+        // assert
+        verify(confluenceRestClientMock, times(1)).addPageUnderAncestor("~personalSpace", "72189173", "Some Confluence Content", "<h1>Some Confluence Content</h1>");
+        verify(targetConfluenceRestClientMock, times(1)).addPageUnderAncestor("MIRROR", "1000", "Some Confluence Content", "<h1>Some Confluence Content</h1>");
+    }
+
+    @Test
+    public void publish_withFailingAdditionalTarget_publishesPagesToOtherTargetsAndThrowsException() {
+        // arrange
+        ConfluenceRestClient confluenceRestClientMock = mock(ConfluenceRestClient.class);
+        when(confluenceRestClientMock.addPageUnderAncestor(anyString(), anyString(), anyString(), anyString())).thenReturn("2345");
+
+        ConfluenceRestClient targetConfluenceRestClientMock = mock(ConfluenceRestClient.class);
+        when(targetConfluenceRestClientMock.getDescendantPages("1000")).thenThrow(new IllegalStateException("target not reachable"));
+
+        ConfluencePublisherMetadata metadata = metadata("one-page-ancestor-id");
+        metadata.getAdditionalTargets().add(target("http://mirror.confluence.com", "MIRROR", "1000"));
+
+        ConfluencePublisher confluencePublisher = new ConfluencePublisher(metadata, confluenceRestClientMock, mock(ConfluencePublisherListener.class), null, (target) -> targetConfluenceRestClientMock);
+
+        // act
+        try {
+            confluencePublisher.publish();
+
+            fail("exception expected");
+        } catch (RuntimeException e) {
+            // assert
+            assertThat(e.getMessage(), is("Could not publish to http://mirror.confluence.com space 'MIRROR' under ancestor '1000'"));
+            assertThat(e.getCause().getMessage(), is("target not reachable"));
+            verify(confluenceRestClientMock, times(1)).addPageUnderAncestor("~personalSpace", "72189173", "Some Confluence Content", "<h1>Some Confluence Content</h1>");
+        }
+    }
+
+    private static ConfluencePublisherTarget target(String rootConfluenceUrl, String spaceKey, String ancestorId) {
+        ConfluencePublisherTarget target = new ConfluencePublisherTarget();
+        target.setRootConfluenceUrl(rootConfluenceUrl);
+        target.setSpaceKey(spaceKey);
+        target.setAncestorId(ancestorId);
+
+        return target;
+    }
+
+    private static void produce(ConfluencePageMetadata parentPage, List<ConfluencePageMetadata> pages, ConfluencePageMetadataSink pageSink) {
+        pages.forEach((page) -> {
+            pageSink.accept(parentPage, page);
+            produce(page, page.getChildren(), pageSink);
+        });
+    }
+
+    private static ConfluencePublisherMetadata withoutPages(ConfluencePublisherMetadata metadata) {
+        ConfluencePublisherMetadata metadataWithoutPages = new ConfluencePublisherMetadata();
+        metadataWithoutPages.setSpaceKey(metadata.getSpaceKey());
+        metadataWithoutPages.setAncestorId(metadata.getAncestorId());
+        metadataWithoutPages.setPublishStrategy(metadata.getPublishStrategy());
+
+        return metadataWithoutPages;
+    }
+
     private static ConfluencePublisher confluencePublisher(String qualifier, ConfluenceRestClient confluenceRestClient) {
         return confluencePublisher(qualifier, confluenceRestClient, null);
     }
 
     private static ConfluencePublisher confluencePublisher(String qualifier, ConfluenceRestClient confluenceRestClient, ConfluencePublisherListener confluencePublisherListener) {
-        Path metadataFilePath = Paths.get(TEST_RESOURCES + "/metadata-" + qualifier + ".json");
-        Path contentRoot = metadataFilePath.getParent().toAbsolutePath();
-
-        ConfluencePublisherMetadata metadata = readConfig(metadataFilePath);
-        resolveAbsoluteContentFileAndAttachmentsPath(metadata.getPages(), contentRoot);
+        ConfluencePublisherMetadata metadata = metadata(qualifier);
 
         if (confluencePublisherListener != null) {
             return new ConfluencePublisher(metadata, confluenceRestClient, confluencePublisherListener);
@@ -386,6 +858,16 @@ public class ConfluencePublisherTest {
         return new ConfluencePublisher(metadata, confluenceRestClient);
     }
 
+    private static ConfluencePublisherMetadata metadata(String qualifier) {
+        Path metadataFilePath = Paths.get(TEST_RESOURCES + "/metadata-" + qualifier + ".json");
+        Path contentRoot = metadataFilePath.getParent().toAbsolutePath();
+
+        ConfluencePublisherMetadata metadata = readConfig(metadataFilePath);
+        resolveAbsoluteContentFileAndAttachmentsPath(metadata.getPages(), contentRoot);
+
+        return metadata;
+    }
+
     private static ConfluencePublisherMetadata readConfig(Path metadataFile) {
         ObjectMapper objectMapper = new ObjectMapper();
         objectMapper.setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sahli.asciidoc.confluence.publisher.client;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sahli.asciidoc.confluence.publisher.client.PublishingJournal.CompletedPage;
+
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.write;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class PublishingJournalTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void open_journalOfSamePlan_returnsCompletedPagesWithSameFingerprint() throws Exception {
+        // arrange
+        Path journalFile = this.temporaryFolder.getRoot().toPath().resolve("journal");
+        try (PublishingJournal journal = PublishingJournal.open(journalFile, "plan-1")) {
+            journal.pageCompleted("100", "Page With Spaces", "fingerprint-1", "200", 3);
+        }
+
+        // act
+        PublishingJournal resumedJournal = PublishingJournal.open(journalFile, "plan-1");
+
+        // assert
+        CompletedPage completedPage = resumedJournal.completedPage("100", "Page With Spaces", "fingerprint-1");
+        assertThat(completedPage, is(notNullValue()));
+        assertThat(completedPage.contentId, is("200"));
+        assertThat(completedPage.version, is(3));
+        assertThat(resumedJournal.completedPage("100", "Page With Spaces", "fingerprint-2"), is(nullValue()));
+    }
+
+    @Test
+    public void open_journalOfOtherPlan_discardsCompletedPages() throws Exception {
+        // arrange
+        Path journalFile = this.temporaryFolder.getRoot().toPath().resolve("journal");
+        try (PublishingJournal journal = PublishingJournal.open(journalFile, "plan-1")) {
+            journal.pageCompleted("100", "Page", "fingerprint-1", "200", 3);
+        }
+
+        // act
+        PublishingJournal resumedJournal = PublishingJournal.open(journalFile, "plan-2");
+
+        // assert
+        assertThat(resumedJournal.completedPage("100", "Page", "fingerprint-1"), is(nullValue()));
+    }
+
+    @Test
+    public void open_journalWithPartiallyWrittenLastRecord_ignoresPartialRecordAndAppendsAfterValidRecords() throws Exception {
+        // arrange
+        Path journalFile = this.temporaryFolder.getRoot().toPath().resolve("journal");
+        try (PublishingJournal journal = PublishingJournal.open(journalFile, "plan-1")) {
+            journal.pageCompleted("100", "Page", "fingerprint-1", "200", 3);
+        }
+        write(journalFile, "page 100 201 1 finger".getBytes(UTF_8), APPEND);
+
+        try (PublishingJournal resumedJournal = PublishingJournal.open(journalFile, "plan-1")) {
+            resumedJournal.pageCompleted("100", "Other Page", "fingerprint-2", "202", 1);
+        }
+
+        // act
+        PublishingJournal secondResumedJournal = PublishingJournal.open(journalFile, "plan-1");
+
+        // assert
+        assertThat(secondResumedJournal.completedPage("100", "Page", "fingerprint-1").contentId, is("200"));
+        assertThat(secondResumedJournal.completedPage("100", "Other Page", "fingerprint-2").contentId, is("202"));
+    }
+
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.sahli.asciidoc.confluence.publisher.client.http;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CachingConfluenceClientTest {
+
+    @Test
+    public void getChildPages_calledRepeatedly_readsChildPagesOnce() {
+        // arrange
+        ConfluenceClient confluenceClientMock = mock(ConfluenceClient.class);
+        when(confluenceClientMock.getChildPages("1")).thenReturn(singletonList(new ConfluencePage("1", "2", "Child", 1)));
+
+        CachingConfluenceClient cachingConfluenceClient = new CachingConfluenceClient(confluenceClientMock);
+
+        // act
+        cachingConfluenceClient.getChildPages("1");
+        List<ConfluencePage> childPages = cachingConfluenceClient.getChildPages("1");
+
+        // assert
+        assertThat(childPages.get(0).getContentId(), is("2"));
+        verify(confluenceClientMock, times(1)).getChildPages("1");
+    }
+
+    @Test
+    public void getChildPages_afterUpdateOfChildPage_readsChildPagesAgain() {
+        // arrange
+        ConfluenceClient confluenceClientMock = mock(ConfluenceClient.class);
+        when(confluenceClientMock.getChildPages("1")).thenReturn(singletonList(new ConfluencePage("1", "2", "Child", 1)));
+
+        CachingConfluenceClient cachingConfluenceClient = new CachingConfluenceClient(confluenceClientMock);
+        cachingConfluenceClient.getChildPages("1");
+
+        // act
+        cachingConfluenceClient.updatePage("2", "3", "Moved Child", "content", 2);
+        cachingConfluenceClient.getChildPages("1");
+
+        // assert
+        verify(confluenceClientMock).updatePage("2", "3", "Moved Child", "content", 2);
+        verify(confluenceClientMock, times(2)).getChildPages("1");
+    }
+
+    @Test
+    public void getChildPages_loadedWhileAddingPageUnderSameParent_readsChildPagesAgain() throws Exception {
+        // arrange
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch pageAdded = new CountDownLatch(1);
+        ConfluenceClient confluenceClientMock = mock(ConfluenceClient.class);
+        when(confluenceClientMock.getChildPages("1"))
+                .thenAnswer((invocation) -> {
+                    loadStarted.countDown();
+                    pageAdded.await();
+
+                    return emptyList();
+                })
+                .thenReturn(singletonList(new ConfluencePage("1", "2", "Child", 1)));
+
+        CachingConfluenceClient cachingConfluenceClient = new CachingConfluenceClient(confluenceClientMock);
+        ExecutorService executorService = newSingleThreadExecutor();
+
+        try {
+            Future<List<ConfluencePage>> staleChildPages = executorService.submit(() -> cachingConfluenceClient.getChildPages("1"));
+            loadStarted.await();
+            cachingConfluenceClient.addPageUnderAncestor("~personalSpace", "1", "Child", "content");
+            pageAdded.countDown();
+            staleChildPages.get();
+
+            // act
+            List<ConfluencePage> childPages = cachingConfluenceClient.getChildPages("1");
+
+            // assert
+            assertThat(childPages.size(), is(1));
+            verify(confluenceClientMock, times(2)).getChildPages("1");
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void getAttachmentByFileName_afterGetAttachments_isServedFromAttachments() {
+        // arrange
+        ConfluenceClient confluenceClientMock = mock(ConfluenceClient.class);
+        when(confluenceClientMock.getAttachments("1")).thenReturn(asList(
+                new ConfluenceAttachment("att1", "one.png", "/download/one.png", 1),
+                new ConfluenceAttachment("att2", "two.png", "/download/two.png", 1)
+        ));
+
+        CachingConfluenceClient cachingConfluenceClient = new CachingConfluenceClient(confluenceClientMock);
+        cachingConfluenceClient.getAttachments("1");
+
+        // act
+        ConfluenceAttachment attachment = cachingConfluenceClient.getAttachmentByFileName("1", "two.png");
+
+        // assert
+        assertThat(attachment.getId(), is("att2"));
+        verify(confluenceClientMock, times(0)).getAttachmentByFileName("1", "two.png");
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void getAttachmentByFileName_afterGetAttachmentsWithoutMatchingAttachment_throwsNotFoundException() {
+        // arrange
+        ConfluenceClient confluenceClientMock = mock(ConfluenceClient.class);
+        when(confluenceClientMock.getAttachments("1")).thenReturn(singletonList(new ConfluenceAttachment("att1", "one.png", "/download/one.png", 1)));
+
+        CachingConfluenceClient cachingConfluenceClient = new CachingConfluenceClient(confluenceClientMock);
+        cachingConfluenceClient.getAttachments("1");
+
+        // act
+        cachingConfluenceClient.getAttachmentByFileName("1", "two.png");
+    }
+
+    @Test
+    public void getAttachments_afterAddAttachment_readsAttachmentsAgain() {
+        // arrange
+        ConfluenceClient confluenceClientMock = mock(ConfluenceClient.class);
+        when(confluenceClientMock.getAttachments("1"))
+                .thenReturn(singletonList(new ConfluenceAttachment("att1", "one.png", "/download/one.png", 1)))
+                .thenReturn(asList(
+                        new ConfluenceAttachment("att1", "one.png", "/download/one.png", 1),
+                        new ConfluenceAttachment("att2", "two.png", "/download/two.png", 1)
+                ));
+
+        CachingConfluenceClient cachingConfluenceClient = new CachingConfluenceClient(confluenceClientMock);
+        cachingConfluenceClient.getAttachments("1");
+
+        // act
+        cachingConfluenceClient.addAttachment("1", "two.png", new ByteArrayInputStream(new byte[0]));
+        List<ConfluenceAttachment> attachments = cachingConfluenceClient.getAttachments("1");
+
+        // assert
+        assertThat(attachments.size(), is(2));
+        verify(confluenceClientMock, times(2)).getAttachments("1");
+    }
+
+    @Test
+    public void getPropertyByKey_withMissingPropertyCalledRepeatedly_readsPropertyOnce() {
+        // arrange
+        ConfluenceClient confluenceClientMock = mock(ConfluenceClient.class);
+        CachingConfluenceClient cachingConfluenceClient = new CachingConfluenceClient(confluenceClientMock);
+
+        // act
+        cachingConfluenceClient.getPropertyByKey("1", "content-hash");
+        String property = cachingConfluenceClient.getPropertyByKey("1", "content-hash");
+
+        // assert
+        assertThat(property, is(nullValue()));
+        verify(confluenceClientMock, times(1)).getPropertyByKey("1", "content-hash");
+    }
+
+    @Test
+    public void getPropertyByKey_afterSetPropertyByKey_returnsNewValue() {
+        // arrange
+        ConfluenceClient confluenceClientMock = mock(ConfluenceClient.class);
+        when(confluenceClientMock.getPropertyByKey("1", "content-hash")).thenReturn("old").thenReturn("new");
+
+        CachingConfluenceClient cachingConfluenceClient = new CachingConfluenceClient(confluenceClientMock);
+        cachingConfluenceClient.getPropertyByKey("1", "content-hash");
+
+        // act
+        cachingConfluenceClient.setPropertyByKey("1", "content-hash", "new");
+        String property = cachingConfluenceClient.getPropertyByKey("1", "content-hash");
+
+        // assert
+        assertThat(property, is("new"));
+    }
+
+}
@@ -36,8 +36,10 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Arrays.asList;
@@ -115,6 +117,89 @@ public class ConfluenceRestClientTest {
         verify(httpClientMock, times(1)).execute(any(HttpPut.class));
     }
 
+    @Test
+    public void updatePage_withBodyAboveRequestCompressionThreshold_sendsGzipCompressedBody() throws Exception {
+        // arrange
+        CloseableHttpClient httpClientMock = recordHttpClientForSingleResponseWithContentAndStatusCode("{\"id\":\"1234\"}", 200);
+        ConfluenceRestClient confluenceRestClient = new ConfluenceRestClient(CONFLUENCE_ROOT_URL, httpClientMock, null, null, 10);
+
+        // act
+        confluenceRestClient.updatePage("123", "1", "Hello", "Content", 2);
+
+        // assert
+        ArgumentCaptor<HttpPut> httpPutArgumentCaptor = ArgumentCaptor.forClass(HttpPut.class);
+        verify(httpClientMock, times(1)).execute(httpPutArgumentCaptor.capture());
+        HttpPut updatePageRequest = httpPutArgumentCaptor.getValue();
+        assertThat(updatePageRequest.getFirstHeader("Content-Encoding").getValue(), is("gzip"));
+        assertThat(inputStreamAsString(new GZIPInputStream(updatePageRequest.getEntity().getContent()), UTF_8), containsString("\"value\":\"Content\""));
+        assertThat(confluenceRestClient.transferStatistics().compressedRequestBytes(), is(updatePageRequest.getEntity().getContentLength()));
+    }
+
+    @Test
+    public void updatePage_withCompressedRequestRejected_resendsUncompressedBodyAndStopsCompressing() throws Exception {
+        // arrange
+        CloseableHttpClient httpClientMock = recordHttpClientForMultipleResponsesWithContentAndStatusCode(asList("", "{}", "{}"), asList(415, 200, 200));
+        ConfluenceRestClient confluenceRestClient = new ConfluenceRestClient(CONFLUENCE_ROOT_URL, httpClientMock, null, null, 10);
+
+        // act
+        confluenceRestClient.updatePage("123", "1", "Hello", "Content", 2);
+        confluenceRestClient.updatePage("123", "1", "Hello", "Other Content", 3);
+
+        // assert
+        ArgumentCaptor<HttpPut> httpPutArgumentCaptor = ArgumentCaptor.forClass(HttpPut.class);
+        verify(httpClientMock, times(3)).execute(httpPutArgumentCaptor.capture());
+        assertThat(httpPutArgumentCaptor.getAllValues().get(1).getFirstHeader("Content-Encoding"), is(nullValue()));
+        assertThat(httpPutArgumentCaptor.getAllValues().get(2).getFirstHeader("Content-Encoding"), is(nullValue()));
+        assertThat(inputStreamAsString(httpPutArgumentCaptor.getAllValues().get(2).getEntity().getContent(), UTF_8), containsString("\"value\":\"Other Content\""));
+    }
+
+    @Test
+    public void updatePage_withCompressedRequestFailingAndUncompressedRetrySucceeding_resendsUncompressedBodyAndStopsCompressing() throws Exception {
+        // arrange
+        CloseableHttpClient httpClientMock = recordHttpClientForMultipleResponsesWithContentAndStatusCode(asList("{}", "{}"), asList(500, 200, 200));
+        ConfluenceRestClient confluenceRestClient = new ConfluenceRestClient(CONFLUENCE_ROOT_URL, httpClientMock, null, null, 10);
+
+        // act
+        confluenceRestClient.updatePage("123", "1", "Hello", "Content", 2);
+        confluenceRestClient.updatePage("123", "1", "Hello", "Other Content", 3);
+
+        // assert
+        ArgumentCaptor<HttpPut> httpPutArgumentCaptor = ArgumentCaptor.forClass(HttpPut.class);
+        verify(httpClientMock, times(3)).execute(httpPutArgumentCaptor.capture());
+        assertThat(httpPutArgumentCaptor.getAllValues().get(1).getFirstHeader("Content-Encoding"), is(nullValue()));
+        assertThat(httpPutArgumentCaptor.getAllValues().get(2).getFirstHeader("Content-Encoding"), is(nullValue()));
+    }
+
+    @Test
+    public void updatePage_withCompressedAndUncompressedRequestFailing_throwsRequestFailedExceptionAndKeepsCompressing() throws Exception {
+        // arrange
+        CloseableHttpResponse compressedResponseMock = recordHttpResponseForContentAndStatusCode("{\"message\":\"Invalid content encoding\"}", 400);
+        CloseableHttpResponse uncompressedResponseMock = recordHttpResponseForContentAndStatusCode("{\"message\":\"Invalid content\"}", 400);
+        CloseableHttpResponse nextResponseMock = recordHttpResponseForContentAndStatusCode("{}", 200);
+
+        CloseableHttpClient httpClientMock = anyCloseableHttpClient();
+        when(httpClientMock.execute(any(HttpPut.class))).thenReturn(compressedResponseMock, uncompressedResponseMock, nextResponseMock);
+        ConfluenceRestClient confluenceRestClient = new ConfluenceRestClient(CONFLUENCE_ROOT_URL, httpClientMock, null, null, 10);
+
+        // act
+        try {
+            confluenceRestClient.updatePage("123", "1", "Hello", "Content", 2);
+
+            fail("exception expected");
+        } catch (RequestFailedException e) {
+            assertThat(e.getStatusCode(), is(400));
+            assertThat(e.getMessage(), containsString("Invalid content"));
+        }
+
+        confluenceRestClient.updatePage("123", "1", "Hello", "Other Content", 3);
+
+        // assert
+        ArgumentCaptor<HttpPut> httpPutArgumentCaptor = ArgumentCaptor.forClass(HttpPut.class);
+        verify(httpClientMock, times(3)).execute(httpPutArgumentCaptor.capture());
+        assertThat(httpPutArgumentCaptor.getAllValues().get(1).getFirstHeader("Content-Encoding"), is(nullValue()));
+        assertThat(httpPutArgumentCaptor.getAllValues().get(2).getFirstHeader("Content-Encoding").getValue(), is("gzip"));
+    }
+
     @Test
     public void deletePage_withValidParameters_sendsDeleteRequest() throws Exception {
         // arrange
@@ -222,6 +307,22 @@ public class ConfluenceRestClientTest {
         assertThat(confluencePage.getAncestorId(), is("3456"));
     }
 
+    @Test
+    public void getPageWithVersionById_withExistingContentId_requestsAndReturnsPageWithoutContent() throws Exception {
+        // arrange
+        CloseableHttpClient httpClientMock = recordHttpClientForSingleResponseWithContentAndStatusCode(generateJsonPageResults(1), 200);
+        ConfluenceRestClient confluenceRestClient = new ConfluenceRestClient(CONFLUENCE_ROOT_URL, httpClientMock, null, null);
+        ArgumentCaptor<HttpGet> httpGetArgumentCaptor = ArgumentCaptor.forClass(HttpGet.class);
+
+        // act
+        ConfluencePage confluencePage = confluenceRestClient.getPageWithVersionById("1");
+
+        // assert
+        assertThat(confluencePage, is(new ConfluencePage("ancestor", "1", "Page 1", 1)));
+        verify(httpClientMock).execute(httpGetArgumentCaptor.capture());
+        assertThat(httpGetArgumentCaptor.getValue().getURI().toString(), is(CONFLUENCE_ROOT_URL + "/rest/api/content/1?expand=version,ancestors"));
+    }
+
     @Test
     public void getChildPages_withValidParametersAndFirstResultSizeSmallerThanLimit_returnsListOfChildPagesWithTitleContentVersionAndId() throws Exception {
         // arrange
@@ -283,6 +384,27 @@ public class ConfluenceRestClientTest {
         assertThat(httpGetArgumentCaptor.getAllValues().get(1).getURI().toString(), containsString("start=1"));
     }
 
+    @Test
+    public void getDescendantPages_withFirstResultSizeHasSameSizeAsLimit_sendsASecondRequestStartingAfterFirstResults() throws Exception {
+        // arrange
+        String firstResultSet = "{\"results\": [" + generateJsonPageResults(100) + "], \"size\": 100}";
+        String secondResultSet = "{\"results\": [" + generateJsonPageResults(3) + "], \"size\": 3}";
+        List<String> jsonResponses = asList(firstResultSet, secondResultSet);
+        List<Integer> statusCodes = asList(200, 200);
+        CloseableHttpClient httpClientMock = recordHttpClientForMultipleResponsesWithContentAndStatusCode(jsonResponses, statusCodes);
+        ConfluenceRestClient confluenceRestClient = new ConfluenceRestClient(CONFLUENCE_ROOT_URL, httpClientMock, null, null);
+        ArgumentCaptor<HttpGet> httpGetArgumentCaptor = ArgumentCaptor.forClass(HttpGet.class);
+
+        // act
+        List<ConfluencePage> descendantPages = confluenceRestClient.getDescendantPages("1234");
+
+        // assert
+        assertThat(descendantPages.size(), is(103));
+        verify(httpClientMock, times(2)).execute(httpGetArgumentCaptor.capture());
+        assertThat(httpGetArgumentCaptor.getAllValues().get(0).getURI().toString(), containsString("/content/1234/descendant/page?limit=100&start=0"));
+        assertThat(httpGetArgumentCaptor.getAllValues().get(1).getURI().toString(), containsString("/content/1234/descendant/page?limit=100&start=100"));
+    }
+
     @Test
     public void getAttachments_withValidParametersAndFirstResultIsSmallerThanLimit_returnsAttachments() throws Exception {
         // arrange
@@ -405,6 +527,84 @@ public class ConfluenceRestClientTest {
         verify(httpClientMock, times(1)).execute(any(HttpGet.class));
     }
 
+    @Test
+    public void getPropertyByKey_withIdenticalRequestInFlight_sharesResponseOfInFlightRequest() throws Exception {
+        // arrange
+        CloseableHttpResponse httpResponseMock = mock(CloseableHttpResponse.class);
+        HttpEntity httpEntityMock = recordHttpEntityForContent("{\"value\": \"hash-value\"}");
+        when(httpResponseMock.getEntity()).thenReturn(httpEntityMock);
+        StatusLine statusLineMock = recordStatusLine(200, null);
+        when(httpResponseMock.getStatusLine()).thenReturn(statusLineMock);
+
+        CloseableHttpClient httpClientMock = anyCloseableHttpClient();
+        ConfluenceRestClient confluenceRestClient = new ConfluenceRestClient(CONFLUENCE_ROOT_URL, httpClientMock, null, null);
+        String[] concurrentPropertyValue = {null};
+        Thread concurrentRead = new Thread(() -> concurrentPropertyValue[0] = confluenceRestClient.getPropertyByKey("1234", "content-hash"));
+
+        when(httpClientMock.execute(any(HttpRequestBase.class))).thenAnswer((invocation) -> {
+            // issue the identical request while the first one is in flight, and wait for it to block on the first one
+            concurrentRead.start();
+            while (concurrentRead.getState() != Thread.State.WAITING && concurrentRead.getState() != Thread.State.TERMINATED) {
+                Thread.sleep(1);
+            }
+
+            return httpResponseMock;
+        });
+
+        // act
+        String propertyValue = confluenceRestClient.getPropertyByKey("1234", "content-hash");
+        concurrentRead.join();
+
+        // assert
+        assertThat(propertyValue, is("hash-value"));
+        assertThat(concurrentPropertyValue[0], is("hash-value"));
+        verify(httpClientMock, times(1)).execute(any(HttpGet.class));
+    }
+
+    @Test
+    public void getPropertyByKey_withIdenticalRequestInFlightSinceBeforeCompletedWrite_sendsOwnRequest() throws Exception {
+        // arrange
+        CloseableHttpResponse firstReadResponseMock = recordHttpResponseForContentAndStatusCode("{\"value\": \"old-value\"}", 200);
+        CloseableHttpResponse writeResponseMock = recordHttpResponseForContentAndStatusCode("", 200);
+        CloseableHttpResponse secondReadResponseMock = recordHttpResponseForContentAndStatusCode("{\"value\": \"new-value\"}", 200);
+
+        CloseableHttpClient httpClientMock = anyCloseableHttpClient();
+        ConfluenceRestClient confluenceRestClient = new ConfluenceRestClient(CONFLUENCE_ROOT_URL, httpClientMock, null, null);
+        String[] concurrentPropertyValue = {null};
+        Thread concurrentRead = new Thread(() -> concurrentPropertyValue[0] = confluenceRestClient.getPropertyByKey("1234", "content-hash"));
+        AtomicInteger reads = new AtomicInteger();
+
+        when(httpClientMock.execute(any(HttpRequestBase.class))).thenAnswer((invocation) -> {
+            if (!(invocation.getArguments()[0] instanceof HttpGet)) {
+                return writeResponseMock;
+            }
+
+            if (reads.getAndIncrement() > 0) {
+                return secondReadResponseMock;
+            }
+
+            // complete a write while the first read is in flight, then issue the identical read and give it the chance to join
+            confluenceRestClient.setPropertyByKey("1234", "content-hash", "new-value");
+            concurrentRead.start();
+            while (concurrentRead.getState() != Thread.State.WAITING && concurrentRead.getState() != Thread.State.TERMINATED) {
+                Thread.sleep(1);
+            }
+
+            return firstReadResponseMock;
+        });
+
+        // act
+        String propertyValue = confluenceRestClient.getPropertyByKey("1234", "content-hash");
+        concurrentRead.join();
+
+        // assert
+        assertThat(propertyValue, is("old-value"));
+        assertThat(concurrentPropertyValue[0], is("new-value"));
+        ArgumentCaptor<HttpRequestBase> httpRequestArgumentCaptor = ArgumentCaptor.forClass(HttpRequestBase.class);
+        verify(httpClientMock, times(3)).execute(httpRequestArgumentCaptor.capture());
+        assertThat(httpRequestArgumentCaptor.getAllValues().stream().filter((httpRequest) -> httpRequest instanceof HttpGet).count(), is(2L));
+    }
+
     @Test
     public void deletePropertyByKey_withValidParameters_sendsDeleteRequestForPropertyKey() throws Exception {
         // arrange
@@ -488,6 +688,17 @@ public class ConfluenceRestClientTest {
         return httpClientMock;
     }
 
+    private static CloseableHttpResponse recordHttpResponseForContentAndStatusCode(String contentPayload, int statusCode) {
+        CloseableHttpResponse httpResponseMock = mock(CloseableHttpResponse.class);
+        HttpEntity httpEntityMock = recordHttpEntityForContent(contentPayload);
+        when(httpResponseMock.getEntity()).thenReturn(httpEntityMock);
+
+        StatusLine statusLineMock = recordStatusLine(statusCode, null);
+        when(httpResponseMock.getStatusLine()).thenReturn(statusLineMock);
+
+        return httpResponseMock;
+    }
+
     private static CloseableHttpClient recordHttpClientForMultipleResponsesWithContentAndStatusCode(List<String> contentPayloads, List<Integer> statusCodes) throws IOException {
         CloseableHttpResponse httpResponseMock = mock(CloseableHttpResponse.class);
 
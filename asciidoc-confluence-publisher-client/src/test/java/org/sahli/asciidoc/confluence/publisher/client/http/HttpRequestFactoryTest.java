@@ -433,6 +433,18 @@ public class HttpRequestFactoryTest {
         assertThat(getChildPagesByIdRequest.getURI().toString(), is(CONFLUENCE_REST_API_ENDPOINT + "/content/" + parentContentId + "/child/page?expand=" + expandOptions));
     }
 
+    @Test
+    public void getDescendantPagesByIdRequest_withLimitPageNumberAndExpandOptions_returnsValidHttpGet() {
+        // arrange
+        String ancestorContentId = "1234";
+
+        // act
+        HttpGet getDescendantPagesByIdRequest = this.httpRequestFactory.getDescendantPagesByIdRequest(ancestorContentId, 100, 200, "version,ancestors");
+
+        // assert
+        assertThat(getDescendantPagesByIdRequest.getURI().toString(), is(CONFLUENCE_REST_API_ENDPOINT + "/content/" + ancestorContentId + "/descendant/page?limit=100&start=200&expand=version%2Cancestors"));
+    }
+
     @Test
     public void getChildPagesByIdRequest_withLimitAndPageNumber_returnsHttpGetWithPageNumberAndLimit() {
         // arrange
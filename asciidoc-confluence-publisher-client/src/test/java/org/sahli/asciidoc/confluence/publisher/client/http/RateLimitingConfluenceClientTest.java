@@ -0,0 +1,59 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.sahli.asciidoc.confluence.publisher.client.http;
+
+import org.junit.Test;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RateLimitingConfluenceClientTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void instantiation_withZeroMaxRequestsPerSecond_throwsIllegalArgumentException() {
+        // arrange + act
+        new RateLimitingConfluenceClient(mock(ConfluenceClient.class), 0);
+    }
+
+    @Test
+    public void getPropertyByKey_calledRepeatedly_spacesCallsByMaxRequestsPerSecond() {
+        // arrange
+        ConfluenceClient confluenceClientMock = mock(ConfluenceClient.class);
+        when(confluenceClientMock.getPropertyByKey("1", "content-hash")).thenReturn("hash");
+
+        RateLimitingConfluenceClient rateLimitingConfluenceClient = new RateLimitingConfluenceClient(confluenceClientMock, 20);
+
+        // act
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            assertThat(rateLimitingConfluenceClient.getPropertyByKey("1", "content-hash"), is("hash"));
+        }
+        long elapsedMillis = NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+        // assert
+        assertThat(elapsedMillis, is(greaterThanOrEqualTo(190L)));
+        verify(confluenceClientMock, times(5)).getPropertyByKey("1", "content-hash");
+    }
+
+}
@@ -18,7 +18,9 @@ package org.sahli.asciidoc.confluence.publisher.converter;
 
 import org.asciidoctor.Attributes;
 import org.sahli.asciidoc.confluence.publisher.client.metadata.ConfluencePageMetadata;
+import org.sahli.asciidoc.confluence.publisher.client.metadata.ConfluencePageMetadataSink;
 import org.sahli.asciidoc.confluence.publisher.client.metadata.ConfluencePublisherMetadata;
+import org.sahli.asciidoc.confluence.publisher.converter.ImageOptimizer.DisplaySize;
 import org.sahli.asciidoc.confluence.publisher.converter.providers.AsciidocPagesStructureProvider;
 import org.sahli.asciidoc.confluence.publisher.converter.providers.AsciidocPagesStructureProvider.AsciidocPage;
 
@@ -31,6 +33,7 @@ import java.nio.file.FileSystem;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
@@ -38,15 +41,18 @@ import java.util.function.Consumer;
 import static java.nio.file.FileSystems.newFileSystem;
 import static java.nio.file.Files.copy;
 import static java.nio.file.Files.createDirectories;
-import static java.nio.file.Files.exists;
 import static java.nio.file.Files.list;
 import static java.nio.file.Files.write;
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonList;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
 import static org.apache.commons.codec.digest.DigestUtils.sha256Hex;
+import static org.sahli.asciidoc.confluence.publisher.converter.AsciidocConfluencePage.DIAGRAM_CACHE_DIR_ATTRIBUTE;
 import static org.sahli.asciidoc.confluence.publisher.converter.AsciidocConfluencePage.newAsciidocConfluencePage;
+import static org.sahli.asciidoc.confluence.publisher.converter.SharedAttachments.shareAttachments;
 
 /**
  * @author Alain Sahli
@@ -58,10 +64,46 @@ public final class AsciidocConfluenceConverter {
 
     private final String spaceKey;
     private final String ancestorId;
+    private final String sharedAttachmentsPageTitle;
+    private final boolean optimizeImages;
+    private final Integer maxImageWidth;
+    private final Path imageCacheFolder;
 
     public AsciidocConfluenceConverter(String spaceKey, String ancestorId) {
+        this(spaceKey, ancestorId, null);
+    }
+
+    /**
+     * Creates a converter that moves attachments with the same content used by more than one page to an additional
+     * top-level page with the given title, and lets the pages refer to the attachments on that page. Sharing attachments
+     * requires all pages to be converted before publishing, so it is not supported with a converted page sink or scope
+     * page paths. If the title is {@code null}, every page keeps its own attachments.
+     */
+    public AsciidocConfluenceConverter(String spaceKey, String ancestorId, String sharedAttachmentsPageTitle) {
+        this(spaceKey, ancestorId, sharedAttachmentsPageTitle, false, null);
+    }
+
+    /**
+     * Creates a converter that additionally optimizes PNG attachments (if {@code optimizeImages} is set) by re-encoding
+     * them without metadata and downsizing images wider than the given maximum width (if not {@code null}), but never
+     * below the size they are displayed with. Optimized images are cached in the build folder.
+     */
+    public AsciidocConfluenceConverter(String spaceKey, String ancestorId, String sharedAttachmentsPageTitle, boolean optimizeImages, Integer maxImageWidth) {
+        this(spaceKey, ancestorId, sharedAttachmentsPageTitle, optimizeImages, maxImageWidth, null);
+    }
+
+    /**
+     * Creates a converter optimizing PNG attachments like {@link #AsciidocConfluenceConverter(String, String, String,
+     * boolean, Integer)}, but caching optimized images in the given folder (if not {@code null}) instead of the build
+     * folder, e.g. to keep the cache across runs using a temporary build folder.
+     */
+    public AsciidocConfluenceConverter(String spaceKey, String ancestorId, String sharedAttachmentsPageTitle, boolean optimizeImages, Integer maxImageWidth, Path imageCacheFolder) {
         this.spaceKey = spaceKey;
         this.ancestorId = ancestorId;
+        this.sharedAttachmentsPageTitle = sharedAttachmentsPageTitle;
+        this.optimizeImages = optimizeImages;
+        this.maxImageWidth = maxImageWidth;
+        this.imageCacheFolder = imageCacheFolder;
     }
 
     public ConfluencePublisherMetadata convert(AsciidocPagesStructureProvider asciidocPagesStructureProvider, Path buildFolder) {
@@ -77,6 +119,48 @@ public final class AsciidocConfluenceConverter {
     }
 
     public ConfluencePublisherMetadata convert(AsciidocPagesStructureProvider asciidocPagesStructureProvider, PageTitlePostProcessor pageTitlePostProcessor, Path buildFolder, Attributes attributes) {
+        return convert(asciidocPagesStructureProvider, pageTitlePostProcessor, emptyList(), buildFolder, attributes);
+    }
+
+    public ConfluencePublisherMetadata convert(AsciidocPagesStructureProvider asciidocPagesStructureProvider, PageTitlePostProcessor pageTitlePostProcessor, List<ContentPostProcessor> contentPostProcessors, Path buildFolder, Attributes attributes) {
+        return convert(asciidocPagesStructureProvider, pageTitlePostProcessor, contentPostProcessors, buildFolder, attributes, null, emptyList(), false);
+    }
+
+    /**
+     * Converts the pages like the other {@code convert} methods, but additionally passes every page to the given sink as
+     * soon as the page, its siblings and their attachments are written to the build folder, i.e. before its children are
+     * converted.
+     */
+    public ConfluencePublisherMetadata convert(AsciidocPagesStructureProvider asciidocPagesStructureProvider, PageTitlePostProcessor pageTitlePostProcessor, List<ContentPostProcessor> contentPostProcessors, Path buildFolder, Attributes attributes, ConfluencePageMetadataSink convertedPageSink) {
+        return convert(asciidocPagesStructureProvider, pageTitlePostProcessor, contentPostProcessors, buildFolder, attributes, convertedPageSink, emptyList(), false);
+    }
+
+    /**
+     * Converts only the subtrees of the pages with the given paths (absolute, or relative like
+     * {@code index/sub-page.adoc} matching the end of the page paths) and the pages above them, and sets the titles of
+     * the pages with the given paths as the scope of the returned metadata. Pages above the pages in scope are converted
+     * only to determine their titles, which are required to find the parents of the pages in scope on Confluence. If no
+     * page paths are given, all pages are converted.
+     */
+    public ConfluencePublisherMetadata convert(AsciidocPagesStructureProvider asciidocPagesStructureProvider, PageTitlePostProcessor pageTitlePostProcessor, List<ContentPostProcessor> contentPostProcessors, Path buildFolder, Attributes attributes, List<String> scopePagePaths) {
+        return convert(asciidocPagesStructureProvider, pageTitlePostProcessor, contentPostProcessors, buildFolder, attributes, null, scopePagePaths, false);
+    }
+
+    /**
+     * Converts the pages like {@link #convert(AsciidocPagesStructureProvider, PageTitlePostProcessor, List, Path,
+     * Attributes, List)}, but if {@code scopeWithoutChildren} is set, only the pages with the given paths themselves
+     * (e.g. pages affected by changes) and the pages above them are converted, without the rest of their subtrees. The
+     * returned metadata is marked to publish the pages in scope without their children.
+     */
+    public ConfluencePublisherMetadata convert(AsciidocPagesStructureProvider asciidocPagesStructureProvider, PageTitlePostProcessor pageTitlePostProcessor, List<ContentPostProcessor> contentPostProcessors, Path buildFolder, Attributes attributes, List<String> scopePagePaths, boolean scopeWithoutChildren) {
+        return convert(asciidocPagesStructureProvider, pageTitlePostProcessor, contentPostProcessors, buildFolder, attributes, null, scopePagePaths, scopeWithoutChildren);
+    }
+
+    private ConfluencePublisherMetadata convert(AsciidocPagesStructureProvider asciidocPagesStructureProvider, PageTitlePostProcessor pageTitlePostProcessor, List<ContentPostProcessor> contentPostProcessors, Path buildFolder, Attributes attributes, ConfluencePageMetadataSink convertedPageSink, List<String> scopePagePaths, boolean scopeWithoutChildren) {
+        if (this.sharedAttachmentsPageTitle != null && (convertedPageSink != null || !scopePagePaths.isEmpty())) {
+            throw new IllegalArgumentException("shared attachments are not supported with a converted page sink or scope page paths");
+        }
+
         try {
             Path templatesRootFolder = buildFolder.resolve("templates").toAbsolutePath();
             createDirectories(templatesRootFolder);
@@ -84,17 +168,34 @@ public final class AsciidocConfluenceConverter {
             Path assetsRootFolder = buildFolder.resolve("assets").toAbsolutePath();
             createDirectories(assetsRootFolder);
 
+            Path diagramCacheFolder = buildFolder.resolve("diagram-cache").toAbsolutePath();
+            Path attachmentStoreFolder = buildFolder.resolve("attachment-store").toAbsolutePath();
+            Path imageCacheFolder = this.imageCacheFolder != null ? this.imageCacheFolder.toAbsolutePath() : buildFolder.resolve("image-cache").toAbsolutePath();
+
             extractTemplatesFromClassPathTo(templatesRootFolder);
 
             AsciidocPagesStructureProvider.AsciidocPagesStructure structure = asciidocPagesStructureProvider.structure();
             List<AsciidocPage> asciidocPages = structure.pages();
             Charset sourceEncoding = asciidocPagesStructureProvider.sourceEncoding();
-            List<ConfluencePageMetadata> confluencePages = buildPageTree(templatesRootFolder, assetsRootFolder, asciidocPages, sourceEncoding, attributes, pageTitlePostProcessor);
+            AttachmentStager attachmentStager = new AttachmentStager(attachmentStoreFolder, this.optimizeImages ? new ImageOptimizer(imageCacheFolder, this.maxImageWidth) : null);
+            PageConversion pageConversion = new PageConversion(templatesRootFolder, assetsRootFolder, sourceEncoding, withDefaultDiagramCacheFolder(attributes, diagramCacheFolder), pageTitlePostProcessor, contentPostProcessors, attachmentStager, convertedPageSink);
+            List<String> scope = new ArrayList<>();
+
+            List<ConfluencePageMetadata> confluencePages = scopePagePaths.isEmpty()
+                    ? buildPageTree(pageConversion, asciidocPages, null)
+                    : buildScopedPageTree(pageConversion, asciidocPages, scopePagePaths.stream().map((scopePagePath) -> Paths.get(scopePagePath).normalize()).collect(toList()), scopeWithoutChildren, scope);
+            attachmentStager.stageAll();
+
+            if (this.sharedAttachmentsPageTitle != null) {
+                confluencePages.add(shareAttachments(confluencePages, this.sharedAttachmentsPageTitle, assetsRootFolder.resolve("shared-attachments.html"), attachmentStager::stagedContentHash));
+            }
 
             ConfluencePublisherMetadata confluencePublisherMetadata = new ConfluencePublisherMetadata();
             confluencePublisherMetadata.setSpaceKey(this.spaceKey);
             confluencePublisherMetadata.setAncestorId(this.ancestorId);
             confluencePublisherMetadata.setPages(confluencePages);
+            confluencePublisherMetadata.setScope(scope);
+            confluencePublisherMetadata.setScopeWithoutChildren(scopeWithoutChildren);
 
             return confluencePublisherMetadata;
         } catch (Exception e) {
@@ -102,36 +203,63 @@ public final class AsciidocConfluenceConverter {
         }
     }
 
-    private static List<ConfluencePageMetadata> buildPageTree(Path templatesRootFolder, Path assetsRootFolder, List<AsciidocPage> asciidocPages, Charset sourceEncoding, PageTitlePostProcessor pageTitlePostProcessor) {
-        return buildPageTree(templatesRootFolder, assetsRootFolder, asciidocPages, sourceEncoding, new Attributes(), pageTitlePostProcessor);
-    }
-
-    private static List<ConfluencePageMetadata> buildPageTree(Path templatesRootFolder, Path assetsRootFolder, List<AsciidocPage> asciidocPages, Charset sourceEncoding, Attributes attributes, PageTitlePostProcessor pageTitlePostProcessor) {
+    private static List<ConfluencePageMetadata> buildPageTree(PageConversion pageConversion, List<AsciidocPage> asciidocPages, ConfluencePageMetadata parentConfluencePage) {
         List<ConfluencePageMetadata> confluencePages = new ArrayList<>();
+        asciidocPages.forEach((asciidocPage) -> confluencePages.add(pageConversion.convert(asciidocPage)));
+
+        if (pageConversion.convertedPageSink != null) {
+            // pages passed on must be publishable right away, so their attachments cannot be staged at the end. Staging
+            // them per group of siblings (instead of per page) keeps copies parallel and deduplicated within the group, at
+            // the cost of passing on the first sibling only once all of them are converted.
+            pageConversion.attachmentStager.stageAll();
+            confluencePages.forEach((confluencePageMetadata) -> pageConversion.convertedPageSink.accept(parentConfluencePage, confluencePageMetadata));
+        }
 
-        asciidocPages.forEach((asciidocPage) -> {
-            try {
-                Path pageAssetsFolder = determinePageAssetsFolder(assetsRootFolder, asciidocPage);
-                createDirectories(pageAssetsFolder);
+        for (int i = 0; i < asciidocPages.size(); i++) {
+            List<ConfluencePageMetadata> childConfluencePages = buildPageTree(pageConversion, asciidocPages.get(i).children(), confluencePages.get(i));
+            confluencePages.get(i).setChildren(childConfluencePages);
+        }
 
-                AsciidocConfluencePage asciidocConfluencePage = newAsciidocConfluencePage(asciidocPage, sourceEncoding, templatesRootFolder, pageAssetsFolder, attributes, pageTitlePostProcessor);
-                Path contentFileTargetPath = writeToTargetStructure(asciidocPage, pageAssetsFolder, asciidocConfluencePage);
+        return confluencePages;
+    }
 
-                List<AttachmentMetadata> attachments = buildAttachments(asciidocPage, pageAssetsFolder, asciidocConfluencePage.attachments());
-                copyAttachmentsAvailableInSourceStructureToTargetStructure(attachments);
+    private static List<ConfluencePageMetadata> buildScopedPageTree(PageConversion pageConversion, List<AsciidocPage> asciidocPages, List<Path> scopePagePaths, boolean scopeWithoutChildren, List<String> scope) {
+        List<ConfluencePageMetadata> confluencePages = new ArrayList<>();
 
-                List<ConfluencePageMetadata> childConfluencePages = buildPageTree(templatesRootFolder, assetsRootFolder, asciidocPage.children(), sourceEncoding, attributes, pageTitlePostProcessor);
-                ConfluencePageMetadata confluencePageMetadata = buildConfluencePageMetadata(asciidocConfluencePage, contentFileTargetPath, childConfluencePages, attachments);
+        asciidocPages.forEach((asciidocPage) -> {
+            boolean inScope = scopePagePaths.stream().anyMatch((scopePagePath) -> asciidocPage.path().toAbsolutePath().normalize().endsWith(scopePagePath));
+
+            if (inScope && !scopeWithoutChildren) {
+                ConfluencePageMetadata scopeConfluencePage = buildPageTree(pageConversion, singletonList(asciidocPage), null).get(0);
+                scope.add(scopeConfluencePage.getTitle());
+                confluencePages.add(scopeConfluencePage);
+            } else if (inScope) {
+                // added to the scope before the pages in scope below it, so that it is published before them
+                ConfluencePageMetadata scopeConfluencePage = pageConversion.convert(asciidocPage);
+                scope.add(scopeConfluencePage.getTitle());
+                scopeConfluencePage.setChildren(buildScopedPageTree(pageConversion, asciidocPage.children(), scopePagePaths, true, scope));
+                confluencePages.add(scopeConfluencePage);
+            } else {
+                List<ConfluencePageMetadata> childConfluencePages = buildScopedPageTree(pageConversion, asciidocPage.children(), scopePagePaths, scopeWithoutChildren, scope);
 
-                confluencePages.add(confluencePageMetadata);
-            } catch (IOException e) {
-                throw new RuntimeException("Could not convert and build confluence page", e);
+                if (!childConfluencePages.isEmpty()) {
+                    ConfluencePageMetadata confluencePageMetadata = pageConversion.convert(asciidocPage);
+                    confluencePageMetadata.setChildren(childConfluencePages);
+                    confluencePages.add(confluencePageMetadata);
+                }
             }
         });
 
         return confluencePages;
     }
 
+    private static Attributes withDefaultDiagramCacheFolder(Attributes attributes, Path diagramCacheFolder) {
+        Map<String, Object> attributesWithDiagramCacheFolder = attributes == null || attributes.map() == null ? new LinkedHashMap<>() : new LinkedHashMap<>(attributes.map());
+        attributesWithDiagramCacheFolder.putIfAbsent(DIAGRAM_CACHE_DIR_ATTRIBUTE, diagramCacheFolder.toString());
+
+        return new Attributes(attributesWithDiagramCacheFolder);
+    }
+
     private static List<AttachmentMetadata> buildAttachments(AsciidocPage asciidocPage, Path pageAssetsFolder, Map<String, String> attachmentsWithRelativePath) {
         return attachmentsWithRelativePath.keySet().stream()
                 .map((attachmentWithRelativePath) -> {
@@ -144,11 +272,10 @@ public final class AsciidocConfluenceConverter {
                 .collect(toList());
     }
 
-    private static ConfluencePageMetadata buildConfluencePageMetadata(AsciidocConfluencePage asciidocConfluencePage, Path contentFileTargetPath, List<ConfluencePageMetadata> childConfluencePages, List<AttachmentMetadata> attachments) {
+    private static ConfluencePageMetadata buildConfluencePageMetadata(AsciidocConfluencePage asciidocConfluencePage, Path contentFileTargetPath, List<AttachmentMetadata> attachments) {
         ConfluencePageMetadata confluencePageMetadata = new ConfluencePageMetadata();
         confluencePageMetadata.setTitle(asciidocConfluencePage.pageTitle());
         confluencePageMetadata.setContentFilePath(contentFileTargetPath.toAbsolutePath().toString());
-        confluencePageMetadata.setChildren(childConfluencePages);
         confluencePageMetadata.getAttachments().putAll(toTargetAttachmentFileNameAndAttachmentPath(attachments));
 
         return confluencePageMetadata;
@@ -161,18 +288,6 @@ public final class AsciidocConfluenceConverter {
         return contentFileTargetPath;
     }
 
-    private static void copyAttachmentsAvailableInSourceStructureToTargetStructure(List<AttachmentMetadata> attachments) {
-        attachments.forEach((attachment) -> {
-            try {
-                if (exists(attachment.sourcePath())) {
-                    copy(attachment.sourcePath(), attachment.targetPath(), REPLACE_EXISTING);
-                }
-            } catch (IOException e) {
-                throw new RuntimeException("Could not copy attachment to target structure", e);
-            }
-        });
-    }
-
     private static Map<String, String> toTargetAttachmentFileNameAndAttachmentPath(List<AttachmentMetadata> attachments) {
         return attachments.stream().collect(toMap(
                 (attachment) -> attachment.targetPath().getFileName().toString(),
@@ -279,4 +394,48 @@ public final class AsciidocConfluenceConverter {
 
     }
 
+
+    private static class PageConversion {
+
+        private final Path templatesRootFolder;
+        private final Path assetsRootFolder;
+        private final Charset sourceEncoding;
+        private final Attributes attributes;
+        private final PageTitlePostProcessor pageTitlePostProcessor;
+        private final List<ContentPostProcessor> contentPostProcessors;
+        private final AttachmentStager attachmentStager;
+        private final ConfluencePageMetadataSink convertedPageSink;
+
+        PageConversion(Path templatesRootFolder, Path assetsRootFolder, Charset sourceEncoding, Attributes attributes, PageTitlePostProcessor pageTitlePostProcessor, List<ContentPostProcessor> contentPostProcessors, AttachmentStager attachmentStager, ConfluencePageMetadataSink convertedPageSink) {
+            this.templatesRootFolder = templatesRootFolder;
+            this.assetsRootFolder = assetsRootFolder;
+            this.sourceEncoding = sourceEncoding;
+            this.attributes = attributes;
+            this.pageTitlePostProcessor = pageTitlePostProcessor;
+            this.contentPostProcessors = contentPostProcessors;
+            this.attachmentStager = attachmentStager;
+            this.convertedPageSink = convertedPageSink;
+        }
+
+        ConfluencePageMetadata convert(AsciidocPage asciidocPage) {
+            try {
+                Path pageAssetsFolder = determinePageAssetsFolder(this.assetsRootFolder, asciidocPage);
+                createDirectories(pageAssetsFolder);
+
+                AsciidocConfluencePage asciidocConfluencePage = newAsciidocConfluencePage(asciidocPage, this.sourceEncoding, this.templatesRootFolder, pageAssetsFolder, this.attributes, this.pageTitlePostProcessor, this.contentPostProcessors);
+                Path contentFileTargetPath = writeToTargetStructure(asciidocPage, pageAssetsFolder, asciidocConfluencePage);
+
+                List<AttachmentMetadata> attachments = buildAttachments(asciidocPage, pageAssetsFolder, asciidocConfluencePage.attachments());
+                Map<String, DisplaySize> displaySizes = this.attachmentStager.optimizesImages() ? ImageOptimizer.displaySizes(asciidocConfluencePage.content()) : emptyMap();
+                attachments.forEach((attachment) -> this.attachmentStager.register(attachment.sourcePath(), attachment.targetPath(),
+                        displaySizes.getOrDefault(attachment.targetPath().getFileName().toString(), DisplaySize.UNSPECIFIED)));
+
+                return buildConfluencePageMetadata(asciidocConfluencePage, contentFileTargetPath, attachments);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not convert and build confluence page", e);
+            }
+        }
+
+    }
+
 }
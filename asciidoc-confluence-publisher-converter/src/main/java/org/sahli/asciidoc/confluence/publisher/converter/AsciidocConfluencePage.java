@@ -21,30 +21,30 @@ import org.asciidoctor.Attributes;
 import org.asciidoctor.Options;
 import org.asciidoctor.OptionsBuilder;
 import org.asciidoctor.ast.Title;
+import org.sahli.asciidoc.confluence.publisher.converter.ContentRewriter.Rule;
 import org.sahli.asciidoc.confluence.publisher.converter.providers.AsciidocPagesStructureProvider.AsciidocPage;
 
 import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.function.BinaryOperator;
-import java.util.function.Function;
-import java.util.regex.MatchResult;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import static java.nio.file.Files.*;
-import static java.util.Arrays.stream;
+import static java.util.Collections.emptyList;
 import static java.util.Collections.unmodifiableMap;
-import static java.util.regex.Matcher.quoteReplacement;
-import static java.util.regex.Pattern.DOTALL;
-import static java.util.regex.Pattern.compile;
 import static java.util.stream.Collectors.joining;
 import static org.apache.commons.lang.StringEscapeUtils.unescapeHtml;
+import static org.sahli.asciidoc.confluence.publisher.converter.ContentRewriter.attributeValueRule;
+import static org.sahli.asciidoc.confluence.publisher.converter.ContentToken.Type.CDATA;
+import static org.sahli.asciidoc.confluence.publisher.converter.ContentToken.Type.END_TAG;
+import static org.sahli.asciidoc.confluence.publisher.converter.ContentToken.Type.TEXT;
+import static org.sahli.asciidoc.confluence.publisher.converter.ContentToken.token;
 import static org.asciidoctor.Asciidoctor.Factory.create;
 import static org.asciidoctor.SafeMode.UNSAFE;
 
@@ -54,14 +54,19 @@ import static org.asciidoctor.SafeMode.UNSAFE;
  */
 public class AsciidocConfluencePage {
 
-    private static final Pattern CDATA_PATTERN = compile("<!\\[CDATA\\[.*?\\]\\]>", DOTALL);
-    private static final Pattern ATTACHMENT_PATH_PATTERN = compile("<ri:attachment ri:filename=\"(.*?)\"");
-    private static final Pattern PAGE_TITLE_PATTERN = compile("<ri:page ri:content-title=\"(.*?)\"");
+    private static final String REFERENCE_TAG_PREFIX = "<ri:";
+    private static final String CDATA_END = "]]>";
+    private static final String ATTACHMENT_PATH_MARKER = "<ri:attachment ri:filename=\"";
+    private static final String PAGE_TITLE_MARKER = "<ri:page ri:content-title=\"";
+    private static final String DIAGRAM_CACHE_EXTENSION_CLASS_PATH_LOCATION = "classpath:/org/sahli/asciidoc/confluence/publisher/converter/extensions/diagram-cache.rb";
+
+    static final String DIAGRAM_CACHE_DIR_ATTRIBUTE = "diagram-cachedir";
 
     private static final Asciidoctor ASCIIDOCTOR = create();
 
     static {
         ASCIIDOCTOR.requireLibrary("asciidoctor-diagram");
+        ASCIIDOCTOR.requireLibrary(DIAGRAM_CACHE_EXTENSION_CLASS_PATH_LOCATION);
     }
 
     private final String pageTitle;
@@ -99,6 +104,10 @@ public class AsciidocConfluencePage {
     }
 
     public static AsciidocConfluencePage newAsciidocConfluencePage(AsciidocPage asciidocPage, Charset sourceEncoding, Path templatesDir, Path pageAssetsFolder, Attributes attributes, PageTitlePostProcessor pageTitlePostProcessor) {
+        return newAsciidocConfluencePage(asciidocPage, sourceEncoding, templatesDir, pageAssetsFolder, attributes, pageTitlePostProcessor, emptyList());
+    }
+
+    public static AsciidocConfluencePage newAsciidocConfluencePage(AsciidocPage asciidocPage, Charset sourceEncoding, Path templatesDir, Path pageAssetsFolder, Attributes attributes, PageTitlePostProcessor pageTitlePostProcessor, List<ContentPostProcessor> contentPostProcessors) {
         try {
             Path asciidocPagePath = asciidocPage.path();
             String asciidocContent = readIntoString(newInputStream(asciidocPagePath), sourceEncoding);
@@ -108,7 +117,7 @@ public class AsciidocConfluencePage {
             Options options = options(templatesDir, asciidocPagePath.getParent(), pageAssetsFolder, attributes);
 
             String pageTitle = pageTitle(asciidocPagePath, asciidocContent, pageTitlePostProcessor);
-            String pageContent = convertedContent(asciidocContent, options, pageTitle, asciidocPagePath, attachmentCollector, pageTitlePostProcessor, sourceEncoding);
+            String pageContent = convertedContent(asciidocContent, options, pageTitle, asciidocPagePath, attachmentCollector, pageTitlePostProcessor, contentPostProcessors, sourceEncoding);
 
             return new AsciidocConfluencePage(pageTitle, pageContent, attachmentCollector);
         } catch (IOException e) {
@@ -120,50 +129,48 @@ public class AsciidocConfluencePage {
         return path.contains("/") ? path.substring(path.lastIndexOf('/') + 1) : path;
     }
 
-    private static String convertedContent(String adocContent, Options options, String pageTitle, Path pagePath, Map<String, String> attachmentCollector, PageTitlePostProcessor pageTitlePostProcessor, Charset sourceEncoding) {
+    private static String convertedContent(String adocContent, Options options, String pageTitle, Path pagePath, Map<String, String> attachmentCollector, PageTitlePostProcessor pageTitlePostProcessor, List<ContentPostProcessor> contentPostProcessors, Charset sourceEncoding) {
         String content = ASCIIDOCTOR.convert(adocContent, options);
-        String postProcessedContent = postProcessContent(content,
+
+        ContentRewriter referenceRewriter = new ContentRewriter(
                 replaceCrossReferenceTargets(pageTitle, pagePath, pageTitlePostProcessor, sourceEncoding),
-                collectAndReplaceAttachmentFileNames(attachmentCollector),
-                unescapeCdataHtmlContent()
+                collectAndReplaceAttachmentFileNames(attachmentCollector)
         );
 
-        return postProcessedContent;
+        List<ContentPostProcessor> allContentPostProcessors = new ArrayList<>();
+        allContentPostProcessors.add(replaceReferencesAndUnescapeCdataHtmlContent(referenceRewriter));
+        allContentPostProcessors.addAll(contentPostProcessors);
+
+        return new ContentPostProcessorPipeline(allContentPostProcessors).process(content);
     }
 
-    private static Function<String, String> unescapeCdataHtmlContent() {
-        return (content) -> replaceAll(content, CDATA_PATTERN, (matchResult) -> unescapeHtml(matchResult.group()));
+    private static ContentPostProcessor replaceReferencesAndUnescapeCdataHtmlContent(ContentRewriter referenceRewriter) {
+        // references are rewritten wherever they occur (e.g. also in comments or passthrough content), only text and end
+        // tag tokens cannot contain them
+        return (token, next) -> {
+            if (token.type() == TEXT || token.type() == END_TAG || !token.contains(REFERENCE_TAG_PREFIX)) {
+                next.accept(isTerminatedCdata(token) ? token(CDATA, unescapeHtml(token.content())) : token);
+            } else {
+                String rewrittenContent = referenceRewriter.rewrite(token.content());
+                next.accept(token(token.type(), isTerminatedCdata(token) ? unescapeHtml(rewrittenContent) : rewrittenContent));
+            }
+        };
+    }
+
+    private static boolean isTerminatedCdata(ContentToken token) {
+        return token.type() == CDATA && token.content().endsWith(CDATA_END);
     }
 
-    private static Function<String, String> collectAndReplaceAttachmentFileNames(Map<String, String> attachmentCollector) {
-        return (content) -> replaceAll(content, ATTACHMENT_PATH_PATTERN, (matchResult) -> {
-            String attachmentPath = matchResult.group(1);
+    private static Rule collectAndReplaceAttachmentFileNames(Map<String, String> attachmentCollector) {
+        return attributeValueRule(ATTACHMENT_PATH_MARKER, (attachmentPath) -> {
             String attachmentFileName = deriveAttachmentName(attachmentPath);
 
             attachmentCollector.put(attachmentPath, attachmentFileName);
 
-            return "<ri:attachment ri:filename=\"" + attachmentFileName + "\"";
+            return attachmentFileName;
         });
     }
 
-    private static String replaceAll(String content, Pattern pattern, Function<MatchResult, String> replacer) {
-        StringBuffer replacedContent = new StringBuffer();
-        Matcher matcher = pattern.matcher(content);
-
-        while (matcher.find()) {
-            matcher.appendReplacement(replacedContent, quoteReplacement(replacer.apply(matcher.toMatchResult())));
-        }
-
-        matcher.appendTail(replacedContent);
-
-        return replacedContent.toString();
-    }
-
-    @SafeVarargs
-    private static String postProcessContent(String initialContent, Function<String, String>... postProcessors) {
-        return stream(postProcessors).reduce(initialContent, (accumulator, postProcessor) -> postProcessor.apply(accumulator), unusedCombiner());
-    }
-
     private static String pageTitle(Path pagePath, String pageContent, PageTitlePostProcessor pageTitlePostProcessor) {
         return Optional.ofNullable(ASCIIDOCTOR.readDocumentHeader(pageContent).getDocumentTitle())
                 .map(Title::getMain)
@@ -195,28 +202,21 @@ public class AsciidocConfluencePage {
                 .get();
     }
 
-    private static Function<String, String> replaceCrossReferenceTargets(String pageTitle, Path pagePath, PageTitlePostProcessor pageTitlePostProcessor, Charset sourceEncoding) {
-        return (content) -> replaceAll(content, PAGE_TITLE_PATTERN, (matchResult) -> {
-            String htmlTarget = matchResult.group(1);
+    private static Rule replaceCrossReferenceTargets(String pageTitle, Path pagePath, PageTitlePostProcessor pageTitlePostProcessor, Charset sourceEncoding) {
+        return attributeValueRule(PAGE_TITLE_MARKER, (htmlTarget) -> {
             Path referencedPagePath = pagePath.getParent().resolve(Paths.get(htmlTarget.substring(0, htmlTarget.lastIndexOf('.')) + ".adoc"));
-            String referencedPageTitle;
 
             try {
                 String referencedPageContent = readIntoString(new FileInputStream(referencedPagePath.toFile()), sourceEncoding);
-                referencedPageTitle = pageTitle(referencedPagePath, referencedPageContent, pageTitlePostProcessor);
+
+                return pageTitle(referencedPagePath, referencedPageContent, pageTitlePostProcessor);
             } catch (FileNotFoundException e) {
-                referencedPageTitle = pageTitle;
+                return pageTitle;
                 //throw new RuntimeException("unable to find cross-referenced page '" + referencedPagePath + "'", e);
             }
-
-            return "<ri:page ri:content-title=\"" + referencedPageTitle + "\"";
         });
     }
 
-    private static BinaryOperator<String> unusedCombiner() {
-        return (a, b) -> a;
-    }
-
     private static String readIntoString(InputStream input, Charset encoding) {
         try {
             try (BufferedReader buffer = new BufferedReader(new InputStreamReader(input, encoding))) {
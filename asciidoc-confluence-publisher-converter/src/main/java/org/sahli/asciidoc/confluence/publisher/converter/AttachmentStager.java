@@ -0,0 +1,218 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sahli.asciidoc.confluence.publisher.converter;
+
+import org.sahli.asciidoc.confluence.publisher.converter.ImageOptimizer.DisplaySize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.file.Files.copy;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.createLink;
+import static java.nio.file.Files.createTempFile;
+import static java.nio.file.Files.deleteIfExists;
+import static java.nio.file.Files.exists;
+import static java.nio.file.Files.getLastModifiedTime;
+import static java.nio.file.Files.isSameFile;
+import static java.nio.file.Files.move;
+import static java.nio.file.Files.newInputStream;
+import static java.nio.file.Files.setLastModifiedTime;
+import static java.nio.file.Files.size;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.apache.commons.codec.digest.DigestUtils.sha256Hex;
+
+/**
+ * Stages attachments available in the source structure into the page assets folders of the target structure.
+ * <p>
+ * Staging is deferred until all pages are converted (or until a group of sibling pages is converted, if pages are
+ * published while converting), so that every source file is hashed at most once and targets can be staged in
+ * parallel. The content of every source file is copied once into a content-addressed store, and targets are hard
+ * links to the store entry of their content (or copies of it, if the file system does not support hard links), so
+ * that source files with identical content are only stored once. Store entries are never linked to source files,
+ * and their last modified time is pinned, so that an entry overwritten in place through one of its targets (e.g. by
+ * a diagram generator) is detected and stored again. Targets already having the same content as their source are left
+ * untouched. If an {@link ImageOptimizer} is given, optimizable images are staged from their optimized version instead.
+ */
+final class AttachmentStager {
+
+    private static final FileTime STORE_ENTRY_LAST_MODIFIED_TIME = FileTime.fromMillis(0);
+
+    private final Path storeFolder;
+    private final ImageOptimizer imageOptimizer;
+    private final Map<Path, Path> sourcePathByTargetPath = new LinkedHashMap<>();
+    private final Map<Path, DisplaySize> displaySizeByTargetPath = new HashMap<>();
+    private final Map<Path, String> contentHashBySourcePath = new ConcurrentHashMap<>();
+    private final Map<Path, String> contentHashByTargetPath = new ConcurrentHashMap<>();
+    private final Map<String, Object> storeEntryLockByContentHash = new ConcurrentHashMap<>();
+
+    AttachmentStager(Path storeFolder) {
+        this(storeFolder, null);
+    }
+
+    AttachmentStager(Path storeFolder, ImageOptimizer imageOptimizer) {
+        this.storeFolder = storeFolder;
+        this.imageOptimizer = imageOptimizer;
+    }
+
+    boolean optimizesImages() {
+        return this.imageOptimizer != null;
+    }
+
+    void register(Path sourcePath, Path targetPath) {
+        register(sourcePath, targetPath, DisplaySize.UNSPECIFIED);
+    }
+
+    void register(Path sourcePath, Path targetPath, DisplaySize displaySize) {
+        this.sourcePathByTargetPath.put(targetPath, sourcePath);
+        this.displaySizeByTargetPath.put(targetPath, displaySize);
+    }
+
+    void stageAll() {
+        this.sourcePathByTargetPath.entrySet().parallelStream().forEach((entry) -> {
+            if (exists(entry.getValue())) {
+                stage(entry.getValue(), entry.getKey());
+            } else if (this.imageOptimizer != null && ImageOptimizer.isOptimizable(entry.getKey()) && exists(entry.getKey())) {
+                // images generated into the target structure (e.g. diagrams) have no source to stage from
+                optimizeGeneratedImage(entry.getKey());
+            }
+        });
+
+        this.sourcePathByTargetPath.clear();
+        this.displaySizeByTargetPath.clear();
+    }
+
+    /**
+     * Returns the content hash of the attachment staged to the given target path, or {@code null} if no attachment has
+     * been staged to it (e.g. because its source file does not exist).
+     */
+    String stagedContentHash(Path targetPath) {
+        return this.contentHashByTargetPath.get(targetPath);
+    }
+
+    private void stage(Path sourcePath, Path targetPath) {
+        try {
+            String sourceContentHash = contentHash(sourcePath);
+
+            if (exists(targetPath) && isSameFile(sourcePath, targetPath)) {
+                this.contentHashByTargetPath.put(targetPath, sourceContentHash);
+                return;
+            }
+
+            Path stagedSourcePath = sourcePath;
+            if (this.imageOptimizer != null && ImageOptimizer.isOptimizable(targetPath)) {
+                stagedSourcePath = this.imageOptimizer.optimize(sourcePath, sourceContentHash, this.displaySizeByTargetPath.get(targetPath));
+            }
+
+            String contentHash = contentHash(stagedSourcePath);
+            this.contentHashByTargetPath.put(targetPath, contentHash);
+
+            Path storeEntryPath = storeEntry(stagedSourcePath, contentHash);
+
+            if (exists(targetPath)) {
+                if (isSameFile(storeEntryPath, targetPath) || hasSameContent(targetPath, storeEntryPath, contentHash)) {
+                    return;
+                }
+
+                deleteIfExists(targetPath);
+            }
+
+            linkOrCopy(storeEntryPath, targetPath);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not stage attachment to target structure", e);
+        }
+    }
+
+    private Path storeEntry(Path sourcePath, String contentHash) throws IOException {
+        // targets with the same content may be staged concurrently, but must all be linked to the same entry
+        synchronized (this.storeEntryLockByContentHash.computeIfAbsent(contentHash, (key) -> new Object())) {
+            return createStoreEntryIfInvalid(sourcePath, contentHash);
+        }
+    }
+
+    private Path createStoreEntryIfInvalid(Path sourcePath, String contentHash) throws IOException {
+        Path storeEntryPath = this.storeFolder.resolve(contentHash);
+
+        if (exists(storeEntryPath) && getLastModifiedTime(storeEntryPath).equals(STORE_ENTRY_LAST_MODIFIED_TIME)) {
+            return storeEntryPath;
+        }
+
+        // the entry is missing or has been overwritten in place through one of its targets, so it is (re-)created
+        // atomically, as the store outlives this stager and may be shared with other stagers
+        createDirectories(this.storeFolder);
+        Path temporaryStoreEntryPath = createTempFile(this.storeFolder, contentHash, ".tmp");
+        try {
+            copy(sourcePath, temporaryStoreEntryPath, REPLACE_EXISTING);
+            setLastModifiedTime(temporaryStoreEntryPath, STORE_ENTRY_LAST_MODIFIED_TIME);
+            move(temporaryStoreEntryPath, storeEntryPath, ATOMIC_MOVE, REPLACE_EXISTING);
+        } finally {
+            deleteIfExists(temporaryStoreEntryPath);
+        }
+
+        return storeEntryPath;
+    }
+
+    private static void linkOrCopy(Path storeEntryPath, Path targetPath) throws IOException {
+        try {
+            createLink(targetPath, storeEntryPath);
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            // e.g. file system without hard links or store on another file system
+            try (InputStream storeEntry = newInputStream(storeEntryPath)) {
+                copy(storeEntry, targetPath);
+            }
+        }
+    }
+
+    private void optimizeGeneratedImage(Path targetPath) {
+        try {
+            Path optimizedPath = this.imageOptimizer.optimize(targetPath, sha256Hash(targetPath), this.displaySizeByTargetPath.get(targetPath));
+
+            if (!optimizedPath.equals(targetPath)) {
+                copy(optimizedPath, targetPath, REPLACE_EXISTING);
+            }
+
+            this.contentHashByTargetPath.put(targetPath, contentHash(optimizedPath));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not replace generated image with optimized image", e);
+        }
+    }
+
+    private boolean hasSameContent(Path targetPath, Path sourcePath, String sourceContentHash) throws IOException {
+        return size(targetPath) == size(sourcePath) && sha256Hash(targetPath).equals(sourceContentHash);
+    }
+
+    private String contentHash(Path sourcePath) {
+        return this.contentHashBySourcePath.computeIfAbsent(sourcePath.toAbsolutePath().normalize(), AttachmentStager::sha256Hash);
+    }
+
+    private static String sha256Hash(Path path) {
+        try (InputStream inputStream = newInputStream(path)) {
+            return sha256Hex(inputStream);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not compute hash of attachment " + path, e);
+        }
+    }
+
+}
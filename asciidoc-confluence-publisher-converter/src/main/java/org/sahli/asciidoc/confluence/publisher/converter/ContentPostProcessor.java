@@ -0,0 +1,39 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sahli.asciidoc.confluence.publisher.converter;
+
+import java.util.function.Consumer;
+
+/**
+ * Post-processes the converted storage format content of a page as a stream of {@link ContentToken}s.
+ * <p>
+ * Content post-processors are applied in the given order, after the built-in post-processing (cross-reference
+ * targets, attachment file names and CDATA unescaping). Each post-processor passes the tokens it wants to keep (either
+ * unchanged or replaced) on to the next one, and may emit additional tokens. The content of a page is tokenized and
+ * written only once, regardless of the number of post-processors.
+ * <p>
+ * Post-processors are shared between all pages, which are processed one at a time. {@link #endOfContent(Consumer)}
+ * is called after the last token of each page; post-processors buffering tokens must emit them there at the latest.
+ */
+public interface ContentPostProcessor {
+
+    void process(ContentToken token, Consumer<ContentToken> next);
+
+    default void endOfContent(Consumer<ContentToken> next) {
+    }
+
+}
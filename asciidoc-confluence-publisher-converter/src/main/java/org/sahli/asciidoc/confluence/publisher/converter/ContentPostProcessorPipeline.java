@@ -0,0 +1,137 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sahli.asciidoc.confluence.publisher.converter;
+
+import org.sahli.asciidoc.confluence.publisher.converter.ContentToken.Type;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static java.util.Collections.nCopies;
+import static org.sahli.asciidoc.confluence.publisher.converter.ContentToken.token;
+
+/**
+ * Tokenizes page content once and streams the tokens through an ordered list of {@link ContentPostProcessor}s into
+ * the post-processed content.
+ */
+final class ContentPostProcessorPipeline {
+
+    private static final String CDATA_START = "<![CDATA[";
+    private static final String CDATA_END = "]]>";
+    private static final String COMMENT_START = "<!--";
+    private static final String COMMENT_END = "-->";
+
+    private final List<ContentPostProcessor> contentPostProcessors;
+
+    ContentPostProcessorPipeline(List<ContentPostProcessor> contentPostProcessors) {
+        this.contentPostProcessors = contentPostProcessors;
+    }
+
+    String process(String content) {
+        StringBuilder processedContent = new StringBuilder(content.length() + 64);
+        int numberOfStages = this.contentPostProcessors.size();
+
+        // downstreams.get(i) passes tokens to the i-th post-processor, the last one appends tokens to the processed content
+        List<Consumer<ContentToken>> downstreams = new ArrayList<>(nCopies(numberOfStages + 1, null));
+        downstreams.set(numberOfStages, (token) -> token.appendTo(processedContent));
+
+        for (int i = numberOfStages - 1; i >= 0; i--) {
+            downstreams.set(i, stage(this.contentPostProcessors.get(i), downstreams.get(i + 1)));
+        }
+
+        tokenize(content, downstreams.get(0));
+
+        for (int i = 0; i < numberOfStages; i++) {
+            this.contentPostProcessors.get(i).endOfContent(downstreams.get(i + 1));
+        }
+
+        return processedContent.toString();
+    }
+
+    private static Consumer<ContentToken> stage(ContentPostProcessor contentPostProcessor, Consumer<ContentToken> next) {
+        return (token) -> contentPostProcessor.process(token, next);
+    }
+
+    static void tokenize(String content, Consumer<ContentToken> tokenConsumer) {
+        int length = content.length();
+        int position = 0;
+
+        while (position < length) {
+            int tokenEnd;
+            Type tokenType;
+
+            if (content.charAt(position) != '<') {
+                tokenType = Type.TEXT;
+                tokenEnd = indexOfOrEnd(content, "<", position + 1, 0);
+            } else if (content.startsWith(CDATA_START, position)) {
+                tokenType = Type.CDATA;
+                tokenEnd = indexOfOrEnd(content, CDATA_END, position + CDATA_START.length(), CDATA_END.length());
+            } else if (content.startsWith(COMMENT_START, position)) {
+                tokenType = Type.COMMENT;
+                tokenEnd = indexOfOrEnd(content, COMMENT_END, position + COMMENT_START.length(), COMMENT_END.length());
+            } else if (position + 1 < length && content.charAt(position + 1) == '/') {
+                tokenType = Type.END_TAG;
+                tokenEnd = endOfTag(content, position + 2);
+            } else if (position + 1 < length && (content.charAt(position + 1) == '!' || content.charAt(position + 1) == '?')) {
+                tokenType = Type.OTHER;
+                tokenEnd = endOfTag(content, position + 2);
+            } else if (position + 1 < length && Character.isLetter(content.charAt(position + 1))) {
+                tokenType = Type.START_TAG;
+                tokenEnd = endOfTag(content, position + 1);
+            } else {
+                tokenType = Type.TEXT;
+                tokenEnd = indexOfOrEnd(content, "<", position + 1, 0);
+            }
+
+            tokenConsumer.accept(token(tokenType, content, position, tokenEnd));
+            position = tokenEnd;
+        }
+    }
+
+    private static int endOfTag(String content, int fromIndex) {
+        char quote = 0;
+        char previous = 0;
+
+        for (int i = fromIndex; i < content.length(); i++) {
+            char character = content.charAt(i);
+
+            if (quote != 0) {
+                if (character == quote) {
+                    quote = 0;
+                }
+            } else if ((character == '"' || character == '\'') && previous == '=') {
+                quote = character;
+            } else if (character == '>') {
+                return i + 1;
+            }
+
+            if (!Character.isWhitespace(character)) {
+                previous = character;
+            }
+        }
+
+        return content.length();
+    }
+
+    private static int indexOfOrEnd(String content, String delimiter, int fromIndex, int delimiterLengthToInclude) {
+        int index = content.indexOf(delimiter, fromIndex);
+
+        return index < 0 ? content.length() : index + delimiterLengthToInclude;
+    }
+
+}
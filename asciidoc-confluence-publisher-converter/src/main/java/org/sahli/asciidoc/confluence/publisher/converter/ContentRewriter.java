@@ -0,0 +1,174 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sahli.asciidoc.confluence.publisher.converter;
+
+import java.util.List;
+import java.util.function.Function;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Rewrites converted page content in a single pass over the content.
+ * <p>
+ * Each {@link Rule} is triggered by a marker (e.g. the start of an attribute) and is applied at
+ * every position where its marker occurs. Content not consumed by any rule is copied unchanged.
+ */
+final class ContentRewriter {
+
+    private final Rule[] rules;
+    private final char[] markerStarts;
+    private final int commonMarkerStart;
+
+    ContentRewriter(Rule... rules) {
+        this(asList(rules));
+    }
+
+    ContentRewriter(List<Rule> rules) {
+        this.rules = rules.toArray(new Rule[rules.size()]);
+        this.markerStarts = new char[this.rules.length];
+
+        for (int i = 0; i < this.rules.length; i++) {
+            this.markerStarts[i] = this.rules[i].marker().charAt(0);
+        }
+
+        this.commonMarkerStart = commonMarkerStart(this.markerStarts);
+    }
+
+    String rewrite(String content) {
+        StringBuilder rewrittenContent = null;
+        int unchangedContentStart = 0;
+        int position = 0;
+        int length = content.length();
+
+        while (position < length) {
+            if (this.commonMarkerStart >= 0) {
+                position = content.indexOf(this.commonMarkerStart, position);
+
+                if (position < 0) {
+                    break;
+                }
+            }
+
+            char character = content.charAt(position);
+            int consumedUntil = -1;
+
+            for (int i = 0; i < this.rules.length && consumedUntil < 0; i++) {
+                if (this.markerStarts[i] == character && content.startsWith(this.rules[i].marker(), position)) {
+                    if (rewrittenContent == null) {
+                        rewrittenContent = new StringBuilder(length + 64);
+                    }
+
+                    int rewrittenContentLength = rewrittenContent.length();
+                    rewrittenContent.append(content, unchangedContentStart, position);
+                    consumedUntil = this.rules[i].rewrite(content, position, rewrittenContent);
+
+                    if (consumedUntil < 0) {
+                        rewrittenContent.setLength(rewrittenContentLength);
+                    }
+                }
+            }
+
+            if (consumedUntil < 0) {
+                position++;
+            } else {
+                unchangedContentStart = consumedUntil;
+                position = consumedUntil;
+            }
+        }
+
+        if (rewrittenContent == null) {
+            return content;
+        }
+
+        return rewrittenContent.append(content, unchangedContentStart, length).toString();
+    }
+
+    /**
+     * Replaces the value of an attribute starting with the given marker (e.g. {@code <ri:page ri:content-title="}).
+     * The value ends at the next double quote on the same line.
+     */
+    static Rule attributeValueRule(String marker, Function<String, String> valueReplacer) {
+        return new Rule() {
+
+            @Override
+            public String marker() {
+                return marker;
+            }
+
+            @Override
+            public int rewrite(String content, int markerStart, StringBuilder output) {
+                int valueStart = markerStart + marker.length();
+                int valueEnd = indexOfOnSameLine(content, '"', valueStart);
+
+                if (valueEnd < 0) {
+                    return -1;
+                }
+
+                output.append(marker).append(valueReplacer.apply(content.substring(valueStart, valueEnd))).append('"');
+
+                return valueEnd + 1;
+            }
+
+        };
+    }
+
+    private static int commonMarkerStart(char[] markerStarts) {
+        for (char markerStart : markerStarts) {
+            if (markerStart != markerStarts[0]) {
+                return -1;
+            }
+        }
+
+        return markerStarts.length > 0 ? markerStarts[0] : -1;
+    }
+
+    private static int indexOfOnSameLine(String content, char character, int fromIndex) {
+        for (int i = fromIndex; i < content.length(); i++) {
+            char current = content.charAt(i);
+
+            if (current == character) {
+                return i;
+            }
+
+            if (isLineTerminator(current)) {
+                return -1;
+            }
+        }
+
+        return -1;
+    }
+
+    private static boolean isLineTerminator(char character) {
+        return character == '\n' || character == '\r' || character == '\u0085' || character == '\u2028' || character == '\u2029';
+    }
+
+
+    interface Rule {
+
+        String marker();
+
+        /**
+         * Appends the rewritten replacement for the content starting at the given marker position to the output.
+         *
+         * @return the position in the content up to which the content has been consumed, or a negative value if the
+         * rule does not apply at the given position (in which case nothing must be appended)
+         */
+        int rewrite(String content, int markerStart, StringBuilder output);
+
+    }
+
+}
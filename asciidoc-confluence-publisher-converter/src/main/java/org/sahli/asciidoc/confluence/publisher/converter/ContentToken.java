@@ -0,0 +1,132 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sahli.asciidoc.confluence.publisher.converter;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Token of the converted storage format content of a page, as passed to {@link ContentPostProcessor}s.
+ * <p>
+ * Tokens created while tokenizing a page refer to a region of the page content and only materialize their content
+ * when {@link #content()} is called, so passing tokens on unchanged does not copy any content.
+ */
+public final class ContentToken {
+
+    private final Type type;
+    private final String source;
+    private final int start;
+    private final int end;
+    private String content;
+
+    private ContentToken(Type type, String source, int start, int end) {
+        this.type = type;
+        this.source = source;
+        this.start = start;
+        this.end = end;
+    }
+
+    public static ContentToken token(Type type, String content) {
+        return new ContentToken(requireNonNull(type, "type must not be null"), requireNonNull(content, "content must not be null"), 0, content.length());
+    }
+
+    static ContentToken token(Type type, String source, int start, int end) {
+        return new ContentToken(type, source, start, end);
+    }
+
+    public Type type() {
+        return this.type;
+    }
+
+    /**
+     * Returns the content of this token as it appears in the page content, e.g. {@code <a href="...">} for a
+     * {@link Type#START_TAG} or {@code <![CDATA[...]]>} for a {@link Type#CDATA} token.
+     */
+    public String content() {
+        if (this.content == null) {
+            this.content = this.start == 0 && this.end == this.source.length() ? this.source : this.source.substring(this.start, this.end);
+        }
+
+        return this.content;
+    }
+
+    public int length() {
+        return this.end - this.start;
+    }
+
+    public boolean startsWith(String prefix) {
+        return this.source.startsWith(prefix, this.start) && prefix.length() <= length();
+    }
+
+    public boolean contains(String text) {
+        for (int i = this.start; i <= this.end - text.length(); i++) {
+            if (this.source.startsWith(text, i)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the name of the tag (e.g. {@code ac:image}) for {@link Type#START_TAG} and {@link Type#END_TAG} tokens,
+     * {@code null} otherwise.
+     */
+    public String tagName() {
+        if (this.type != Type.START_TAG && this.type != Type.END_TAG) {
+            return null;
+        }
+
+        int nameStart = this.start + (this.type == Type.END_TAG ? 2 : 1);
+        int nameEnd = nameStart;
+
+        while (nameEnd < this.end && isTagNameCharacter(this.source.charAt(nameEnd))) {
+            nameEnd++;
+        }
+
+        return this.source.substring(nameStart, nameEnd);
+    }
+
+    public boolean isSelfClosing() {
+        return this.type == Type.START_TAG && length() >= 2 && this.source.charAt(this.end - 2) == '/';
+    }
+
+    void appendTo(StringBuilder output) {
+        output.append(this.source, this.start, this.end);
+    }
+
+    @Override
+    public String toString() {
+        return this.type + "[" + content() + "]";
+    }
+
+    private static boolean isTagNameCharacter(char character) {
+        return !Character.isWhitespace(character) && character != '>' && character != '/';
+    }
+
+
+    public enum Type {
+
+        TEXT,
+        START_TAG,
+        END_TAG,
+        CDATA,
+        COMMENT,
+        OTHER
+
+    }
+
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sahli.asciidoc.confluence.publisher.converter;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.awt.RenderingHints.KEY_INTERPOLATION;
+import static java.awt.RenderingHints.KEY_RENDERING;
+import static java.awt.RenderingHints.VALUE_INTERPOLATION_BICUBIC;
+import static java.awt.RenderingHints.VALUE_RENDER_QUALITY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.createTempFile;
+import static java.nio.file.Files.deleteIfExists;
+import static java.nio.file.Files.exists;
+import static java.nio.file.Files.move;
+import static java.nio.file.Files.newInputStream;
+import static java.nio.file.Files.readAllBytes;
+import static java.nio.file.Files.write;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.sahli.asciidoc.confluence.publisher.converter.ContentPostProcessorPipeline.tokenize;
+import static org.sahli.asciidoc.confluence.publisher.converter.ContentToken.Type.START_TAG;
+
+/**
+ * Optimizes PNG attachments before they are staged: images are re-encoded without metadata (e.g. text chunks added by
+ * diagram or screenshot tools) and, if a maximum width is configured, downsized to it. A re-encoded image is only used
+ * if it is smaller than the original one or had to be downsized.
+ * <p>
+ * Images are never downsized below the size they are displayed with on a page (i.e. the {@code ac:width} or
+ * {@code ac:height} of the {@code ac:image} referring to them). Optimized images are cached in the given cache folder by
+ * content hash and effective maximum width, so that unchanged images are optimized (and decoded) only once across
+ * conversions.
+ */
+final class ImageOptimizer {
+
+    private static final String PNG_EXTENSION = ".png";
+    private static final String IMAGE_TAG_NAME = "ac:image";
+    private static final String ATTACHMENT_TAG_NAME = "ri:attachment";
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final int IHDR_CHUNK_TYPE = 0x49484452;
+    private static final int IHDR_CHUNK_TYPE_OFFSET = 12;
+    private static final int PNG_HEADER_LENGTH = IHDR_CHUNK_TYPE_OFFSET + 12;
+
+    private final Path cacheFolder;
+    private final Integer maxWidth;
+
+    ImageOptimizer(Path cacheFolder, Integer maxWidth) {
+        this.cacheFolder = cacheFolder;
+        this.maxWidth = maxWidth;
+    }
+
+    static boolean isOptimizable(Path path) {
+        return path.getFileName().toString().toLowerCase().endsWith(PNG_EXTENSION);
+    }
+
+    /**
+     * Returns the path of the optimized image for the given source image, or the source path itself if the image cannot
+     * be optimized.
+     */
+    Path optimize(Path sourcePath, String contentHash, DisplaySize displaySize) {
+        try {
+            int effectiveMaxWidth = 0;
+
+            if (this.maxWidth != null) {
+                // the dimensions are read from the header, so that cached images are not decoded just to find their key
+                int[] dimensions = pngDimensions(sourcePath);
+
+                if (dimensions == null) {
+                    return sourcePath;
+                }
+
+                effectiveMaxWidth = Math.max(this.maxWidth, displaySize.requiredWidth(dimensions[0], dimensions[1]));
+            }
+
+            Path cachedPath = this.cacheFolder.resolve(contentHash + (effectiveMaxWidth > 0 ? "-" + effectiveMaxWidth : "") + PNG_EXTENSION);
+
+            if (!exists(cachedPath)) {
+                BufferedImage image = ImageIO.read(sourcePath.toFile());
+
+                if (image == null) {
+                    return sourcePath;
+                }
+
+                writeToCache(cachedPath, optimizedImageContent(sourcePath, image, effectiveMaxWidth));
+            }
+
+            return cachedPath;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not optimize image " + sourcePath, e);
+        }
+    }
+
+    /**
+     * Returns the display size of every image attachment referred to by an {@code ac:image} with an {@code ac:width} or
+     * {@code ac:height} in the given page content, by attachment file name.
+     */
+    static Map<String, DisplaySize> displaySizes(String content) {
+        Map<String, DisplaySize> displaySizesByFileName = new HashMap<>();
+        DisplaySize[] currentImageDisplaySize = {null};
+
+        tokenize(content, (token) -> {
+            if (token.type() != START_TAG) {
+                return;
+            }
+
+            if (IMAGE_TAG_NAME.equals(token.tagName())) {
+                int width = numericAttributeValue(token.content(), "ac:width");
+                int height = numericAttributeValue(token.content(), "ac:height");
+                currentImageDisplaySize[0] = width > 0 || height > 0 ? new DisplaySize(width, height) : null;
+            } else if (ATTACHMENT_TAG_NAME.equals(token.tagName()) && currentImageDisplaySize[0] != null) {
+                String fileName = attributeValue(token.content(), "ri:filename");
+
+                if (fileName != null) {
+                    displaySizesByFileName.merge(fileName, currentImageDisplaySize[0], DisplaySize::max);
+                }
+
+                currentImageDisplaySize[0] = null;
+            }
+        });
+
+        return displaySizesByFileName;
+    }
+
+    /**
+     * Returns the width and height stored in the header (i.e. the leading {@code IHDR} chunk) of the given PNG image, or
+     * {@code null} if the file does not start with a PNG header.
+     */
+    private static int[] pngDimensions(Path path) throws IOException {
+        byte[] header = new byte[PNG_HEADER_LENGTH];
+
+        try (DataInputStream inputStream = new DataInputStream(newInputStream(path))) {
+            inputStream.readFully(header);
+        } catch (EOFException e) {
+            return null;
+        }
+
+        for (int i = 0; i < PNG_SIGNATURE.length; i++) {
+            if (header[i] != PNG_SIGNATURE[i]) {
+                return null;
+            }
+        }
+
+        ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+        if (headerBuffer.getInt(IHDR_CHUNK_TYPE_OFFSET) != IHDR_CHUNK_TYPE) {
+            return null;
+        }
+
+        return new int[]{headerBuffer.getInt(IHDR_CHUNK_TYPE_OFFSET + 4), headerBuffer.getInt(IHDR_CHUNK_TYPE_OFFSET + 8)};
+    }
+
+    private static byte[] optimizedImageContent(Path sourcePath, BufferedImage image, int effectiveMaxWidth) throws IOException {
+        boolean downsized = effectiveMaxWidth > 0 && image.getWidth() > effectiveMaxWidth;
+        BufferedImage optimizedImage = downsized ? downsized(image, effectiveMaxWidth) : image;
+
+        ByteArrayOutputStream optimizedContent = new ByteArrayOutputStream();
+        ImageIO.write(optimizedImage, "png", optimizedContent);
+
+        byte[] originalContent = readAllBytes(sourcePath);
+
+        return downsized || optimizedContent.size() < originalContent.length ? optimizedContent.toByteArray() : originalContent;
+    }
+
+    private static BufferedImage downsized(BufferedImage image, int width) {
+        int height = Math.max(1, (int) Math.round((double) image.getHeight() * width / image.getWidth()));
+        BufferedImage downsizedImage = new BufferedImage(width, height, image.getColorModel().hasAlpha() ? TYPE_INT_ARGB : TYPE_INT_RGB);
+
+        Graphics2D graphics = downsizedImage.createGraphics();
+        try {
+            graphics.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_BICUBIC);
+            graphics.setRenderingHint(KEY_RENDERING, VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        return downsizedImage;
+    }
+
+    private void writeToCache(Path cachedPath, byte[] content) throws IOException {
+        createDirectories(this.cacheFolder);
+        Path temporaryPath = createTempFile(this.cacheFolder, "optimizing-", PNG_EXTENSION);
+
+        try {
+            write(temporaryPath, content);
+
+            try {
+                move(temporaryPath, cachedPath, ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                move(temporaryPath, cachedPath, REPLACE_EXISTING);
+            }
+        } finally {
+            deleteIfExists(temporaryPath);
+        }
+    }
+
+    private static int numericAttributeValue(String tag, String attributeName) {
+        String value = attributeValue(tag, attributeName);
+
+        return value != null && !value.isEmpty() && value.chars().allMatch(Character::isDigit) ? Integer.parseInt(value) : 0;
+    }
+
+    private static String attributeValue(String tag, String attributeName) {
+        String marker = attributeName + "=\"";
+        int valueStart = tag.indexOf(marker);
+
+        if (valueStart < 0) {
+            return null;
+        }
+
+        valueStart += marker.length();
+        int valueEnd = tag.indexOf('"', valueStart);
+
+        return valueEnd < 0 ? null : tag.substring(valueStart, valueEnd);
+    }
+
+
+    static final class DisplaySize {
+
+        static final DisplaySize UNSPECIFIED = new DisplaySize(0, 0);
+
+        private final int width;
+        private final int height;
+
+        DisplaySize(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        int requiredWidth(int imageWidth, int imageHeight) {
+            int widthForHeight = this.height > 0 && imageHeight > 0 ? (int) Math.ceil((double) this.height * imageWidth / imageHeight) : 0;
+
+            return Math.max(this.width, widthForHeight);
+        }
+
+        static DisplaySize max(DisplaySize left, DisplaySize right) {
+            return new DisplaySize(Math.max(left.width, right.width), Math.max(left.height, right.height));
+        }
+
+    }
+
+}
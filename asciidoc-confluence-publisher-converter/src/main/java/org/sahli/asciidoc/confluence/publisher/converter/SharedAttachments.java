@@ -0,0 +1,183 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sahli.asciidoc.confluence.publisher.converter;
+
+import org.sahli.asciidoc.confluence.publisher.client.metadata.ConfluencePageMetadata;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.readAllBytes;
+import static java.nio.file.Files.write;
+import static java.util.Collections.singletonList;
+import static org.apache.commons.lang.StringEscapeUtils.escapeXml;
+import static org.sahli.asciidoc.confluence.publisher.converter.ContentToken.Type.END_TAG;
+import static org.sahli.asciidoc.confluence.publisher.converter.ContentToken.Type.START_TAG;
+import static org.sahli.asciidoc.confluence.publisher.converter.ContentToken.token;
+
+/**
+ * Moves attachments with the same content used by more than one page to a single shared attachments page, so that they
+ * are uploaded and stored only once. The pages refer to the moved attachments on the shared attachments page instead
+ * of to their own attachments.
+ * <p>
+ * Shared attachments are named after the prefix of their content hash and their original file name, so that files with
+ * the same name but different content do not clash and the name of a shared attachment stays the same as long as its
+ * content does.
+ */
+final class SharedAttachments {
+
+    private static final String ATTACHMENT_TAG_NAME = "ri:attachment";
+    private static final String FILE_NAME_MARKER = "ri:filename=\"";
+    private static final int CONTENT_HASH_PREFIX_LENGTH = 12;
+
+    private SharedAttachments() {
+    }
+
+    /**
+     * Moves the shared attachments of the given pages and their children to a new page with the given title and content
+     * file, rewrites the content files of the pages referring to them and returns the shared attachments page.
+     */
+    static ConfluencePageMetadata shareAttachments(List<ConfluencePageMetadata> pages, String sharedAttachmentsPageTitle, Path sharedAttachmentsPageContentFile, Function<Path, String> contentHash) {
+        List<ConfluencePageMetadata> allPages = new ArrayList<>();
+        collectPages(pages, allPages);
+
+        Map<String, Set<String>> contentFilePathsByContentHash = new HashMap<>();
+        Map<String, Map.Entry<String, String>> firstAttachmentByContentHash = new LinkedHashMap<>();
+
+        allPages.forEach((page) -> page.getAttachments().entrySet().forEach((attachment) -> {
+            String attachmentContentHash = contentHash.apply(Paths.get(attachment.getValue()));
+
+            if (attachmentContentHash != null) {
+                contentFilePathsByContentHash.computeIfAbsent(attachmentContentHash, (ignored) -> new HashSet<>()).add(page.getContentFilePath());
+                firstAttachmentByContentHash.putIfAbsent(attachmentContentHash, attachment);
+            }
+        }));
+
+        Map<String, String> sharedAttachmentNameByContentHash = new HashMap<>();
+        ConfluencePageMetadata sharedAttachmentsPage = new ConfluencePageMetadata();
+        sharedAttachmentsPage.setTitle(sharedAttachmentsPageTitle);
+        sharedAttachmentsPage.setContentFilePath(sharedAttachmentsPageContentFile.toAbsolutePath().toString());
+
+        firstAttachmentByContentHash.forEach((attachmentContentHash, attachment) -> {
+            if (contentFilePathsByContentHash.get(attachmentContentHash).size() > 1) {
+                String sharedAttachmentName = attachmentContentHash.substring(0, CONTENT_HASH_PREFIX_LENGTH) + "-" + attachment.getKey();
+                sharedAttachmentNameByContentHash.put(attachmentContentHash, sharedAttachmentName);
+                sharedAttachmentsPage.getAttachments().put(sharedAttachmentName, attachment.getValue());
+            }
+        });
+
+        allPages.forEach((page) -> referToSharedAttachments(page, sharedAttachmentsPageTitle, sharedAttachmentNameByContentHash, contentHash));
+        writeContent(sharedAttachmentsPageContentFile, "<p>Attachments shared by multiple pages.</p>");
+
+        return sharedAttachmentsPage;
+    }
+
+    private static void referToSharedAttachments(ConfluencePageMetadata page, String sharedAttachmentsPageTitle, Map<String, String> sharedAttachmentNameByContentHash, Function<Path, String> contentHash) {
+        Map<String, String> sharedAttachmentNameByFileName = new HashMap<>();
+
+        page.getAttachments().entrySet().removeIf((attachment) -> {
+            String sharedAttachmentName = sharedAttachmentNameByContentHash.get(contentHash.apply(Paths.get(attachment.getValue())));
+
+            if (sharedAttachmentName == null) {
+                return false;
+            }
+
+            sharedAttachmentNameByFileName.put(attachment.getKey(), sharedAttachmentName);
+
+            return true;
+        });
+
+        if (!sharedAttachmentNameByFileName.isEmpty()) {
+            Path contentFilePath = Paths.get(page.getContentFilePath());
+            ContentPostProcessorPipeline pipeline = new ContentPostProcessorPipeline(singletonList(new SharedAttachmentReferenceRewriter(sharedAttachmentsPageTitle, sharedAttachmentNameByFileName)));
+            writeContent(contentFilePath, pipeline.process(readContent(contentFilePath)));
+        }
+    }
+
+    private static void collectPages(List<ConfluencePageMetadata> pages, List<ConfluencePageMetadata> allPages) {
+        pages.forEach((page) -> {
+            allPages.add(page);
+            collectPages(page.getChildren(), allPages);
+        });
+    }
+
+    private static String readContent(Path contentFilePath) {
+        try {
+            return new String(readAllBytes(contentFilePath), UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read page content " + contentFilePath, e);
+        }
+    }
+
+    private static void writeContent(Path contentFilePath, String content) {
+        try {
+            write(contentFilePath, content.getBytes(UTF_8));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write page content " + contentFilePath, e);
+        }
+    }
+
+
+    private static class SharedAttachmentReferenceRewriter implements ContentPostProcessor {
+
+        private final String sharedAttachmentsPageStartTag;
+        private final Map<String, String> sharedAttachmentNameByFileName;
+        private boolean insideSharedAttachmentReference;
+
+        SharedAttachmentReferenceRewriter(String sharedAttachmentsPageTitle, Map<String, String> sharedAttachmentNameByFileName) {
+            this.sharedAttachmentsPageStartTag = "<ri:page ri:content-title=\"" + escapeXml(sharedAttachmentsPageTitle) + "\">";
+            this.sharedAttachmentNameByFileName = sharedAttachmentNameByFileName;
+        }
+
+        @Override
+        public void process(ContentToken token, Consumer<ContentToken> next) {
+            if (token.type() == START_TAG && ATTACHMENT_TAG_NAME.equals(token.tagName())) {
+                String startTag = token.content();
+                int fileNameMarkerStart = startTag.indexOf(FILE_NAME_MARKER);
+                int fileNameStart = fileNameMarkerStart + FILE_NAME_MARKER.length();
+                int fileNameEnd = fileNameMarkerStart < 0 ? -1 : startTag.indexOf('"', fileNameStart);
+                String sharedAttachmentName = fileNameEnd < 0 ? null : this.sharedAttachmentNameByFileName.get(startTag.substring(fileNameStart, fileNameEnd));
+
+                if (sharedAttachmentName != null && !token.isSelfClosing()) {
+                    this.insideSharedAttachmentReference = true;
+                    next.accept(token(START_TAG, startTag.substring(0, fileNameStart) + sharedAttachmentName + startTag.substring(fileNameEnd)));
+
+                    return;
+                }
+            } else if (token.type() == END_TAG && this.insideSharedAttachmentReference && ATTACHMENT_TAG_NAME.equals(token.tagName())) {
+                this.insideSharedAttachmentReference = false;
+                next.accept(token(START_TAG, this.sharedAttachmentsPageStartTag));
+                next.accept(token(END_TAG, "</ri:page>"));
+            }
+
+            next.accept(token);
+        }
+
+    }
+
+}
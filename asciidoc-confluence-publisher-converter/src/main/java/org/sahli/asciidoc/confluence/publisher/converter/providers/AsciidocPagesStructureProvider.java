@@ -18,14 +18,28 @@ package org.sahli.asciidoc.confluence.publisher.converter.providers;
 
 import java.nio.charset.Charset;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface AsciidocPagesStructureProvider {
 
+    /**
+     * Returns the page structure, which may be discovered on the first call only.
+     */
     AsciidocPagesStructure structure();
 
     Charset sourceEncoding();
 
+    /**
+     * Returns the paths of the pages (as returned by {@link AsciidocPage#path()}) whose content is affected by changes
+     * of the given files, or nothing if the affected pages cannot be determined and all pages have to be considered
+     * affected.
+     */
+    default Optional<List<Path>> affectedPages(Collection<Path> changedFiles) {
+        return Optional.empty();
+    }
+
 
     interface AsciidocPagesStructure {
 
@@ -38,6 +52,10 @@ public interface AsciidocPagesStructureProvider {
 
         Path path();
 
+        /**
+         * Returns the child pages, which may be discovered on the first call only. Consumers processing the pages
+         * before accessing their children therefore overlap processing with discovery of the rest of the structure.
+         */
         List<AsciidocPage> children();
 
     }
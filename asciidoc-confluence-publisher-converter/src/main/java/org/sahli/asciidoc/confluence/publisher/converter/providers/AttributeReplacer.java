@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sahli.asciidoc.confluence.publisher.converter.providers;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Replaces attribute references (e.g. {@code {version}}) with the values of the given attributes in a single scan
+ * per line. References to unknown attributes are left unchanged, and replaced values are not scanned again.
+ */
+final class AttributeReplacer {
+
+    private final Map<String, String> valuesByName;
+    private final int maxNameLength;
+
+    AttributeReplacer(Map<String, Object> attributes) {
+        this.valuesByName = new HashMap<>();
+        attributes.forEach((name, value) -> this.valuesByName.put(name, String.valueOf(value)));
+        this.maxNameLength = this.valuesByName.keySet().stream().mapToInt(String::length).max().orElse(0);
+    }
+
+    String replace(String line) {
+        if (this.valuesByName.isEmpty()) {
+            return line;
+        }
+
+        int referenceStart = line.indexOf('{');
+
+        if (referenceStart < 0) {
+            return line;
+        }
+
+        StringBuilder replacedLine = null;
+        int copiedUntil = 0;
+
+        while (referenceStart >= 0) {
+            int referenceEnd = line.indexOf('}', referenceStart + 1);
+
+            if (referenceEnd < 0) {
+                break;
+            }
+
+            int nextReferenceStart = line.indexOf('{', referenceStart + 1);
+
+            if (nextReferenceStart >= 0 && nextReferenceStart < referenceEnd) {
+                referenceStart = nextReferenceStart;
+                continue;
+            }
+
+            String value = referenceEnd - referenceStart - 1 <= this.maxNameLength ? this.valuesByName.get(line.substring(referenceStart + 1, referenceEnd)) : null;
+
+            if (value != null) {
+                if (replacedLine == null) {
+                    replacedLine = new StringBuilder(line.length() + 32);
+                }
+
+                replacedLine.append(line, copiedUntil, referenceStart).append(value);
+                copiedUntil = referenceEnd + 1;
+            }
+
+            referenceStart = line.indexOf('{', referenceEnd + 1);
+        }
+
+        return replacedLine == null ? line : replacedLine.append(line, copiedUntil, line.length()).toString();
+    }
+
+}
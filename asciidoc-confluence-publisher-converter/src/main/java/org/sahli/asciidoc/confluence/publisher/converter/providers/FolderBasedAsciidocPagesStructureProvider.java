@@ -18,32 +18,83 @@ package org.sahli.asciidoc.confluence.publisher.converter.providers;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.PathMatcher;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-
-import static java.nio.file.Files.walk;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+import static java.nio.file.Files.exists;
+import static java.nio.file.Files.isDirectory;
+import static java.nio.file.Files.newDirectoryStream;
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+import static java.util.Collections.emptyList;
 import static java.util.Collections.unmodifiableList;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
 import static java.util.stream.Collectors.toList;
-import static java.util.stream.Collectors.toMap;
 
+/**
+ * Provides the page structure based on the folder structure of the documentation root folder: every {@code .adoc} file
+ * (except include files starting with {@code _}) is a page, and the pages in a folder {@code name} are the children of
+ * the page {@code name.adoc} next to that folder.
+ * <p>
+ * The structure is discovered lazily: the documentation root folder is scanned on the first call to
+ * {@link #structure()}, and the folder of a page's children on the first call to {@link AsciidocPage#children()}. While
+ * the children of a page are processed, the folders of their own children are already scanned in the background, so
+ * that the pages of large documentation trees can be converted while the rest of the tree is still being discovered.
+ * Only folders containing potential child pages (i.e. folders with a page of the same name next to them) are scanned.
+ * <p>
+ * Include and exclude glob patterns (e.g. {@code drafts} or {@code **.draft.adoc}) are matched against the paths
+ * relative to the documentation root folder. Excluded folders are not scanned at all, and if include patterns are
+ * given, only files matching at least one of them are pages.
+ */
 public class FolderBasedAsciidocPagesStructureProvider implements AsciidocPagesStructureProvider {
 
     private static final String ADOC_FILE_EXTENSION = ".adoc";
     private static final String INCLUDE_FILE_PREFIX = "_";
 
-    private final AsciidocPagesStructure structure;
+    private final Path documentationRootFolder;
     private final Charset sourceEncoding;
+    private final List<PathMatcher> includes;
+    private final List<PathMatcher> excludes;
+    private AsciidocPagesStructure structure;
 
     public FolderBasedAsciidocPagesStructureProvider(Path documentationRootFolder, Charset sourceEncoding) {
-        this.structure = buildStructure(documentationRootFolder);
+        this(documentationRootFolder, sourceEncoding, emptyList(), emptyList());
+    }
+
+    public FolderBasedAsciidocPagesStructureProvider(Path documentationRootFolder, Charset sourceEncoding, List<String> includes, List<String> excludes) {
+        // fail fast although the structure is only discovered later
+        if (!exists(documentationRootFolder)) {
+            throw new RuntimeException("Could not create asciidoc source structure", new NoSuchFileException(documentationRootFolder.toString()));
+        }
+
+        this.documentationRootFolder = documentationRootFolder;
         this.sourceEncoding = sourceEncoding;
+        this.includes = pathMatchers(documentationRootFolder, includes);
+        this.excludes = pathMatchers(documentationRootFolder, excludes);
     }
 
     @Override
-    public AsciidocPagesStructure structure() {
+    public synchronized AsciidocPagesStructure structure() {
+        if (this.structure == null) {
+            List<AsciidocPage> topLevelAsciidocPages = discover(() -> scanFolder(this.documentationRootFolder));
+            prefetchChildren(topLevelAsciidocPages);
+
+            this.structure = new DefaultAsciidocPagesStructure(topLevelAsciidocPages);
+        }
+
         return this.structure;
     }
 
@@ -52,68 +103,132 @@ public class FolderBasedAsciidocPagesStructureProvider implements AsciidocPagesS
         return this.sourceEncoding;
     }
 
-    private AsciidocPagesStructure buildStructure(Path documentationRootFolder) {
-        try {
-            Map<Path, DefaultAsciidocPage> asciidocPageIndex = indexAsciidocPagesByFolderPath(documentationRootFolder);
-            List<DefaultAsciidocPage> allAsciidocPages = connectAsciidocPagesToParent(asciidocPageIndex);
-            List<AsciidocPage> topLevelAsciiPages = findTopLevelAsciiPages(allAsciidocPages, documentationRootFolder);
+    /**
+     * Determines the affected pages from changed page files only, as includes are not tracked. The affected pages cannot
+     * be determined if a page was deleted (as its parent's children would have to be republished) or if any other file in
+     * the documentation root folder (e.g. an include file or an image) was changed.
+     */
+    @Override
+    public Optional<List<Path>> affectedPages(Collection<Path> changedFiles) {
+        Path normalizedDocumentationRootFolder = this.documentationRootFolder.toAbsolutePath().normalize();
+        Set<Path> affectedPagePaths = new LinkedHashSet<>();
 
-            return new DefaultAsciidocPagesStructure(topLevelAsciiPages);
-        } catch (IOException e) {
-            throw new RuntimeException("Could not create asciidoc source structure", e);
+        for (Path changedFile : changedFiles) {
+            Path normalizedChangedFile = changedFile.toAbsolutePath().normalize();
+
+            if (!normalizedChangedFile.startsWith(normalizedDocumentationRootFolder)) {
+                continue;
+            }
+
+            if (!isAdocFile(normalizedChangedFile) || isIncludeFile(normalizedChangedFile)) {
+                return Optional.empty();
+            }
+
+            if (!exists(normalizedChangedFile)) {
+                return Optional.empty();
+            }
+
+            affectedPagePaths.add(this.documentationRootFolder.resolve(normalizedDocumentationRootFolder.relativize(normalizedChangedFile)));
         }
+
+        return Optional.of(new ArrayList<>(affectedPagePaths));
     }
 
-    @SuppressWarnings("CodeBlock2Expr")
-    private List<DefaultAsciidocPage> connectAsciidocPagesToParent(Map<Path, DefaultAsciidocPage> asciidocPageIndex) {
-        asciidocPageIndex.forEach((asciidocPageFolderPath, asciidocPage) -> {
-            asciidocPageIndex.computeIfPresent(asciidocPage.path().getParent(), (ignored, parentAsciidocPage) -> {
-                parentAsciidocPage.addChild(asciidocPage);
+    private List<AsciidocPage> scanFolder(Path folder) {
+        Map<String, Path> asciidocPagePathsByName = new LinkedHashMap<>();
+        List<Path> subFolders = new ArrayList<>();
+
+        for (Path entry : sortedEntries(folder)) {
+            if (isDirectory(entry, NOFOLLOW_LINKS)) {
+                if (!isExcluded(entry)) {
+                    subFolders.add(entry);
+                }
+            } else if (isAdocFile(entry) && !isIncludeFile(entry) && isIncluded(entry) && !isExcluded(entry)) {
+                asciidocPagePathsByName.put(removeExtension(entry), entry);
+            }
+        }
+
+        Map<String, Path> childPagesFoldersByName = new LinkedHashMap<>();
+        subFolders.forEach((subFolder) -> childPagesFoldersByName.put(subFolder.getFileName().toString(), subFolder));
 
-                return parentAsciidocPage;
-            });
-        });
+        List<AsciidocPage> asciidocPages = new ArrayList<>();
+        asciidocPagePathsByName.forEach((name, asciidocPagePath) -> asciidocPages.add(new LazyAsciidocPage(asciidocPagePath, childPagesFoldersByName.get(name))));
 
-        return new ArrayList<>(asciidocPageIndex.values());
+        return unmodifiableList(asciidocPages);
     }
 
-    private static Map<Path, DefaultAsciidocPage> indexAsciidocPagesByFolderPath(Path documentationRootFolder) throws IOException {
-        return walk(documentationRootFolder)
-                .filter((path) -> isAdocFile(path) && !isIncludeFile(path))
-                .collect(toMap((asciidocPagePath) -> removeExtension(asciidocPagePath), (asciidocPagePath) -> new DefaultAsciidocPage(asciidocPagePath)));
+    private boolean isIncluded(Path path) {
+        return this.includes.isEmpty() || matchesAny(this.includes, path);
     }
 
-    private static List<AsciidocPage> findTopLevelAsciiPages(List<DefaultAsciidocPage> asciiPageByFolderPath, Path documentationRootFolder) {
-        return asciiPageByFolderPath.stream()
-                .filter((asciidocPage) -> asciidocPage.path().equals(documentationRootFolder.resolve(asciidocPage.path().getFileName())))
-                .collect(toList());
+    private boolean isExcluded(Path path) {
+        return matchesAny(this.excludes, path);
+    }
+
+    private boolean matchesAny(List<PathMatcher> pathMatchers, Path path) {
+        Path relativePath = this.documentationRootFolder.relativize(path);
+
+        return pathMatchers.stream().anyMatch((pathMatcher) -> pathMatcher.matches(relativePath));
     }
 
-    private static Path removeExtension(Path path) {
-        return Paths.get(path.toString().substring(0, path.toString().lastIndexOf('.')));
+    private static void prefetchChildren(List<AsciidocPage> asciidocPages) {
+        asciidocPages.forEach((asciidocPage) -> ((LazyAsciidocPage) asciidocPage).childrenScan());
+    }
+
+    private static List<AsciidocPage> discover(Supplier<List<AsciidocPage>> folderScan) {
+        try {
+            return folderScan.get();
+        } catch (CompletionException e) {
+            throw new RuntimeException("Could not create asciidoc source structure", e.getCause());
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Could not create asciidoc source structure", e);
+        }
+    }
+
+    private static List<Path> sortedEntries(Path folder) {
+        List<Path> entries = new ArrayList<>();
+
+        try (DirectoryStream<Path> directoryStream = newDirectoryStream(folder)) {
+            directoryStream.forEach(entries::add);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read folder " + folder, e);
+        }
+
+        entries.sort(null);
+
+        return entries;
+    }
+
+    private static List<PathMatcher> pathMatchers(Path documentationRootFolder, List<String> globPatterns) {
+        return globPatterns == null ? emptyList() : globPatterns.stream()
+                .map((globPattern) -> documentationRootFolder.getFileSystem().getPathMatcher("glob:" + globPattern))
+                .collect(toList());
     }
 
     private static boolean isAdocFile(Path file) {
-        return file.toString().endsWith(ADOC_FILE_EXTENSION);
+        return file.getFileName().toString().endsWith(ADOC_FILE_EXTENSION);
     }
 
     private static boolean isIncludeFile(Path file) {
         return file.getFileName().toString().startsWith(INCLUDE_FILE_PREFIX);
     }
 
+    private static String removeExtension(Path file) {
+        String fileName = file.getFileName().toString();
+
+        return fileName.substring(0, fileName.lastIndexOf('.'));
+    }
+
 
-    private static class DefaultAsciidocPage implements AsciidocPage {
+    private class LazyAsciidocPage implements AsciidocPage {
 
         private final Path path;
-        private final List<AsciidocPage> children;
+        private final Path childPagesFolder;
+        private CompletableFuture<List<AsciidocPage>> children;
 
-        DefaultAsciidocPage(Path path) {
+        LazyAsciidocPage(Path path, Path childPagesFolder) {
             this.path = path;
-            this.children = new ArrayList<>();
-        }
-
-        void addChild(AsciidocPage child) {
-            this.children.add(child);
+            this.childPagesFolder = childPagesFolder;
         }
 
         @Override
@@ -123,7 +238,18 @@ public class FolderBasedAsciidocPagesStructureProvider implements AsciidocPagesS
 
         @Override
         public List<AsciidocPage> children() {
-            return unmodifiableList(this.children);
+            List<AsciidocPage> children = discover(() -> childrenScan().join());
+            prefetchChildren(children);
+
+            return children;
+        }
+
+        synchronized CompletableFuture<List<AsciidocPage>> childrenScan() {
+            if (this.children == null) {
+                this.children = this.childPagesFolder == null ? completedFuture(emptyList()) : supplyAsync(() -> scanFolder(this.childPagesFolder));
+            }
+
+            return this.children;
         }
 
     }
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sahli.asciidoc.confluence.publisher.converter.providers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Determines the files changed in a git working tree compared to a base revision (e.g. the target branch of a merge),
+ * to be passed to {@link AsciidocPagesStructureProvider#affectedPages(java.util.Collection)}. Requires the {@code git}
+ * executable to be available on the path.
+ */
+public final class GitChangedFiles {
+
+    private GitChangedFiles() {
+    }
+
+    /**
+     * Returns the absolute paths of all files changed, added or deleted in the working tree containing the given folder
+     * since the given revision, including uncommitted changes of tracked files.
+     */
+    public static List<Path> changedFilesSince(Path folder, String baseRevision) {
+        Path workingTreeRoot = folder.resolve(withoutTrailingNewline(git(folder, "rev-parse", "--show-toplevel")));
+
+        // paths are separated by NUL and not quoted, so that paths containing spaces or special characters are kept as is
+        return Stream.of(git(folder, "diff", "-z", "--name-only", "--no-renames", baseRevision, "--").split("\0"))
+                .filter((changedFile) -> !changedFile.isEmpty())
+                .map((changedFile) -> workingTreeRoot.resolve(changedFile).toAbsolutePath().normalize())
+                .collect(toList());
+    }
+
+    private static String withoutTrailingNewline(String output) {
+        return output.endsWith("\n") ? output.substring(0, output.length() - 1) : output;
+    }
+
+    private static String git(Path folder, String... arguments) {
+        List<String> command = new ArrayList<>(asList("git", "-C", folder.toAbsolutePath().toString()));
+        command.addAll(asList(arguments));
+
+        Path errorFile = null;
+        try {
+            // the error output goes to a file, so that neither output stream can fill up and block git while the other is read
+            errorFile = Files.createTempFile("git-error", ".txt");
+            Process process = new ProcessBuilder(command).redirectError(errorFile.toFile()).start();
+
+            String output = contentAsString(process.getInputStream());
+
+            if (process.waitFor() != 0) {
+                throw new RuntimeException("Could not run '" + String.join(" ", command) + "': " + new String(Files.readAllBytes(errorFile), UTF_8).trim());
+            }
+
+            return output;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not run '" + String.join(" ", command) + "'", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Could not run '" + String.join(" ", command) + "'", e);
+        } finally {
+            deleteIfExists(errorFile);
+        }
+    }
+
+    private static String contentAsString(InputStream inputStream) throws IOException {
+        try (InputStream content = inputStream) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = content.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+
+            return new String(output.toByteArray(), UTF_8);
+        }
+    }
+
+    private static void deleteIfExists(Path file) {
+        if (file == null) {
+            return;
+        }
+
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // a left over temporary file does not affect the result
+        }
+    }
+
+}
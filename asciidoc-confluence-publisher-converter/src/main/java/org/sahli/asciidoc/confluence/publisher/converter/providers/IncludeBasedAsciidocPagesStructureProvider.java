@@ -2,14 +2,17 @@ package org.sahli.asciidoc.confluence.publisher.converter.providers;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import static java.util.Collections.emptySet;
 import static java.util.Collections.unmodifiableList;
 
 public class IncludeBasedAsciidocPagesStructureProvider implements AsciidocPagesStructureProvider {
@@ -21,12 +24,28 @@ public class IncludeBasedAsciidocPagesStructureProvider implements AsciidocPages
     private static final String DOC_INCLUDE_ATTRIBUTES_CONFLUENCE = "confluence";
     private static final String DOC_INCLUDE_ATTRIBUTES_CONFLUENCE_INCLUDE = "include";
 
+    private static final PathDelimiter IMAGESDIR = new PathDelimiter(":imagesdir: ", "", "");
+    private static final PathDelimiter INCLUDE = new PathDelimiter("include::", "[", "]");
+    private static final PathDelimiter BLOCK_IMAGE = new PathDelimiter("image::", "[", "]");
+    private static final PathDelimiter PLANTUML = new PathDelimiter("plantuml::", "[", "]");
+    private static final PathDelimiter INLINE_IMAGE = new PathDelimiter("image:", "[", "]");
+    private static final PathDelimiter LINK = new PathDelimiter("link:", "[", "]");
+    private static final PathDelimiter CROSS_REFERENCE = new PathDelimiter("<<", "#,", ">>");
+
+    private static final PathDelimiter[] BLOCK_DELIMITERS = {INCLUDE, BLOCK_IMAGE, PLANTUML};
+    private static final PathDelimiter[] INLINE_DELIMITERS = {INLINE_IMAGE, LINK, CROSS_REFERENCE};
+
     private final Path source;
     private final Path workingDir;
     private final IncludeBasedAsciidocPagesStructureProviderListener listener;
-    private final Map<String, Object> attributes;
-
-    private final AsciidocPagesStructure structure;
+    private final AttributeReplacer attributeReplacer;
+    private final IncludeGraph includeGraph;
+    private final boolean parallel;
+    private final Map<Path, Object> targetFileLocks = new ConcurrentHashMap<>();
+    private final Map<Path, Path> pagePathsBySourceFile = new ConcurrentHashMap<>();
+    private final Map<Path, Set<Path>> includedPagesBySourceFile = new ConcurrentHashMap<>();
+
+    private AsciidocPagesStructure structure;
     private final Charset sourceEncoding;
 
     public IncludeBasedAsciidocPagesStructureProvider(Path source, Path workingDir, Map<String, Object> attributes, Charset sourceEncoding) {
@@ -34,9 +53,22 @@ public class IncludeBasedAsciidocPagesStructureProvider implements AsciidocPages
     }
 
     public IncludeBasedAsciidocPagesStructureProvider(Path source, Path workingDir, Map<String, Object> attributes, Charset sourceEncoding, IncludeBasedAsciidocPagesStructureProviderListener listener) {
+        this(source, workingDir, attributes, sourceEncoding, listener, new IncludeGraph());
+    }
+
+    public IncludeBasedAsciidocPagesStructureProvider(Path source, Path workingDir, Map<String, Object> attributes, Charset sourceEncoding, IncludeBasedAsciidocPagesStructureProviderListener listener, IncludeGraph includeGraph) {
+        this(source, workingDir, attributes, sourceEncoding, listener, includeGraph, false);
+    }
+
+    /**
+     * @param parallel whether the include trees of the top-level files are preprocessed concurrently; listener events
+     *                 are still reported in the same order as when preprocessing sequentially
+     */
+    public IncludeBasedAsciidocPagesStructureProvider(Path source, Path workingDir, Map<String, Object> attributes, Charset sourceEncoding, IncludeBasedAsciidocPagesStructureProviderListener listener, IncludeGraph includeGraph, boolean parallel) {
         Objects.requireNonNull(source);
         Objects.requireNonNull(workingDir);
         Objects.requireNonNull(listener);
+        Objects.requireNonNull(includeGraph);
 
         // verify if source exist
         if (!source.toFile().exists()) {
@@ -55,14 +87,21 @@ public class IncludeBasedAsciidocPagesStructureProvider implements AsciidocPages
 
         this.source = source;
         this.workingDir = workingDir;
-        this.attributes = attributes == null ? new HashMap<>() : attributes;
+        this.attributeReplacer = new AttributeReplacer(attributes == null ? new HashMap<>() : attributes);
         this.sourceEncoding = sourceEncoding == null ? Charset.defaultCharset() : sourceEncoding;
         this.listener = listener;
-        structure = buildStructure();
+        this.includeGraph = includeGraph;
+        this.parallel = parallel;
     }
 
+    /**
+     * Preprocesses the sources into the working directory on the first call only.
+     */
     @Override
-    public AsciidocPagesStructure structure() {
+    public synchronized AsciidocPagesStructure structure() {
+        if (structure == null) {
+            structure = buildStructure();
+        }
         return structure;
     }
 
@@ -71,6 +110,61 @@ public class IncludeBasedAsciidocPagesStructureProvider implements AsciidocPages
         return sourceEncoding;
     }
 
+    /**
+     * Determines the affected pages by following the include graph from the changed source files up to the pages
+     * including them. A page including another page as a separate page is not affected by changes of that page. The
+     * affected pages cannot be determined if resources other than AsciiDoc files or pages were changed or deleted.
+     */
+    @Override
+    public Optional<List<Path>> affectedPages(Collection<Path> changedFiles) {
+        structure();
+
+        Path sourceFolder = normalize(source.toFile().isDirectory() ? source : source.getParent());
+        Set<Path> affectedPagePaths = new LinkedHashSet<>();
+        Set<Path> visitedFiles = new HashSet<>();
+        Deque<Path> filesToVisit = new ArrayDeque<>();
+
+        for (Path changedFile : changedFiles) {
+            Path normalizedChangedFile = normalize(changedFile);
+
+            if (normalizedChangedFile.startsWith(sourceFolder)) {
+                boolean isAdoc = normalizedChangedFile.getFileName().toString().endsWith(DOC_EXTENSION);
+                boolean isDeletedPage = isNonPrefixedAdoc(normalizedChangedFile) && !Files.exists(normalizedChangedFile);
+
+                if (!isAdoc || isDeletedPage) {
+                    return Optional.empty();
+                }
+
+                filesToVisit.add(normalizedChangedFile);
+            }
+        }
+
+        while (!filesToVisit.isEmpty()) {
+            Path file = filesToVisit.poll();
+
+            if (visitedFiles.add(file)) {
+                Path pagePath = pagePathsBySourceFile.get(file);
+                if (pagePath != null) {
+                    affectedPagePaths.add(pagePath);
+                }
+
+                includeGraph.includingFiles(file).stream()
+                    .filter(includingFile -> !includedPagesBySourceFile.getOrDefault(includingFile, emptySet()).contains(file))
+                    .forEach(filesToVisit::add);
+            }
+        }
+
+        return Optional.of(new ArrayList<>(affectedPagePaths));
+    }
+
+    /**
+     * Returns the include graph, preprocessing the sources if not done yet.
+     */
+    public IncludeGraph includeGraph() {
+        structure();
+        return includeGraph;
+    }
+
     private AsciidocPagesStructure buildStructure() {
         try {
             List<AsciidocPage> pages = new ArrayList<>();
@@ -81,14 +175,25 @@ public class IncludeBasedAsciidocPagesStructureProvider implements AsciidocPages
                     .filter(IncludeBasedAsciidocPagesStructureProvider::isNonPrefixedAdoc)
                     .collect(Collectors.toList());
 
-                // parse each file
-                for (Path file : adocFiles) {
-                    // use relative path to source to determine targetFile
-                    pages.add(parseFile(file, Paths.get(workingDir.toString(), source.relativize(file).toString()).normalize()));
+                // parse each file, either sequentially or each include tree concurrently with buffered listener events
+                if (parallel) {
+                    List<BufferingIncludeBasedAsciidocPagesStructureProviderListener> fileListeners = new ArrayList<>();
+                    adocFiles.forEach(file -> fileListeners.add(new BufferingIncludeBasedAsciidocPagesStructureProviderListener()));
+
+                    List<AsciidocPage> parsedPages = IntStream.range(0, adocFiles.size()).parallel()
+                        .mapToObj(i -> parseFile(adocFiles.get(i), topLevelTargetFile(adocFiles.get(i)), fileListeners.get(i)))
+                        .collect(Collectors.toList());
+
+                    fileListeners.forEach(fileListener -> fileListener.replayTo(listener));
+                    pages.addAll(parsedPages);
+                } else {
+                    for (Path file : adocFiles) {
+                        pages.add(parseFile(file, topLevelTargetFile(file), listener));
+                    }
                 }
             } else if (isNonPrefixedAdoc(source)) {
                 // use relative path to sourceDir to determine targetFile
-                pages.add(parseFile(source, Paths.get(workingDir.toString(), source.getFileName().toString()).normalize()));
+                pages.add(parseFile(source, Paths.get(workingDir.toString(), source.getFileName().toString()).normalize(), listener));
             }
             return new DefaultAsciidocPagesStructure(pages);
         } catch (IOException e) {
@@ -96,6 +201,11 @@ public class IncludeBasedAsciidocPagesStructureProvider implements AsciidocPages
         }
     }
 
+    private Path topLevelTargetFile(Path file) {
+        // use relative path to source to determine targetFile
+        return Paths.get(workingDir.toString(), source.relativize(file).toString()).normalize();
+    }
+
     /**
      * Copy AsciiDoc files to working directory to match the required structure of the Confluence Publisher.
      * Change paths to those files so the references in other files still match, e.g. when using the include directive.
@@ -110,30 +220,31 @@ public class IncludeBasedAsciidocPagesStructureProvider implements AsciidocPages
      * @param file       original file
      * @param targetFile path where adapted file should be written to
      */
-    private AsciidocPage parseFile(Path file, Path targetFile) {
+    private AsciidocPage parseFile(Path file, Path targetFile, IncludeBasedAsciidocPagesStructureProviderListener fileListener) {
         try {
-            // collect all files in include tree so we can adapt them
+            // collect all files in include tree so we can adapt them, reading every file only once
             Map<Path, Path> linkedFiles = new LinkedHashMap<>();
-            AsciidocPage asciidocPage = collectFiles(file, targetFile, linkedFiles);
+            Map<Path, List<String>> linkedFilesLines = new HashMap<>();
+            AsciidocPage asciidocPage = collectFiles(file, targetFile, linkedFiles, linkedFilesLines, fileListener);
 
             // change line with references to other files
             for (Map.Entry<Path, Path> entry : linkedFiles.entrySet()) {
                 Path source = entry.getKey();
                 Path target = entry.getValue();
 
-                listener.processInclude(source, target);
-                List<String> adaptedLines = Files.lines(source)
-                    .map(line -> {
-                        line = replaceAttributes(line, attributes);
-                        return parseLine(line, source, target, linkedFiles);
-                    })
+                fileListener.processInclude(source, target);
+                List<String> adaptedLines = linkedFilesLines.get(source).stream()
+                    .map(line -> parseLine(line, source, target, linkedFiles, fileListener))
                     .collect(Collectors.toList());
 
-                // create folders in working dir if necessary
-                target.getParent().toFile().mkdirs();
+                // create folders in working dir if necessary (safe for concurrent creation of the same folders)
+                Files.createDirectories(target.getParent());
 
-                // write adapted lines in target file
-                Files.write(target, adaptedLines);
+                // write adapted lines in target file if they differ from the ones written by a previous run (so unchanged
+                // files keep their last modified time), serialized for targets shared between include trees
+                synchronized (targetFileLocks.computeIfAbsent(target, (ignored) -> new Object())) {
+                    writeIfChanged(target, adaptedLines);
+                }
             }
             return asciidocPage;
         } catch (IOException e) {
@@ -141,90 +252,150 @@ public class IncludeBasedAsciidocPagesStructureProvider implements AsciidocPages
         }
     }
 
-    private AsciidocPage collectFiles(Path file, Path targetFile, Map<Path, Path> includeMappings) {
-        try {
-            listener.processFile(file, targetFile);
-            DefaultAsciidocPage page = new DefaultAsciidocPage(targetFile);
-            includeMappings.put(file, targetFile);
-            Files.lines(file).forEach(line -> {
-                line = replaceAttributes(line, attributes);
-                searchInclude(line, file, targetFile, includeMappings).forEach(page::addChild);
-            });
-            return page;
-        } catch (IOException e) {
-            throw new RuntimeException(String.format("Unable to read/write file %s", file), e);
+    private static void writeIfChanged(Path target, List<String> lines) throws IOException {
+        StringBuilder content = new StringBuilder();
+        lines.forEach(line -> content.append(line).append(System.lineSeparator()));
+        byte[] bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+
+        if (Files.isRegularFile(target) && Files.size(target) == bytes.length && Arrays.equals(Files.readAllBytes(target), bytes)) {
+            return;
         }
+
+        Files.write(target, bytes);
     }
 
-    private String replaceAttributes(String line, Map<String, Object> attributes) {
-        for (Map.Entry<String, Object> entry : attributes.entrySet()) {
-            line = line.replace("{" + entry.getKey() + "}", entry.getValue().toString());
-        }
-        return line;
+    private AsciidocPage collectFiles(Path file, Path targetFile, Map<Path, Path> includeMappings, Map<Path, List<String>> includeMappingsLines, IncludeBasedAsciidocPagesStructureProviderListener fileListener) {
+        fileListener.processFile(file, targetFile);
+        DefaultAsciidocPage page = new DefaultAsciidocPage(targetFile);
+        includeMappings.put(file, targetFile);
+        includeGraph.resetIncludes(file);
+        pagePathsBySourceFile.put(normalize(file), normalize(targetFile));
+
+        List<String> lines = includeMappingsLines.computeIfAbsent(file, (ignored) -> includeGraph.lines(file).stream()
+            .map(attributeReplacer::replace)
+            .collect(Collectors.toList()));
+
+        lines.forEach(line -> searchInclude(line, file, targetFile, includeMappings, includeMappingsLines, fileListener).forEach(page::addChild));
+        return page;
     }
 
-    private List<AsciidocPage> searchInclude(String line, Path file, Path targetFile, Map<Path, Path> includeMappings) {
+    private List<AsciidocPage> searchInclude(String line, Path file, Path targetFile, Map<Path, Path> includeMappings, Map<Path, List<String>> includeMappingsLines, IncludeBasedAsciidocPagesStructureProviderListener fileListener) {
         List<AsciidocPage> pages = new ArrayList<>();
-        PathDelimiter delimiter = new PathDelimiter("include::", "[", "]");
-        Matcher matcher = delimiter.pattern.matcher(line);
-        if (matcher.find()) {
+        PathMatch match = INCLUDE.match(line, 0);
+        if (match != null) {
             // actual path to reference
-            Path matchedPath = referencePath(file, matcher.group(2));
+            Path matchedPath = referencePath(file, match.path);
             Path targetPath = referenceTargetPath(file, targetFile, matchedPath);
+            includeGraph.addInclude(file, matchedPath);
 
             // only include as AsciiDocPage if confluence include flag wasn't added to include attributes or filename has include prefix
-            if (!isConfluenceInclude(matcher.group(3)) && isNonPrefixedAdoc(matchedPath)) {
-                listener.collectInclude(matcher.group(2), matchedPath, targetPath, file, targetFile);
-                pages.add(collectFiles(matchedPath, targetPath, includeMappings));
+            if (!isConfluenceInclude(match.attributes) && isNonPrefixedAdoc(matchedPath)) {
+                fileListener.collectInclude(match.path, matchedPath, targetPath, file, targetFile);
+                includedPagesBySourceFile.computeIfAbsent(normalize(file), (ignored) -> ConcurrentHashMap.newKeySet()).add(normalize(matchedPath));
+                pages.add(collectFiles(matchedPath, targetPath, includeMappings, includeMappingsLines, fileListener));
             } else {
-                listener.rejectInclude(matcher.group(2), matchedPath, file, targetFile);
+                fileListener.rejectInclude(match.path, matchedPath, file, targetFile);
             }
         }
         return pages;
     }
 
-    private String parseLine(String line, Path file, Path targetFile, Map<Path, Path> includeMappings) {
-        line = handlePaths(line, file, targetFile, includeMappings,
-            new PathDelimiter(":imagesdir: ", "", "", "^(:imagesdir:)(\\s*\\S+)(.*)$"),
-            new PathDelimiter("include::", "[", "]"),
-            new PathDelimiter("image::", "[", "]"),
-            new PathDelimiter("plantuml::", "[", "]"),
-            new PathDelimiter("image:", "[", "]", true),
-            new PathDelimiter("link:", "[", "]", true),
-            new PathDelimiter("<<", "#,", ">>", true)
-        );
-        return line;
-    }
+    /**
+     * Adapts all resource paths in the given line in a single scan. The {@code :imagesdir:} attribute and block macros
+     * are only recognized at the start of the line, inline macros and cross references anywhere in the line.
+     */
+    private String parseLine(String line, Path file, Path targetFile, Map<Path, Path> includeMappings, IncludeBasedAsciidocPagesStructureProviderListener fileListener) {
+        StringBuilder adaptedLine = null;
+        int copiedUntil = 0;
+        int position = 0;
+
+        PathMatch imagesdirMatch = IMAGESDIR.matchImagesdir(line);
+        if (imagesdirMatch != null) {
+            String replacement = adaptPath(imagesdirMatch, file, targetFile, includeMappings, fileListener);
+            return replacement != null ? replacement : line;
+        }
 
-    private String handlePaths(String line, Path file, Path targetFile, Map<Path, Path> includeMappings, PathDelimiter... delimiters) {
-        // verify every delimiter so all references are adapted (where necessary)
-        for (PathDelimiter delimiter : delimiters) {
-            // find resource paths and adapt paths to correct path
-            Matcher matcher = delimiter.pattern.matcher(line);
-            while (matcher.find()) {
-                // actual path to reference
-                String path = matcher.group(2).trim();
-                Path matchedPath = referencePath(file, path);
-                Path targetPath = includeMappings.get(matchedPath);
-
-                // if referenced path exists, then change it to a relative path of the target file in working dir
-                if (matchedPath.toFile().exists()) {
-                    // if targetPath is null (which means it isn't mapped include)
-                    // then make the result path relative to the matched path (meaning to the actual file instead of the target file of the reference)
-                    Path resultPath = targetFile.getParent().relativize(targetPath == null ? matchedPath : targetPath);
-                    listener.changePath(path, matchedPath, resultPath, file, targetFile, delimiter);
-                    line = line.replaceAll(
-                        Pattern.quote(delimiter.start.trim()) + matcher.group(2) + Pattern.quote(delimiter.refEnd) + matcher.group(3) + Pattern.quote(delimiter.end),
-                        // change path unless it is a included reference in which case it should be removed since a separate page will be created for it
-                        targetPath != null ? "" : delimiter.start + resultPath.toString() + delimiter.refEnd + matcher.group(3) + delimiter.end);
-                } else {
-                    // ignore non-existent file
-                    listener.missingPath(path, matchedPath, file, targetFile, delimiter);
+        for (PathDelimiter delimiter : BLOCK_DELIMITERS) {
+            PathMatch match = delimiter.match(line, 0);
+            if (match != null) {
+                String replacement = adaptPath(match, file, targetFile, includeMappings, fileListener);
+                if (replacement != null) {
+                    adaptedLine = new StringBuilder(line.length() + 32).append(replacement);
+                    copiedUntil = match.end;
+                }
+                position = match.end;
+                break;
+            }
+        }
+
+        while (position < line.length()) {
+            PathMatch match = matchInline(line, position);
+            if (match == null) {
+                position++;
+                continue;
+            }
+
+            String replacement = adaptPath(match, file, targetFile, includeMappings, fileListener);
+            if (replacement != null) {
+                if (adaptedLine == null) {
+                    adaptedLine = new StringBuilder(line.length() + 32);
                 }
+                adaptedLine.append(line, copiedUntil, match.start).append(replacement);
+                copiedUntil = match.end;
+                position = match.end;
+            } else {
+                position++;
+            }
+        }
+
+        return adaptedLine == null ? line : adaptedLine.append(line, copiedUntil, line.length()).toString();
+    }
+
+    private static PathMatch matchInline(String line, int position) {
+        char character = line.charAt(position);
+        if (character != 'i' && character != 'l' && character != '<') {
+            return null;
+        }
+
+        for (PathDelimiter delimiter : INLINE_DELIMITERS) {
+            PathMatch match = delimiter.match(line, position);
+            if (match != null) {
+                return match;
             }
         }
+        return null;
+    }
 
-        return line;
+    /**
+     * Returns the replacement for the matched resource reference, or {@code null} if the referenced resource does not
+     * exist and the reference is left unchanged.
+     */
+    private String adaptPath(PathMatch match, Path file, Path targetFile, Map<Path, Path> includeMappings, IncludeBasedAsciidocPagesStructureProviderListener fileListener) {
+        PathDelimiter delimiter = match.delimiter;
+
+        // actual path to reference
+        String path = match.path.trim();
+        Path matchedPath = referencePath(file, path);
+        Path targetPath = includeMappings.get(matchedPath);
+
+        // if referenced path exists, then change it to a relative path of the target file in working dir
+        if (matchedPath.toFile().exists()) {
+            // if targetPath is null (which means it isn't mapped include)
+            // then make the result path relative to the matched path (meaning to the actual file instead of the target file of the reference)
+            Path resultPath = targetFile.getParent().relativize(targetPath == null ? matchedPath : targetPath);
+            fileListener.changePath(path, matchedPath, resultPath, file, targetFile, delimiter);
+
+            // change path unless it is a included reference in which case it should be removed since a separate page will be created for it
+            return targetPath != null ? "" : delimiter.start + resultPath.toString() + delimiter.refEnd + match.attributes + delimiter.end;
+        } else {
+            // ignore non-existent file
+            fileListener.missingPath(path, matchedPath, file, targetFile, delimiter);
+            return null;
+        }
+    }
+
+    private static Path normalize(Path file) {
+        return file.toAbsolutePath().normalize();
     }
 
     private static boolean isNonPrefixedAdoc(Path file) {
@@ -259,26 +430,139 @@ public class IncludeBasedAsciidocPagesStructureProvider implements AsciidocPages
         private final String start;
         private final String refEnd;
         private final String end;
-        private final Pattern pattern;
 
         private PathDelimiter(String start, String refEnd, String end) {
-            this(start, refEnd, end, false);
+            this.start = start;
+            this.refEnd = refEnd;
+            this.end = end;
+        }
+
+        public String start() {
+            return start;
+        }
+
+        /**
+         * Matches {@code <start><path><refEnd><attributes><end>} at the given position, where the path must not
+         * contain any character of {@code refEnd} and the attributes must not contain any character of {@code end}.
+         */
+        private PathMatch match(String line, int position) {
+            if (!line.startsWith(start, position)) {
+                return null;
+            }
+
+            int pathStart = position + start.length();
+            int pathEnd = indexOfAny(line, refEnd, pathStart);
+            if (pathEnd < 0 || !line.startsWith(refEnd, pathEnd)) {
+                return null;
+            }
+
+            int attributesStart = pathEnd + refEnd.length();
+            int attributesEnd = indexOfAny(line, end, attributesStart);
+            if (attributesEnd < 0 || !line.startsWith(end, attributesEnd)) {
+                return null;
+            }
+
+            return new PathMatch(this, position, attributesEnd + end.length(), line.substring(pathStart, pathEnd), line.substring(attributesStart, attributesEnd));
         }
 
-        private PathDelimiter(String start, String refEnd, String end, boolean inline) {
-            this(start, refEnd, end, String.format("%s(%s)([^%s]*)%s([^%s]*)%s",
-                inline ? ".+" : "^", Pattern.quote(start), Pattern.quote(refEnd), Pattern.quote(refEnd), Pattern.quote(end), Pattern.quote(end)));
+        /**
+         * Matches {@code :imagesdir:<whitespace><path><rest of line>}, keeping the leading whitespace in the path and the
+         * rest of the line as attributes.
+         */
+        private PathMatch matchImagesdir(String line) {
+            String attributeName = start.trim();
+            if (!line.startsWith(attributeName)) {
+                return null;
+            }
+
+            int pathStart = attributeName.length();
+            int pathEnd = pathStart;
+            while (pathEnd < line.length() && Character.isWhitespace(line.charAt(pathEnd))) {
+                pathEnd++;
+            }
+
+            int valueStart = pathEnd;
+            while (pathEnd < line.length() && !Character.isWhitespace(line.charAt(pathEnd))) {
+                pathEnd++;
+            }
+            if (pathEnd == valueStart) {
+                return null;
+            }
+
+            return new PathMatch(this, 0, line.length(), line.substring(pathStart, pathEnd), line.substring(pathEnd));
         }
 
-        private PathDelimiter(String start, String refEnd, String end, String pattern) {
+        private static int indexOfAny(String line, String characters, int fromIndex) {
+            for (int i = fromIndex; i < line.length(); i++) {
+                if (characters.indexOf(line.charAt(i)) >= 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static class PathMatch {
+
+        private final PathDelimiter delimiter;
+        private final int start;
+        private final int end;
+        private final String path;
+        private final String attributes;
+
+        PathMatch(PathDelimiter delimiter, int start, int end, String path, String attributes) {
+            this.delimiter = delimiter;
             this.start = start;
-            this.refEnd = refEnd;
             this.end = end;
-            this.pattern = Pattern.compile(pattern);
+            this.path = path;
+            this.attributes = attributes;
         }
+    }
 
-        public String start() {
-            return start;
+    /**
+     * Records listener events of a single include tree so that they can be reported in order once processed.
+     */
+    private static class BufferingIncludeBasedAsciidocPagesStructureProviderListener implements IncludeBasedAsciidocPagesStructureProviderListener {
+
+        private final List<Consumer<IncludeBasedAsciidocPagesStructureProviderListener>> events = new ArrayList<>();
+
+        void replayTo(IncludeBasedAsciidocPagesStructureProviderListener listener) {
+            events.forEach(event -> event.accept(listener));
+        }
+
+        @Override
+        public void processDirectory(Path directory) {
+            events.add(listener -> listener.processDirectory(directory));
+        }
+
+        @Override
+        public void processFile(Path file, Path targetFile) {
+            events.add(listener -> listener.processFile(file, targetFile));
+        }
+
+        @Override
+        public void collectInclude(String path, Path actualPath, Path resultPath, Path file, Path targetFile) {
+            events.add(listener -> listener.collectInclude(path, actualPath, resultPath, file, targetFile));
+        }
+
+        @Override
+        public void rejectInclude(String path, Path actualPath, Path file, Path targetFile) {
+            events.add(listener -> listener.rejectInclude(path, actualPath, file, targetFile));
+        }
+
+        @Override
+        public void processInclude(Path file, Path targetFile) {
+            events.add(listener -> listener.processInclude(file, targetFile));
+        }
+
+        @Override
+        public void changePath(String path, Path actualPath, Path resultPath, Path file, Path targetFile, PathDelimiter delimiter) {
+            events.add(listener -> listener.changePath(path, actualPath, resultPath, file, targetFile, delimiter));
+        }
+
+        @Override
+        public void missingPath(String path, Path actualPath, Path file, Path targetFile, PathDelimiter delimiter) {
+            events.add(listener -> listener.missingPath(path, actualPath, file, targetFile, delimiter));
         }
     }
 
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sahli.asciidoc.confluence.publisher.converter.providers;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.readAllLines;
+import static java.nio.file.Files.readAttributes;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableSet;
+
+/**
+ * Include dependency graph of AsciiDoc source files, together with the content of every source file read while
+ * building it.
+ * <p>
+ * Source file content is cached by path and validated against the file's last modified time and size, so that each
+ * source file is read only once, even if it is included by multiple pages. An include graph can be shared between
+ * multiple {@link IncludeBasedAsciidocPagesStructureProvider} instances (e.g. for repeated builds of the same sources),
+ * in which case only changed source files are read again.
+ */
+public class IncludeGraph {
+
+    private final Map<Path, SourceFile> sourceFilesByPath = new ConcurrentHashMap<>();
+    private final Map<Path, Set<Path>> includedFilesByFile = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the files directly included by the given file, as of the last time the file was processed.
+     */
+    public Set<Path> includedFiles(Path file) {
+        return unmodifiableSet(this.includedFilesByFile.getOrDefault(normalize(file), emptySet()));
+    }
+
+    /**
+     * Returns the files directly including the given file, as of the last time the including files were processed.
+     */
+    public Set<Path> includingFiles(Path file) {
+        Path normalizedFile = normalize(file);
+        Set<Path> includingFiles = new HashSet<>();
+
+        this.includedFilesByFile.forEach((includingFile, includedFiles) -> {
+            if (includedFiles.contains(normalizedFile)) {
+                includingFiles.add(includingFile);
+            }
+        });
+
+        return unmodifiableSet(includingFiles);
+    }
+
+    List<String> lines(Path file) {
+        Path normalizedFile = normalize(file);
+        BasicFileAttributes fileAttributes = fileAttributes(normalizedFile);
+
+        SourceFile sourceFile = this.sourceFilesByPath.get(normalizedFile);
+
+        if (sourceFile != null && sourceFile.isUpToDate(fileAttributes)) {
+            return sourceFile.lines;
+        }
+
+        // read outside of the map's locks, so that include trees processed concurrently do not block each other (a
+        // file read concurrently by multiple include trees is cached by the last read)
+        SourceFile readSourceFile = new SourceFile(fileAttributes, readLines(normalizedFile));
+        this.sourceFilesByPath.put(normalizedFile, readSourceFile);
+
+        return readSourceFile.lines;
+    }
+
+    void resetIncludes(Path file) {
+        this.includedFilesByFile.put(normalize(file), ConcurrentHashMap.newKeySet());
+    }
+
+    void addInclude(Path file, Path includedFile) {
+        this.includedFilesByFile.computeIfAbsent(normalize(file), (ignored) -> ConcurrentHashMap.newKeySet()).add(normalize(includedFile));
+    }
+
+    private static BasicFileAttributes fileAttributes(Path file) {
+        try {
+            return readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Unable to read file %s", file), e);
+        }
+    }
+
+    private static List<String> readLines(Path file) {
+        try {
+            return unmodifiableList(readAllLines(file, UTF_8));
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Unable to read file %s", file), e);
+        }
+    }
+
+    private static Path normalize(Path file) {
+        return file.toAbsolutePath().normalize();
+    }
+
+
+    private static class SourceFile {
+
+        private final FileTime lastModifiedTime;
+        private final long size;
+        private final List<String> lines;
+
+        SourceFile(BasicFileAttributes fileAttributes, List<String> lines) {
+            this.lastModifiedTime = fileAttributes.lastModifiedTime();
+            this.size = fileAttributes.size();
+            this.lines = lines;
+        }
+
+        boolean isUpToDate(BasicFileAttributes fileAttributes) {
+            return this.lastModifiedTime.equals(fileAttributes.lastModifiedTime()) && this.size == fileAttributes.size();
+        }
+
+    }
+
+}
@@ -0,0 +1,114 @@
+require 'digest'
+require 'fileutils'
+require 'json'
+require 'asciidoctor-diagram/extensions'
+
+module Asciidoctor
+  module Diagram
+    module Extensions
+
+      # Content-addressed cache for rendered diagrams shared across pages and runs.
+      #
+      # Rendered images are stored in the folder configured via the 'diagram-cachedir' attribute under a key derived
+      # from the asciidoctor-diagram version, diagram type, output format, diagram source, block options (excluding the
+      # target file name) and the document attributes configuring the diagram type or all diagrams (e.g.
+      # 'plantuml-config' including the content of the file it names, or 'diagram-svg-type'). Before a diagram is
+      # rendered, a cached image with the same key is copied into the images output folder together with matching
+      # asciidoctor-diagram metadata, so that asciidoctor-diagram considers it up-to-date and skips rendering.
+      module DiagramProcessor
+
+        alias_method :create_image_block_without_cache, :create_image_block
+
+        private
+
+        def create_image_block(parent, source, format, generator_info)
+          diagram_cache_dir = parent.document.attr('diagram-cachedir')
+          return create_image_block_without_cache(parent, source, format, generator_info) unless diagram_cache_dir
+
+          # the content of included files is not part of the cache key, so diagrams including files are never cached
+          return create_image_block_without_cache(parent, source, format, generator_info) if includes_files?(source)
+
+          image_name = "#{source.image_name}.#{format}"
+          image_file = parent.normalize_system_path image_name, image_output_dir(parent)
+          metadata_file = parent.normalize_system_path "#{image_name}.cache", cache_dir(parent)
+
+          cached_image_file = File.join(diagram_cache_dir, "#{diagram_cache_key(parent, source, format)}.#{format}")
+          cached_metadata_file = "#{cached_image_file}.json"
+
+          if File.exist?(cached_image_file) && File.exist?(cached_metadata_file)
+            cached_metadata = File.open(cached_metadata_file, 'r') { |f| JSON.load f }
+
+            FileUtils.mkdir_p(File.dirname(image_file))
+            FileUtils.cp(cached_image_file, image_file)
+
+            FileUtils.mkdir_p(File.dirname(metadata_file))
+            File.open(metadata_file, 'w') { |f| JSON.dump(cached_metadata.merge(source.create_image_metadata), f) }
+          end
+
+          block = create_image_block_without_cache(parent, source, format, generator_info)
+
+          if !File.exist?(cached_image_file) && File.exist?(image_file) && File.exist?(metadata_file)
+            metadata = File.open(metadata_file, 'r') { |f| JSON.load f }
+
+            FileUtils.mkdir_p(diagram_cache_dir)
+            atomic_write(cached_image_file) { |f| f.write File.binread(image_file) }
+            atomic_write(cached_metadata_file) { |f| JSON.dump({'width' => metadata['width'], 'height' => metadata['height']}, f) }
+          end
+
+          block
+        end
+
+        def includes_files?(source)
+          source.code =~ /^\s*!include/
+        end
+
+        def diagram_cache_key(parent, source, format)
+          digest = Digest::SHA256.new
+          digest << Asciidoctor::Diagram::VERSION << "\0" << self.class.name << "\0" << format.to_s << "\0" << source.code
+
+          source.attributes.keys.select { |key| key.is_a?(String) && key != 'target' }.sort.each do |key|
+            digest << "\0" << key << '=' << source.attributes[key].to_s
+          end
+
+          document = parent.document
+          diagram_attribute_names(document).each do |name|
+            value = document.attr(name).to_s
+            digest << "\0:" << name << '=' << value
+
+            # attributes may name files configuring the diagram (e.g. 'plantuml-config'), whose content matters as well
+            file = File.expand_path(value, document.attr('docdir', Dir.pwd)) unless value.empty?
+            digest << "\0" << Digest::SHA256.file(file).hexdigest if file && File.file?(file)
+          end
+
+          digest.hexdigest
+        end
+
+        # Returns the sorted names of the document attributes configuring all diagrams (prefixed with 'diagram-') or
+        # this diagram type, including the types of the modules it is built on (e.g. 'plantuml' for salt diagrams).
+        def diagram_attribute_names(document)
+          prefixes = self.class.ancestors
+            .map(&:name)
+            .compact
+            .select { |name| name.start_with?('Asciidoctor::Diagram::') && !name.start_with?('Asciidoctor::Diagram::Extensions') }
+            .map { |name| name.split('::').last.sub(/Block(Macro)?Processor$/, '').downcase }
+            .reject(&:empty?)
+            .uniq
+          prefixes << 'diagram-'
+
+          document.attributes.keys
+            .select { |name| name.is_a?(String) && prefixes.any? { |prefix| name.start_with?(prefix) } }
+            .reject { |name| name == 'diagram-cachedir' || name == 'diagram-on-error' }
+            .sort
+        end
+
+        def atomic_write(file, &block)
+          temporary_file = "#{file}.#{Process.pid}.#{Thread.current.object_id}.tmp"
+          File.open(temporary_file, 'wb', &block)
+          File.rename(temporary_file, file)
+        end
+
+      end
+
+    end
+  end
+end
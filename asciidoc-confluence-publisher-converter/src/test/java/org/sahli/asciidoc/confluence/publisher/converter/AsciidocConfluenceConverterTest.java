@@ -16,20 +16,32 @@
 
 package org.sahli.asciidoc.confluence.publisher.converter;
 
+import org.asciidoctor.Attributes;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.sahli.asciidoc.confluence.publisher.client.metadata.ConfluencePageMetadata;
+import org.sahli.asciidoc.confluence.publisher.client.metadata.ConfluencePageMetadataSink;
 import org.sahli.asciidoc.confluence.publisher.client.metadata.ConfluencePublisherMetadata;
 import org.sahli.asciidoc.confluence.publisher.converter.providers.AsciidocPagesStructureProvider;
 import org.sahli.asciidoc.confluence.publisher.converter.providers.FolderBasedAsciidocPagesStructureProvider;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.nio.file.Files.exists;
+import static java.nio.file.Files.list;
+import static java.nio.file.Files.readAllBytes;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
 import static org.junit.Assert.assertThat;
 import static org.sahli.asciidoc.confluence.publisher.converter.AsciidocConfluenceConverter.uniquePageId;
 
@@ -105,6 +117,93 @@ public class AsciidocConfluenceConverterTest {
         assertThat(indexPageMetadata.getTitle(), is("(Doc) Test Document (1.0)"));
     }
 
+    @Test
+    public void convertAndBuildConfluencePages_withConvertedPageSink_passesEveryPageWithStagedAttachmentsBeforeItsChildren() throws Exception {
+        // arrange
+        Path documentationRootFolder = Paths.get(DOCUMENTATION_LOCATION).toAbsolutePath();
+        Path buildFolder = this.temporaryFolder.newFolder().toPath().toAbsolutePath();
+
+        AsciidocPagesStructureProvider asciidocPagesStructureProvider = new FolderBasedAsciidocPagesStructureProvider(documentationRootFolder, UTF_8);
+        AsciidocConfluenceConverter asciidocConfluenceConverter = new AsciidocConfluenceConverter("~personalSpace", "1234");
+
+        List<String> convertedPages = new ArrayList<>();
+        ConfluencePageMetadataSink convertedPageSink = (parentPage, page) -> {
+            convertedPages.add((parentPage == null ? "" : parentPage.getTitle() + " > ") + page.getTitle());
+            page.getAttachments().values().forEach((attachmentPath) -> assertThat(exists(Paths.get(attachmentPath)), is(true)));
+        };
+
+        // act
+        asciidocConfluenceConverter.convert(asciidocPagesStructureProvider, new NoOpPageTitlePostProcessor(), emptyList(), buildFolder, new Attributes(), convertedPageSink);
+
+        // assert
+        assertThat(convertedPages, contains("Test Document", "Test Document > Sub Page", "Sub Page > Sub Sub Page"));
+    }
+
+    @Test
+    public void convertAndBuildConfluencePages_withScopePagePath_returnsMetadataWithScopeSubtreeAndItsParentPages() throws Exception {
+        // arrange
+        Path documentationRootFolder = Paths.get(DOCUMENTATION_LOCATION).toAbsolutePath();
+        Path buildFolder = this.temporaryFolder.newFolder().toPath().toAbsolutePath();
+
+        AsciidocPagesStructureProvider asciidocPagesStructureProvider = new FolderBasedAsciidocPagesStructureProvider(documentationRootFolder, UTF_8);
+        AsciidocConfluenceConverter asciidocConfluenceConverter = new AsciidocConfluenceConverter("~personalSpace", "1234");
+
+        // act
+        ConfluencePublisherMetadata confluencePublisherMetadata = asciidocConfluenceConverter.convert(asciidocPagesStructureProvider, new NoOpPageTitlePostProcessor(), emptyList(), buildFolder, new Attributes(), singletonList("index/sub-page.adoc"));
+
+        // assert
+        assertThat(confluencePublisherMetadata.getScope(), contains("Sub Page"));
+
+        ConfluencePageMetadata indexPageMetadata = confluencePublisherMetadata.getPages().get(0);
+        assertThat(indexPageMetadata.getTitle(), is("Test Document"));
+        assertThat(indexPageMetadata.getChildren().size(), is(1));
+        assertThat(indexPageMetadata.getChildren().get(0).getTitle(), is("Sub Page"));
+        assertThat(indexPageMetadata.getChildren().get(0).getChildren().get(0).getTitle(), is("Sub Sub Page"));
+    }
+
+    @Test
+    public void convertAndBuildConfluencePages_withScopePagePathWithoutChildren_returnsMetadataWithScopePageAndItsParentPagesOnly() throws Exception {
+        // arrange
+        Path documentationRootFolder = Paths.get(DOCUMENTATION_LOCATION).toAbsolutePath();
+        Path buildFolder = this.temporaryFolder.newFolder().toPath().toAbsolutePath();
+
+        AsciidocPagesStructureProvider asciidocPagesStructureProvider = new FolderBasedAsciidocPagesStructureProvider(documentationRootFolder, UTF_8);
+        AsciidocConfluenceConverter asciidocConfluenceConverter = new AsciidocConfluenceConverter("~personalSpace", "1234");
+
+        // act
+        ConfluencePublisherMetadata confluencePublisherMetadata = asciidocConfluenceConverter.convert(asciidocPagesStructureProvider, new NoOpPageTitlePostProcessor(), emptyList(), buildFolder, new Attributes(), singletonList("index/sub-page.adoc"), true);
+
+        // assert
+        assertThat(confluencePublisherMetadata.getScope(), contains("Sub Page"));
+        assertThat(confluencePublisherMetadata.isScopeWithoutChildren(), is(true));
+
+        ConfluencePageMetadata indexPageMetadata = confluencePublisherMetadata.getPages().get(0);
+        assertThat(indexPageMetadata.getTitle(), is("Test Document"));
+        assertThat(indexPageMetadata.getChildren().size(), is(1));
+        assertThat(indexPageMetadata.getChildren().get(0).getTitle(), is("Sub Page"));
+        assertThat(indexPageMetadata.getChildren().get(0).getChildren().size(), is(0));
+
+        Path subSubPagePath = documentationRootFolder.resolve("index/sub-page/sub-sub-page.adoc");
+        assertThat(exists(buildFolder.resolve("assets").resolve(uniquePageId(subSubPagePath))), is(false));
+    }
+
+    @Test
+    public void convertAndBuildConfluencePages_withUnknownScopePagePath_returnsMetadataWithoutPages() throws Exception {
+        // arrange
+        Path documentationRootFolder = Paths.get(DOCUMENTATION_LOCATION).toAbsolutePath();
+        Path buildFolder = this.temporaryFolder.newFolder().toPath().toAbsolutePath();
+
+        AsciidocPagesStructureProvider asciidocPagesStructureProvider = new FolderBasedAsciidocPagesStructureProvider(documentationRootFolder, UTF_8);
+        AsciidocConfluenceConverter asciidocConfluenceConverter = new AsciidocConfluenceConverter("~personalSpace", "1234");
+
+        // act
+        ConfluencePublisherMetadata confluencePublisherMetadata = asciidocConfluenceConverter.convert(asciidocPagesStructureProvider, new NoOpPageTitlePostProcessor(), emptyList(), buildFolder, new Attributes(), singletonList("index/unknown.adoc"));
+
+        // assert
+        assertThat(confluencePublisherMetadata.getScope().size(), is(0));
+        assertThat(confluencePublisherMetadata.getPages().size(), is(0));
+    }
+
     @Test
     public void convertAndBuildConfluencePages_withTemplates_extractsTemplatesFromClassPathToTargetFolder() throws Exception {
         // arrange
@@ -121,6 +220,95 @@ public class AsciidocConfluenceConverterTest {
         assertThat(exists(buildFolder.resolve("templates").resolve("helpers.rb")), is(true));
     }
 
+    @Test
+    public void convertAndBuildConfluencePages_withEmbeddedDiagram_storesGeneratedDiagramInDiagramCacheFolder() throws Exception {
+        // arrange
+        Path documentationRootFolder = Paths.get(DOCUMENTATION_LOCATION).toAbsolutePath();
+        Path buildFolder = this.temporaryFolder.newFolder().toPath().toAbsolutePath();
+
+        AsciidocPagesStructureProvider asciidocPagesStructureProvider = new FolderBasedAsciidocPagesStructureProvider(documentationRootFolder, UTF_8);
+        AsciidocConfluenceConverter asciidocConfluenceConverter = new AsciidocConfluenceConverter("~personalSpace", "1234");
+
+        // act
+        asciidocConfluenceConverter.convert(asciidocPagesStructureProvider, buildFolder);
+
+        // assert
+        assertThat(list(buildFolder.resolve("diagram-cache")).filter((path) -> path.toString().endsWith(".png")).count(), is(1L));
+    }
+
+    @Test
+    public void convertAndBuildConfluencePages_withOptimizedImagesAndImageCacheFolder_storesOptimizedImagesInImageCacheFolder() throws Exception {
+        // arrange
+        Path documentationRootFolder = Paths.get(DOCUMENTATION_LOCATION).toAbsolutePath();
+        Path buildFolder = this.temporaryFolder.newFolder().toPath().toAbsolutePath();
+        Path imageCacheFolder = this.temporaryFolder.newFolder().toPath().toAbsolutePath();
+
+        AsciidocPagesStructureProvider asciidocPagesStructureProvider = new FolderBasedAsciidocPagesStructureProvider(documentationRootFolder, UTF_8);
+        AsciidocConfluenceConverter asciidocConfluenceConverter = new AsciidocConfluenceConverter("~personalSpace", "1234", null, true, null, imageCacheFolder);
+
+        // act
+        asciidocConfluenceConverter.convert(asciidocPagesStructureProvider, buildFolder);
+
+        // assert
+        assertThat(list(imageCacheFolder).filter((path) -> path.toString().endsWith(".png")).count(), is(1L));
+        assertThat(exists(buildFolder.resolve("image-cache")), is(false));
+    }
+
+    @Test
+    public void convertAndBuildConfluencePages_withSharedAttachmentsPageTitle_movesAttachmentsUsedByMultiplePagesToSharedAttachmentsPage() throws Exception {
+        // arrange
+        Path documentationRootFolder = Paths.get("src/test/resources/shared-attachments").toAbsolutePath();
+        Path buildFolder = this.temporaryFolder.newFolder().toPath().toAbsolutePath();
+
+        AsciidocPagesStructureProvider asciidocPagesStructureProvider = new FolderBasedAsciidocPagesStructureProvider(documentationRootFolder, UTF_8);
+        AsciidocConfluenceConverter asciidocConfluenceConverter = new AsciidocConfluenceConverter("~personalSpace", "1234", "Shared Attachments");
+
+        // act
+        ConfluencePublisherMetadata confluencePublisherMetadata = asciidocConfluenceConverter.convert(asciidocPagesStructureProvider, buildFolder);
+
+        // assert
+        ConfluencePageMetadata pageOneMetadata = pageByTitle(confluencePublisherMetadata, "Page One");
+        ConfluencePageMetadata pageTwoMetadata = pageByTitle(confluencePublisherMetadata, "Page Two");
+        ConfluencePageMetadata sharedAttachmentsPageMetadata = pageByTitle(confluencePublisherMetadata, "Shared Attachments");
+
+        assertThat(confluencePublisherMetadata.getPages().size(), is(3));
+        assertThat(pageOneMetadata.getAttachments().isEmpty(), is(true));
+        assertThat(pageTwoMetadata.getAttachments().keySet(), contains("only-page-two.txt"));
+        assertThat(sharedAttachmentsPageMetadata.getAttachments().size(), is(1));
+
+        String sharedAttachmentName = sharedAttachmentsPageMetadata.getAttachments().keySet().iterator().next();
+        String sharedAttachmentReference = "<ri:attachment ri:filename=\"" + sharedAttachmentName + "\"><ri:page ri:content-title=\"Shared Attachments\"></ri:page></ri:attachment>";
+
+        assertThat(sharedAttachmentName, endsWith("-shared.txt"));
+        assertThat(content(pageOneMetadata), containsString(sharedAttachmentReference));
+        assertThat(content(pageTwoMetadata), containsString(sharedAttachmentReference));
+        assertThat(content(pageTwoMetadata), containsString("<ri:attachment ri:filename=\"only-page-two.txt\"></ri:attachment>"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void convertAndBuildConfluencePages_withSharedAttachmentsPageTitleAndScopePagePath_throwsIllegalArgumentException() throws Exception {
+        // arrange
+        Path documentationRootFolder = Paths.get("src/test/resources/shared-attachments").toAbsolutePath();
+        Path buildFolder = this.temporaryFolder.newFolder().toPath().toAbsolutePath();
+
+        AsciidocPagesStructureProvider asciidocPagesStructureProvider = new FolderBasedAsciidocPagesStructureProvider(documentationRootFolder, UTF_8);
+        AsciidocConfluenceConverter asciidocConfluenceConverter = new AsciidocConfluenceConverter("~personalSpace", "1234", "Shared Attachments");
+
+        // act
+        asciidocConfluenceConverter.convert(asciidocPagesStructureProvider, new NoOpPageTitlePostProcessor(), emptyList(), buildFolder, new Attributes(), singletonList("page-one.adoc"));
+    }
+
+    private static ConfluencePageMetadata pageByTitle(ConfluencePublisherMetadata confluencePublisherMetadata, String title) {
+        return confluencePublisherMetadata.getPages().stream()
+                .filter((page) -> page.getTitle().equals(title))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("no page with title '" + title + "'"));
+    }
+
+    private static String content(ConfluencePageMetadata confluencePageMetadata) throws IOException {
+        return new String(readAllBytes(Paths.get(confluencePageMetadata.getContentFilePath())), UTF_8);
+    }
+
     private static String targetFilePath(Path buildFolder, Path documentationRootFolder, String relevantAdocFilePath, String targetFileName) {
         Path sourceFilePath = documentationRootFolder.resolve(relevantAdocFilePath);
         Path targetFilePath = buildFolder.resolve("assets").resolve(uniquePageId(sourceFilePath)).resolve(targetFileName);
@@ -16,6 +16,7 @@
 
 package org.sahli.asciidoc.confluence.publisher.converter;
 
+import org.asciidoctor.Attributes;
 import org.junit.ClassRule;
 import org.junit.Rule;
 import org.junit.Test;
@@ -35,10 +36,14 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.nio.file.Files.copy;
 import static java.nio.file.Files.createDirectories;
 import static java.nio.file.Files.exists;
+import static java.nio.file.Files.list;
+import static java.nio.file.Files.readAllBytes;
 import static java.nio.file.Files.walk;
 import static java.nio.file.Files.write;
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
 import static org.apache.commons.codec.digest.DigestUtils.sha256Hex;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasEntry;
@@ -47,6 +52,7 @@ import static org.junit.Assert.assertThat;
 import static org.junit.rules.ExpectedException.none;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
+import static org.sahli.asciidoc.confluence.publisher.converter.AsciidocConfluencePage.DIAGRAM_CACHE_DIR_ATTRIBUTE;
 import static org.sahli.asciidoc.confluence.publisher.converter.AsciidocConfluencePage.newAsciidocConfluencePage;
 
 /**
@@ -160,6 +166,31 @@ public class AsciidocConfluencePageTest {
         assertThat(asciiDocConfluencePage.content(), is(expectedContent));
     }
 
+    @Test
+    public void renderConfluencePage_asciiDocWithListingAndContentPostProcessor_returnsConfluencePageContentProcessedByContentPostProcessorAfterCdataUnescaping() {
+        // arrange
+        String adocContent = "----\n" +
+                "<b>content</b>\n" +
+                "----";
+
+        ContentPostProcessor contentPostProcessor = (token, next) -> {
+            if (token.type() == ContentToken.Type.CDATA) {
+                next.accept(ContentToken.token(ContentToken.Type.CDATA, token.content().toUpperCase()));
+            } else {
+                next.accept(token);
+            }
+        };
+
+        // act
+        AsciidocConfluencePage asciiDocConfluencePage = newAsciidocConfluencePage(asciidocPage(prependTitle(adocContent)), UTF_8, TEMPLATES_FOLDER, dummyAssetsTargetPath(), new Attributes(), new NoOpPageTitlePostProcessor(), singletonList(contentPostProcessor));
+
+        // assert
+        String expectedContent = "<ac:structured-macro ac:name=\"noformat\">" +
+                "<ac:plain-text-body><![CDATA[<B>CONTENT</B>]]></ac:plain-text-body>" +
+                "</ac:structured-macro>";
+        assertThat(asciiDocConfluencePage.content(), is(expectedContent));
+    }
+
     @Test
     public void renderConfluencePage_asciiDocWithSourceListing_returnsConfluencePageContentWithMacroWithNameCode() {
         // arrange
@@ -820,6 +851,26 @@ public class AsciidocConfluencePageTest {
         assertThat(asciidocConfluencePage.content(), is(expectedContent));
     }
 
+    @Test
+    public void renderConfluencePage_asciiDocWithAttachmentReferencesInPassthroughCommentAndCdata_returnsConfluencePageWithAttachmentFileNamesOnly() {
+        // arrange
+        String adocContent = "++++\n" +
+                "<!-- <ri:attachment ri:filename=\"bar/foo.txt\"></ri:attachment> -->\n" +
+                "<ac:plain-text-body><![CDATA[<ri:attachment ri:filename=\"baz/qux.txt\"></ri:attachment>]]></ac:plain-text-body>\n" +
+                "++++";
+        AsciidocPage asciidocPage = asciidocPage(prependTitle(adocContent));
+
+        // act
+        AsciidocConfluencePage asciidocConfluencePage = newAsciidocConfluencePage(asciidocPage, UTF_8, TEMPLATES_FOLDER, dummyAssetsTargetPath());
+
+        // assert
+        String expectedContent = "<!-- <ri:attachment ri:filename=\"foo.txt\"></ri:attachment> -->\n" +
+                "<ac:plain-text-body><![CDATA[<ri:attachment ri:filename=\"qux.txt\"></ri:attachment>]]></ac:plain-text-body>";
+        assertThat(asciidocConfluencePage.content(), is(expectedContent));
+        assertThat(asciidocConfluencePage.attachments(), hasEntry("bar/foo.txt", "foo.txt"));
+        assertThat(asciidocConfluencePage.attachments(), hasEntry("baz/qux.txt", "qux.txt"));
+    }
+
     @Test
     public void renderConfluencePage_asciiDocWithExplicitExternalLinkAndLinkText_returnsConfluencePageWithLinkToExternalPageAndSpecifiedLinkText() {
         // arrange
@@ -895,6 +946,82 @@ public class AsciidocConfluencePageTest {
         assertThat(asciidocConfluencePage.content(), containsString(expectedContent));
     }
 
+    @Test
+    public void renderConfluencePage_asciiDocWithSameDiagramOnTwoPagesAndDiagramCacheDir_reusesCachedImageForSecondPage() throws Exception {
+        // arrange
+        Path diagramCacheFolder = TEMPORARY_FOLDER.newFolder().toPath();
+        Attributes attributes = new Attributes();
+        attributes.setAttribute(DIAGRAM_CACHE_DIR_ATTRIBUTE, diagramCacheFolder.toString());
+
+        String diagram = "....\n" +
+                "A -> B: cached\n" +
+                "....";
+
+        AsciidocPage firstAsciidocPage = asciidocPage(prependTitle("[plantuml, first-diagram, png]\n" + diagram));
+        AsciidocPage secondAsciidocPage = asciidocPage(prependTitle("[plantuml, second-diagram, png]\n" + diagram));
+
+        // act
+        newAsciidocConfluencePage(firstAsciidocPage, UTF_8, TEMPLATES_FOLDER, assetsTargetFolderFor(firstAsciidocPage), attributes);
+        List<Path> cachedImages = list(diagramCacheFolder).filter((path) -> path.toString().endsWith(".png")).collect(toList());
+        write(cachedImages.get(0), "cached image".getBytes(UTF_8));
+
+        AsciidocConfluencePage asciidocConfluencePage = newAsciidocConfluencePage(secondAsciidocPage, UTF_8, TEMPLATES_FOLDER, assetsTargetFolderFor(secondAsciidocPage), attributes);
+
+        // assert
+        assertThat(cachedImages.size(), is(1));
+        assertThat(asciidocConfluencePage.content(), containsString("<ri:attachment ri:filename=\"second-diagram.png\"></ri:attachment>"));
+        assertThat(new String(readAllBytes(assetsTargetFolderFor(secondAsciidocPage).resolve("second-diagram.png")), UTF_8), is("cached image"));
+    }
+
+    @Test
+    public void renderConfluencePage_asciiDocWithSameDiagramOnTwoPagesWithDifferentDiagramConfigAndDiagramCacheDir_doesNotReuseCachedImage() throws Exception {
+        // arrange
+        Path diagramCacheFolder = TEMPORARY_FOLDER.newFolder().toPath();
+        Attributes attributes = new Attributes();
+        attributes.setAttribute(DIAGRAM_CACHE_DIR_ATTRIBUTE, diagramCacheFolder.toString());
+
+        Path plantUmlConfigFile = TEMPORARY_FOLDER.newFile("plantuml.cfg").toPath();
+        write(plantUmlConfigFile, "skinparam monochrome true\n".getBytes(UTF_8));
+        Attributes configuredAttributes = new Attributes();
+        configuredAttributes.setAttribute(DIAGRAM_CACHE_DIR_ATTRIBUTE, diagramCacheFolder.toString());
+        configuredAttributes.setAttribute("plantuml-config", plantUmlConfigFile.toString());
+
+        String diagram = "....\n" +
+                "A -> B: configured\n" +
+                "....";
+
+        AsciidocPage firstAsciidocPage = asciidocPage(prependTitle("[plantuml, first-diagram, png]\n" + diagram));
+        AsciidocPage secondAsciidocPage = asciidocPage(prependTitle("[plantuml, second-diagram, png]\n" + diagram));
+
+        // act
+        newAsciidocConfluencePage(firstAsciidocPage, UTF_8, TEMPLATES_FOLDER, assetsTargetFolderFor(firstAsciidocPage), attributes);
+        newAsciidocConfluencePage(secondAsciidocPage, UTF_8, TEMPLATES_FOLDER, assetsTargetFolderFor(secondAsciidocPage), configuredAttributes);
+
+        // assert
+        assertThat(list(diagramCacheFolder).filter((path) -> path.toString().endsWith(".png")).count(), is(2L));
+    }
+
+    @Test
+    public void renderConfluencePage_asciiDocWithDiagramIncludingFileAndDiagramCacheDir_doesNotCacheImage() throws Exception {
+        // arrange
+        Path diagramCacheFolder = TEMPORARY_FOLDER.newFolder().toPath();
+        Attributes attributes = new Attributes();
+        attributes.setAttribute(DIAGRAM_CACHE_DIR_ATTRIBUTE, diagramCacheFolder.toString());
+
+        String diagram = "[plantuml, including-diagram, png]\n" +
+                "....\n" +
+                "!include " + Paths.get("src/test/resources/plantuml/included-diagram.puml").toAbsolutePath() + "\n" +
+                "....";
+
+        AsciidocPage asciidocPage = asciidocPage(prependTitle(diagram));
+
+        // act
+        newAsciidocConfluencePage(asciidocPage, UTF_8, TEMPLATES_FOLDER, assetsTargetFolderFor(asciidocPage), attributes);
+
+        // assert
+        assertThat(list(diagramCacheFolder).count(), is(0L));
+    }
+
     @Test
     public void renderConfluencePage_asciiDocWithUnorderedList_returnsConfluencePageHavingCorrectUnorderedListMarkup() {
         // arrange
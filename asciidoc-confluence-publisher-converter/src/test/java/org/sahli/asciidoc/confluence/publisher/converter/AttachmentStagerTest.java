@@ -0,0 +1,241 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sahli.asciidoc.confluence.publisher.converter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.exists;
+import static java.nio.file.Files.getLastModifiedTime;
+import static java.nio.file.Files.isSameFile;
+import static java.nio.file.Files.readAllBytes;
+import static java.nio.file.Files.setLastModifiedTime;
+import static java.nio.file.Files.write;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class AttachmentStagerTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void stageAll_sameSourceRegisteredForMultipleTargets_stagesSourceContentToAllTargets() throws Exception {
+        // arrange
+        Path sourcePath = file(this.temporaryFolder.newFolder().toPath().resolve("logo.png"), "logo");
+        Path firstTargetPath = this.temporaryFolder.newFolder().toPath().resolve("logo.png");
+        Path secondTargetPath = this.temporaryFolder.newFolder().toPath().resolve("logo.png");
+
+        AttachmentStager attachmentStager = new AttachmentStager(this.temporaryFolder.newFolder().toPath());
+        attachmentStager.register(sourcePath, firstTargetPath);
+        attachmentStager.register(sourcePath, secondTargetPath);
+
+        // act
+        attachmentStager.stageAll();
+
+        // assert
+        assertThat(content(firstTargetPath), is("logo"));
+        assertThat(content(secondTargetPath), is("logo"));
+    }
+
+    @Test
+    public void stageAll_differentSourcesWithSameContent_stagesAllTargetsFromSameSource() throws Exception {
+        // arrange
+        Path firstSourcePath = file(this.temporaryFolder.newFolder().toPath().resolve("logo.png"), "logo");
+        Path secondSourcePath = file(this.temporaryFolder.newFolder().toPath().resolve("logo.png"), "logo");
+        Path firstTargetPath = this.temporaryFolder.newFolder().toPath().resolve("logo.png");
+        Path secondTargetPath = this.temporaryFolder.newFolder().toPath().resolve("logo.png");
+
+        AttachmentStager attachmentStager = new AttachmentStager(this.temporaryFolder.newFolder().toPath());
+        attachmentStager.register(firstSourcePath, firstTargetPath);
+        attachmentStager.register(secondSourcePath, secondTargetPath);
+
+        // act
+        attachmentStager.stageAll();
+
+        // assert
+        assertThat(content(firstTargetPath), is("logo"));
+        assertThat(content(secondTargetPath), is("logo"));
+    }
+
+    @Test
+    public void stageAll_targetOverwrittenInPlaceAfterStaging_leavesSourceUnchanged() throws Exception {
+        // arrange
+        Path sourcePath = file(this.temporaryFolder.newFolder().toPath().resolve("logo.png"), "logo");
+        Path targetPath = this.temporaryFolder.newFolder().toPath().resolve("logo.png");
+
+        AttachmentStager attachmentStager = new AttachmentStager(this.temporaryFolder.newFolder().toPath());
+        attachmentStager.register(sourcePath, targetPath);
+        attachmentStager.stageAll();
+
+        // act
+        write(targetPath, "regenerated".getBytes(UTF_8));
+
+        // assert
+        assertThat(isSameFile(sourcePath, targetPath), is(false));
+        assertThat(content(sourcePath), is("logo"));
+    }
+
+    @Test
+    public void stageAll_targetOverwrittenInPlaceAfterStaging_stagesOriginalContentToOtherTargets() throws Exception {
+        // arrange
+        Path storeFolder = this.temporaryFolder.newFolder().toPath();
+        Path sourcePath = file(this.temporaryFolder.newFolder().toPath().resolve("logo.png"), "logo");
+        Path firstTargetPath = this.temporaryFolder.newFolder().toPath().resolve("logo.png");
+        Path secondTargetPath = this.temporaryFolder.newFolder().toPath().resolve("logo.png");
+
+        AttachmentStager attachmentStager = new AttachmentStager(storeFolder);
+        attachmentStager.register(sourcePath, firstTargetPath);
+        attachmentStager.stageAll();
+        write(firstTargetPath, "regenerated".getBytes(UTF_8));
+
+        attachmentStager = new AttachmentStager(storeFolder);
+        attachmentStager.register(sourcePath, secondTargetPath);
+
+        // act
+        attachmentStager.stageAll();
+
+        // assert
+        assertThat(content(secondTargetPath), is("logo"));
+        assertThat(content(sourcePath), is("logo"));
+    }
+
+    @Test
+    public void stageAll_differentSourcesWithSameContent_linksAllTargetsToSameStoredFile() throws Exception {
+        // arrange
+        Path firstSourcePath = file(this.temporaryFolder.newFolder().toPath().resolve("logo.png"), "logo");
+        Path secondSourcePath = file(this.temporaryFolder.newFolder().toPath().resolve("logo.png"), "logo");
+        Path firstTargetPath = this.temporaryFolder.newFolder().toPath().resolve("logo.png");
+        Path secondTargetPath = this.temporaryFolder.newFolder().toPath().resolve("logo.png");
+
+        AttachmentStager attachmentStager = new AttachmentStager(this.temporaryFolder.newFolder().toPath());
+        attachmentStager.register(firstSourcePath, firstTargetPath);
+        attachmentStager.register(secondSourcePath, secondTargetPath);
+
+        // act
+        attachmentStager.stageAll();
+
+        // assert
+        assertThat(isSameFile(firstTargetPath, secondTargetPath), is(true));
+        assertThat(isSameFile(firstSourcePath, firstTargetPath), is(false));
+    }
+
+    @Test
+    public void stageAll_sourceIsTarget_leavesTargetUntouched() throws Exception {
+        // arrange
+        Path sourcePath = file(this.temporaryFolder.newFolder().toPath().resolve("logo.png"), "logo");
+
+        AttachmentStager attachmentStager = new AttachmentStager(this.temporaryFolder.newFolder().toPath());
+        attachmentStager.register(sourcePath, sourcePath);
+
+        // act
+        attachmentStager.stageAll();
+
+        // assert
+        assertThat(content(sourcePath), is("logo"));
+    }
+
+    @Test
+    public void stageAll_targetWithSameContentAsSource_leavesTargetUntouched() throws Exception {
+        // arrange
+        Path sourcePath = file(this.temporaryFolder.newFolder().toPath().resolve("logo.png"), "logo");
+        Path targetPath = file(this.temporaryFolder.newFolder().toPath().resolve("logo.png"), "logo");
+        FileTime lastModifiedTime = FileTime.fromMillis(0);
+        setLastModifiedTime(targetPath, lastModifiedTime);
+
+        AttachmentStager attachmentStager = new AttachmentStager(this.temporaryFolder.newFolder().toPath());
+        attachmentStager.register(sourcePath, targetPath);
+
+        // act
+        attachmentStager.stageAll();
+
+        // assert
+        assertThat(getLastModifiedTime(targetPath), is(lastModifiedTime));
+    }
+
+    @Test
+    public void stageAll_targetWithDifferentContentThanSource_replacesTarget() throws Exception {
+        // arrange
+        Path sourcePath = file(this.temporaryFolder.newFolder().toPath().resolve("logo.png"), "new logo");
+        Path targetPath = file(this.temporaryFolder.newFolder().toPath().resolve("logo.png"), "old logo");
+
+        AttachmentStager attachmentStager = new AttachmentStager(this.temporaryFolder.newFolder().toPath());
+        attachmentStager.register(sourcePath, targetPath);
+
+        // act
+        attachmentStager.stageAll();
+
+        // assert
+        assertThat(content(targetPath), is("new logo"));
+        assertThat(content(sourcePath), is("new logo"));
+    }
+
+    @Test
+    public void stageAll_nonExistingSource_stagesNothing() throws Exception {
+        // arrange
+        Path sourcePath = this.temporaryFolder.newFolder().toPath().resolve("generated-diagram.png");
+        Path targetPath = this.temporaryFolder.newFolder().toPath().resolve("generated-diagram.png");
+
+        AttachmentStager attachmentStager = new AttachmentStager(this.temporaryFolder.newFolder().toPath());
+        attachmentStager.register(sourcePath, targetPath);
+
+        // act
+        attachmentStager.stageAll();
+
+        // assert
+        assertThat(exists(targetPath), is(false));
+    }
+
+    @Test
+    public void stageAll_withImageOptimizer_stagesOptimizedImageWithoutChangingSource() throws Exception {
+        // arrange
+        Path sourcePath = this.temporaryFolder.newFolder().toPath().resolve("screenshot.png");
+        ImageIO.write(new BufferedImage(400, 200, TYPE_INT_RGB), "png", sourcePath.toFile());
+        byte[] sourceContent = readAllBytes(sourcePath);
+        Path targetPath = this.temporaryFolder.newFolder().toPath().resolve("screenshot.png");
+
+        AttachmentStager attachmentStager = new AttachmentStager(this.temporaryFolder.newFolder().toPath(), new ImageOptimizer(this.temporaryFolder.newFolder().toPath(), 100));
+        attachmentStager.register(sourcePath, targetPath);
+
+        // act
+        attachmentStager.stageAll();
+
+        // assert
+        assertThat(ImageIO.read(targetPath.toFile()).getWidth(), is(100));
+        assertThat(readAllBytes(sourcePath), is(sourceContent));
+    }
+
+    private static Path file(Path path, String content) throws IOException {
+        write(path, content.getBytes(UTF_8));
+
+        return path;
+    }
+
+    private static String content(Path path) throws IOException {
+        return new String(readAllBytes(path), UTF_8);
+    }
+
+}
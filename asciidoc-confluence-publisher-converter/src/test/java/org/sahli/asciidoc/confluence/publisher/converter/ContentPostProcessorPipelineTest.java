@@ -0,0 +1,146 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sahli.asciidoc.confluence.publisher.converter;
+
+import org.junit.Test;
+import org.sahli.asciidoc.confluence.publisher.converter.ContentToken.Type;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.sahli.asciidoc.confluence.publisher.converter.ContentToken.token;
+
+public class ContentPostProcessorPipelineTest {
+
+    @Test
+    public void tokenize_storageFormatContent_emitsTokensOfAllTypes() {
+        // arrange
+        String content = "<p class=\"a>b\">text</p><!-- comment --><![CDATA[<b>]]><br/>";
+        List<ContentToken> tokens = new ArrayList<>();
+
+        // act
+        ContentPostProcessorPipeline.tokenize(content, tokens::add);
+
+        // assert
+        assertThat(tokens.stream().map(ContentToken::toString).collect(toList()), contains(
+                "START_TAG[<p class=\"a>b\">]",
+                "TEXT[text]",
+                "END_TAG[</p>]",
+                "COMMENT[<!-- comment -->]",
+                "CDATA[<![CDATA[<b>]]>]",
+                "START_TAG[<br/>]"
+        ));
+    }
+
+    @Test
+    public void tokenize_startTag_exposesTagNameAndSelfClosing() {
+        // arrange
+        List<ContentToken> tokens = new ArrayList<>();
+
+        // act
+        ContentPostProcessorPipeline.tokenize("<ac:image ac:height=\"10\"/></ac:image>", tokens::add);
+
+        // assert
+        assertThat(tokens.get(0).tagName(), is("ac:image"));
+        assertThat(tokens.get(0).isSelfClosing(), is(true));
+        assertThat(tokens.get(1).tagName(), is("ac:image"));
+        assertThat(tokens.get(1).isSelfClosing(), is(false));
+    }
+
+    @Test
+    public void process_withoutContentPostProcessors_returnsUnchangedContent() {
+        // arrange
+        String content = "<p>text &amp; < more text</p><![CDATA[unterminated";
+        ContentPostProcessorPipeline contentPostProcessorPipeline = new ContentPostProcessorPipeline(emptyList());
+
+        // act
+        String processedContent = contentPostProcessorPipeline.process(content);
+
+        // assert
+        assertThat(processedContent, is(content));
+    }
+
+    @Test
+    public void process_withMultipleContentPostProcessors_appliesContentPostProcessorsInOrder() {
+        // arrange
+        ContentPostProcessor replaceText = (token, next) -> next.accept(token.type() == Type.TEXT ? token(Type.TEXT, "replaced") : token);
+        ContentPostProcessor wrapText = (token, next) -> {
+            if (token.type() == Type.TEXT) {
+                next.accept(token(Type.START_TAG, "<b>"));
+                next.accept(token);
+                next.accept(token(Type.END_TAG, "</b>"));
+            } else {
+                next.accept(token);
+            }
+        };
+
+        ContentPostProcessorPipeline contentPostProcessorPipeline = new ContentPostProcessorPipeline(asList(replaceText, wrapText));
+
+        // act
+        String processedContent = contentPostProcessorPipeline.process("<p>text</p>");
+
+        // assert
+        assertThat(processedContent, is("<p><b>replaced</b></p>"));
+    }
+
+    @Test
+    public void process_withBufferingContentPostProcessor_emitsBufferedTokensAtEndOfContent() {
+        // arrange
+        ContentPostProcessor dropText = (token, next) -> {
+            if (token.type() != Type.TEXT) {
+                next.accept(token);
+            }
+        };
+
+        ContentPostProcessor moveTagsToEnd = new ContentPostProcessor() {
+
+            private final List<ContentToken> bufferedTokens = new ArrayList<>();
+
+            @Override
+            public void process(ContentToken token, Consumer<ContentToken> next) {
+                if (token.type() == Type.TEXT) {
+                    next.accept(token);
+                } else {
+                    this.bufferedTokens.add(token);
+                }
+            }
+
+            @Override
+            public void endOfContent(Consumer<ContentToken> next) {
+                this.bufferedTokens.forEach(next);
+                this.bufferedTokens.clear();
+            }
+
+        };
+
+        ContentPostProcessorPipeline contentPostProcessorPipeline = new ContentPostProcessorPipeline(asList(moveTagsToEnd, dropText));
+
+        // act
+        String processedContent = contentPostProcessorPipeline.process("<p>text</p>");
+
+        // assert
+        assertThat(processedContent, is("<p></p>"));
+    }
+
+}
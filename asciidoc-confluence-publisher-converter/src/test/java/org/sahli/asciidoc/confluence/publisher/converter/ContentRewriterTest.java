@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sahli.asciidoc.confluence.publisher.converter;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.sahli.asciidoc.confluence.publisher.converter.ContentRewriter.attributeValueRule;
+
+public class ContentRewriterTest {
+
+    @Test
+    public void rewrite_contentWithoutMarkers_returnsSameContent() {
+        // arrange
+        String content = "<p>some content</p>";
+        ContentRewriter contentRewriter = new ContentRewriter(attributeValueRule("<a href=\"", String::toUpperCase));
+
+        // act
+        String rewrittenContent = contentRewriter.rewrite(content);
+
+        // assert
+        assertThat(rewrittenContent, is(sameInstance(content)));
+    }
+
+    @Test
+    public void rewrite_contentWithMultipleAttributeMarkers_replacesAllAttributeValues() {
+        // arrange
+        String content = "<a href=\"one\">1</a><img src=\"two\"/><a href=\"three\">3</a>";
+        ContentRewriter contentRewriter = new ContentRewriter(
+                attributeValueRule("<a href=\"", String::toUpperCase),
+                attributeValueRule("<img src=\"", (value) -> value + ".png")
+        );
+
+        // act
+        String rewrittenContent = contentRewriter.rewrite(content);
+
+        // assert
+        assertThat(rewrittenContent, is("<a href=\"ONE\">1</a><img src=\"two.png\"/><a href=\"THREE\">3</a>"));
+    }
+
+    @Test
+    public void rewrite_attributeValueNotClosedOnSameLine_leavesContentUnchanged() {
+        // arrange
+        String content = "<a href=\"one\n\">1</a>";
+        ContentRewriter contentRewriter = new ContentRewriter(attributeValueRule("<a href=\"", String::toUpperCase));
+
+        // act
+        String rewrittenContent = contentRewriter.rewrite(content);
+
+        // assert
+        assertThat(rewrittenContent, is(content));
+    }
+
+}
@@ -16,25 +16,44 @@
 
 package org.sahli.asciidoc.confluence.publisher.converter;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 import org.sahli.asciidoc.confluence.publisher.converter.providers.AsciidocPagesStructureProvider;
 import org.sahli.asciidoc.confluence.publisher.converter.providers.AsciidocPagesStructureProvider.AsciidocPage;
 import org.sahli.asciidoc.confluence.publisher.converter.providers.FolderBasedAsciidocPagesStructureProvider;
 
 import java.nio.charset.Charset;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.Optional;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.write;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.rules.ExpectedException.none;
 import static org.mockito.Mockito.mock;
 
 public class FolderBasedAsciidocPagesStructureProviderTest {
 
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Rule
+    public final ExpectedException expectedException = none();
+
     private static AsciidocPage NON_EXISTING_ASCIIDOC_PAGE = mock(AsciidocPage.class);
 
     @Test
@@ -66,6 +85,118 @@ public class FolderBasedAsciidocPagesStructureProviderTest {
         assertThat(subSubPageOne.children().size(), is(0));
     }
 
+    @Test
+    public void structure_excludedFolder_returnsAsciidocPagesStructureWithoutPagesInExcludedFolder() {
+        // arrange
+        Path documentationRootFolder = Paths.get("src/test/resources/folder-based-asciidoc-page-structure");
+        FolderBasedAsciidocPagesStructureProvider folderBasedAsciidocSourceStructureProvider = new FolderBasedAsciidocPagesStructureProvider(documentationRootFolder, UTF_8, emptyList(), singletonList("index/sub-page-one"));
+
+        // act
+        AsciidocPagesStructureProvider.AsciidocPagesStructure structure = folderBasedAsciidocSourceStructureProvider.structure();
+
+        // assert
+        AsciidocPage indexPage = asciidocPageByPath(structure.pages(), documentationRootFolder.resolve("index.adoc"));
+        assertThat(indexPage.children().size(), is(2));
+
+        AsciidocPage subPageOne = asciidocPageByPath(indexPage.children(), documentationRootFolder.resolve("index/sub-page-one.adoc"));
+        assertThat(subPageOne.children().size(), is(0));
+    }
+
+    @Test
+    public void structure_includePatterns_returnsAsciidocPagesStructureWithMatchingPagesOnly() {
+        // arrange
+        Path documentationRootFolder = Paths.get("src/test/resources/folder-based-asciidoc-page-structure");
+        FolderBasedAsciidocPagesStructureProvider folderBasedAsciidocSourceStructureProvider = new FolderBasedAsciidocPagesStructureProvider(documentationRootFolder, UTF_8, asList("index.adoc", "**/sub-page-two.adoc"), emptyList());
+
+        // act
+        AsciidocPagesStructureProvider.AsciidocPagesStructure structure = folderBasedAsciidocSourceStructureProvider.structure();
+
+        // assert
+        AsciidocPage indexPage = asciidocPageByPath(structure.pages(), documentationRootFolder.resolve("index.adoc"));
+        assertThat(indexPage.children().size(), is(1));
+        assertThat(indexPage.children().get(0).path(), is(documentationRootFolder.resolve("index/sub-page-two.adoc")));
+    }
+
+    @Test
+    public void structure_pagesCreatedAfterConstruction_returnsAsciidocPagesStructureWithThesePages() throws Exception {
+        // arrange
+        Path documentationRootFolder = this.temporaryFolder.newFolder().toPath();
+        FolderBasedAsciidocPagesStructureProvider folderBasedAsciidocSourceStructureProvider = new FolderBasedAsciidocPagesStructureProvider(documentationRootFolder, UTF_8);
+
+        write(documentationRootFolder.resolve("index.adoc"), "= Index".getBytes(UTF_8));
+        createDirectories(documentationRootFolder.resolve("index"));
+        write(documentationRootFolder.resolve("index/sub-page.adoc"), "= Sub Page".getBytes(UTF_8));
+
+        // act
+        AsciidocPagesStructureProvider.AsciidocPagesStructure structure = folderBasedAsciidocSourceStructureProvider.structure();
+
+        // assert
+        AsciidocPage indexPage = asciidocPageByPath(structure.pages(), documentationRootFolder.resolve("index.adoc"));
+        assertThat(indexPage.children().size(), is(1));
+        assertThat(indexPage.children().get(0).path(), is(documentationRootFolder.resolve("index/sub-page.adoc")));
+        assertThat(indexPage.children().get(0).children().size(), is(0));
+    }
+
+    @Test
+    public void affectedPages_changedPages_returnsChangedPages() throws Exception {
+        // arrange
+        Path documentationRootFolder = this.temporaryFolder.newFolder().toPath();
+        write(documentationRootFolder.resolve("index.adoc"), "= Index".getBytes(UTF_8));
+        createDirectories(documentationRootFolder.resolve("index"));
+        write(documentationRootFolder.resolve("index/sub-page.adoc"), "= Sub Page".getBytes(UTF_8));
+        FolderBasedAsciidocPagesStructureProvider folderBasedAsciidocSourceStructureProvider = new FolderBasedAsciidocPagesStructureProvider(documentationRootFolder, UTF_8);
+
+        // act
+        Optional<List<Path>> affectedPages = folderBasedAsciidocSourceStructureProvider.affectedPages(asList(documentationRootFolder.resolve("index/sub-page.adoc"), documentationRootFolder.resolve("index.adoc")));
+
+        // assert
+        assertThat(affectedPages.get(), contains(documentationRootFolder.resolve("index/sub-page.adoc"), documentationRootFolder.resolve("index.adoc")));
+    }
+
+    @Test
+    public void affectedPages_deletedPage_returnsEmptyOptional() throws Exception {
+        // arrange
+        Path documentationRootFolder = this.temporaryFolder.newFolder().toPath();
+        write(documentationRootFolder.resolve("index.adoc"), "= Index".getBytes(UTF_8));
+        createDirectories(documentationRootFolder.resolve("index"));
+        FolderBasedAsciidocPagesStructureProvider folderBasedAsciidocSourceStructureProvider = new FolderBasedAsciidocPagesStructureProvider(documentationRootFolder, UTF_8);
+
+        // act
+        Optional<List<Path>> affectedPages = folderBasedAsciidocSourceStructureProvider.affectedPages(singletonList(documentationRootFolder.resolve("index/deleted-page.adoc")));
+
+        // assert
+        assertThat(affectedPages.isPresent(), is(false));
+    }
+
+    @Test
+    public void affectedPages_changedIncludeFile_returnsEmptyOptional() throws Exception {
+        // arrange
+        Path documentationRootFolder = this.temporaryFolder.newFolder().toPath();
+        write(documentationRootFolder.resolve("index.adoc"), "= Index\n\ninclude::_shared.adoc[]".getBytes(UTF_8));
+        write(documentationRootFolder.resolve("_shared.adoc"), "shared content".getBytes(UTF_8));
+        FolderBasedAsciidocPagesStructureProvider folderBasedAsciidocSourceStructureProvider = new FolderBasedAsciidocPagesStructureProvider(documentationRootFolder, UTF_8);
+
+        // act
+        Optional<List<Path>> affectedPages = folderBasedAsciidocSourceStructureProvider.affectedPages(singletonList(documentationRootFolder.resolve("_shared.adoc")));
+
+        // assert
+        assertThat(affectedPages.isPresent(), is(false));
+    }
+
+    @Test
+    public void constructor_nonExistingDocumentationRootFolder_throwsException() {
+        // arrange
+        Path documentationRootFolder = this.temporaryFolder.getRoot().toPath().resolve("non-existing");
+
+        // assert
+        this.expectedException.expect(RuntimeException.class);
+        this.expectedException.expectMessage("Could not create asciidoc source structure");
+        this.expectedException.expectCause(instanceOf(NoSuchFileException.class));
+
+        // act
+        new FolderBasedAsciidocPagesStructureProvider(documentationRootFolder, UTF_8);
+    }
+
     @Test
     public void sourceEncoding_sourceEncodingProvided_returnsProvidedSourceEncoding() {
         // arrange
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sahli.asciidoc.confluence.publisher.converter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sahli.asciidoc.confluence.publisher.converter.ImageOptimizer.DisplaySize;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.readAllBytes;
+import static java.nio.file.Files.write;
+import static java.util.Arrays.copyOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+public class ImageOptimizerTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void optimize_imageWiderThanMaxWidth_downsizesImageToMaxWidthAndKeepsSource() throws Exception {
+        // arrange
+        Path sourcePath = image(this.temporaryFolder.newFolder().toPath().resolve("screenshot.png"), 400, 200);
+        byte[] sourceContent = readAllBytes(sourcePath);
+        ImageOptimizer imageOptimizer = new ImageOptimizer(this.temporaryFolder.newFolder().toPath(), 100);
+
+        // act
+        Path optimizedPath = imageOptimizer.optimize(sourcePath, "hash", DisplaySize.UNSPECIFIED);
+
+        // assert
+        BufferedImage optimizedImage = ImageIO.read(optimizedPath.toFile());
+        assertThat(optimizedPath, is(not(sourcePath)));
+        assertThat(optimizedImage.getWidth(), is(100));
+        assertThat(optimizedImage.getHeight(), is(50));
+        assertThat(readAllBytes(sourcePath), is(sourceContent));
+    }
+
+    @Test
+    public void optimize_imageDisplayedWiderThanMaxWidth_downsizesImageNotBelowDisplayedWidth() throws Exception {
+        // arrange
+        Path sourcePath = image(this.temporaryFolder.newFolder().toPath().resolve("screenshot.png"), 400, 200);
+        ImageOptimizer imageOptimizer = new ImageOptimizer(this.temporaryFolder.newFolder().toPath(), 100);
+
+        // act
+        Path optimizedPath = imageOptimizer.optimize(sourcePath, "hash", new DisplaySize(0, 150));
+
+        // assert
+        assertThat(ImageIO.read(optimizedPath.toFile()).getWidth(), is(300));
+    }
+
+    @Test
+    public void optimize_sameContentHashTwice_returnsCachedImage() throws Exception {
+        // arrange
+        Path sourcePath = image(this.temporaryFolder.newFolder().toPath().resolve("screenshot.png"), 400, 200);
+        ImageOptimizer imageOptimizer = new ImageOptimizer(this.temporaryFolder.newFolder().toPath(), null);
+        Path optimizedPath = imageOptimizer.optimize(sourcePath, "hash", DisplaySize.UNSPECIFIED);
+
+        // act
+        Path cachedPath = imageOptimizer.optimize(image(sourcePath, 10, 10), "hash", DisplaySize.UNSPECIFIED);
+
+        // assert
+        assertThat(cachedPath, is(optimizedPath));
+        assertThat(ImageIO.read(cachedPath.toFile()).getWidth(), is(400));
+    }
+
+    @Test
+    public void optimize_sameContentHashTwiceWithMaxWidth_returnsCachedImageWithoutDecodingSource() throws Exception {
+        // arrange
+        Path sourcePath = image(this.temporaryFolder.newFolder().toPath().resolve("screenshot.png"), 400, 200);
+        ImageOptimizer imageOptimizer = new ImageOptimizer(this.temporaryFolder.newFolder().toPath(), 100);
+        Path optimizedPath = imageOptimizer.optimize(sourcePath, "hash", DisplaySize.UNSPECIFIED);
+
+        // keep the header of the source image, but make its image data undecodable
+        write(sourcePath, copyOf(readAllBytes(sourcePath), 33));
+
+        // act
+        Path cachedPath = imageOptimizer.optimize(sourcePath, "hash", DisplaySize.UNSPECIFIED);
+
+        // assert
+        assertThat(cachedPath, is(optimizedPath));
+        assertThat(ImageIO.read(cachedPath.toFile()).getWidth(), is(100));
+    }
+
+    @Test
+    public void optimize_fileWithoutPngHeaderAndMaxWidth_returnsSource() throws Exception {
+        // arrange
+        Path sourcePath = this.temporaryFolder.newFolder().toPath().resolve("not-an-image.png");
+        write(sourcePath, "not an image".getBytes(UTF_8));
+        ImageOptimizer imageOptimizer = new ImageOptimizer(this.temporaryFolder.newFolder().toPath(), 100);
+
+        // act
+        Path optimizedPath = imageOptimizer.optimize(sourcePath, "hash", DisplaySize.UNSPECIFIED);
+
+        // assert
+        assertThat(optimizedPath, is(sourcePath));
+    }
+
+    @Test
+    public void displaySizes_imagesWithAndWithoutDisplaySize_returnsDisplaySizesOfImagesWithDisplaySize() {
+        // arrange
+        String content = "<ac:image ac:width=\"300\"><ri:attachment ri:filename=\"sized.png\"></ri:attachment></ac:image>"
+                + "<ac:image><ri:attachment ri:filename=\"unsized.png\"></ri:attachment></ac:image>";
+
+        // act
+        Map<String, DisplaySize> displaySizes = ImageOptimizer.displaySizes(content);
+
+        // assert
+        assertThat(displaySizes.size(), is(1));
+        assertThat(displaySizes.get("sized.png").requiredWidth(1000, 500), is(300));
+    }
+
+    private static Path image(Path path, int width, int height) throws IOException {
+        ImageIO.write(new BufferedImage(width, height, TYPE_INT_RGB), "png", path.toFile());
+
+        return path;
+    }
+
+}
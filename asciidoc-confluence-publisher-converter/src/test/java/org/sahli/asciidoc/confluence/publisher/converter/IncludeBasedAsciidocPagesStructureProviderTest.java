@@ -0,0 +1,320 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sahli.asciidoc.confluence.publisher.converter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sahli.asciidoc.confluence.publisher.converter.providers.AsciidocPagesStructureProvider.AsciidocPage;
+import org.sahli.asciidoc.confluence.publisher.converter.providers.AsciidocPagesStructureProvider.AsciidocPagesStructure;
+import org.sahli.asciidoc.confluence.publisher.converter.providers.IncludeBasedAsciidocPagesStructureProvider;
+import org.sahli.asciidoc.confluence.publisher.converter.providers.IncludeBasedAsciidocPagesStructureProvider.PathDelimiter;
+import org.sahli.asciidoc.confluence.publisher.converter.providers.IncludeBasedAsciidocPagesStructureProviderListener;
+import org.sahli.asciidoc.confluence.publisher.converter.providers.IncludeGraph;
+import org.sahli.asciidoc.confluence.publisher.converter.providers.NoOpIncludeBasedAsciidocPagesStructureProviderListener;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.getLastModifiedTime;
+import static java.nio.file.Files.readAllBytes;
+import static java.nio.file.Files.setLastModifiedTime;
+import static java.nio.file.Files.write;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Stream.concat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+public class IncludeBasedAsciidocPagesStructureProviderTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void structure_pageIncludingChildPageAndIncludeFile_returnsStructureWithChildPageAndWritesAdaptedPages() throws Exception {
+        // arrange
+        Path sourceFolder = this.temporaryFolder.newFolder("source").toPath();
+        Path workingFolder = this.temporaryFolder.newFolder("working").toPath();
+        file(sourceFolder.resolve("index.adoc"), "= Index\n\ninclude::index/sub-page.adoc[]\n\ninclude::_{name}.adoc[]\n");
+        file(sourceFolder.resolve("index/sub-page.adoc"), "= Sub Page\n");
+        file(sourceFolder.resolve("_shared.adoc"), "shared content\n");
+
+        // act
+        AsciidocPagesStructure structure = includeBasedProvider(sourceFolder, workingFolder, new IncludeGraph()).structure();
+
+        // assert
+        assertThat(structure.pages().size(), is(1));
+
+        AsciidocPage indexPage = structure.pages().get(0);
+        assertThat(indexPage.path(), is(workingFolder.resolve("index.adoc")));
+        assertThat(indexPage.children().size(), is(1));
+        assertThat(indexPage.children().get(0).path(), is(workingFolder.resolve("index/sub-page.adoc")));
+
+        String adaptedIndexContent = content(workingFolder.resolve("index.adoc"));
+        assertThat(adaptedIndexContent, not(containsString("sub-page.adoc")));
+        assertThat(adaptedIndexContent, containsString("_shared.adoc[]"));
+        assertThat(content(workingFolder.resolve("index/sub-page.adoc")), is("= Sub Page\n"));
+    }
+
+    @Test
+    public void structure_pageWithResourceReferences_writesPageWithReferencesRelativeToOriginalResources() throws Exception {
+        // arrange
+        Path sourceFolder = this.temporaryFolder.newFolder("source").toPath();
+        Path workingFolder = this.temporaryFolder.newFolder("working").toPath();
+        file(sourceFolder.resolve("images/one.png"), "one");
+        file(sourceFolder.resolve("images/two.png"), "two");
+        file(sourceFolder.resolve("diagram.puml"), "@startuml\n@enduml");
+        file(sourceFolder.resolve("other.html"), "other");
+        file(sourceFolder.resolve("index/sub-page.adoc"), "= Sub Page\n");
+        file(sourceFolder.resolve("index.adoc"), "= Index\n" +
+                ":imagesdir: images\n" +
+                "include::index/sub-page.adoc[]\n" +
+                "image::images/one.png[width=100]\n" +
+                "plantuml::diagram.puml[]\n" +
+                "image:images/one.png[] and image:images/two.png[] with link:other.html[Other] and link:missing.html[Missing]\n" +
+                "See <<index/sub-page.adoc#,Sub Page>> or <<other.html#,Other>>.\n");
+
+        // act
+        includeBasedProvider(sourceFolder, workingFolder, new IncludeGraph());
+
+        // assert
+        assertThat(content(workingFolder.resolve("index.adoc")), is("= Index\n" +
+                ":imagesdir: ../source/images\n" +
+                "\n" +
+                "image::../source/images/one.png[width=100]\n" +
+                "plantuml::../source/diagram.puml[]\n" +
+                "image:../source/images/one.png[] and image:../source/images/two.png[] with link:../source/other.html[Other] and link:missing.html[Missing]\n" +
+                "See  or <<../source/other.html#,Other>>.\n"));
+    }
+
+    @Test
+    public void includeGraph_pageIncludingChildPageAndIncludeFile_returnsIncludedAndIncludingFiles() throws Exception {
+        // arrange
+        Path sourceFolder = this.temporaryFolder.newFolder("source").toPath();
+        Path workingFolder = this.temporaryFolder.newFolder("working").toPath();
+        file(sourceFolder.resolve("index.adoc"), "= Index\n\ninclude::index/sub-page.adoc[]\n\ninclude::_shared.adoc[]\n");
+        file(sourceFolder.resolve("index/sub-page.adoc"), "= Sub Page\n\ninclude::../_shared.adoc[]\n");
+        file(sourceFolder.resolve("_shared.adoc"), "shared content\n");
+
+        // act
+        IncludeGraph includeGraph = includeBasedProvider(sourceFolder, workingFolder, new IncludeGraph()).includeGraph();
+
+        // assert
+        assertThat(includeGraph.includedFiles(sourceFolder.resolve("index.adoc")), containsInAnyOrder(sourceFolder.resolve("index/sub-page.adoc"), sourceFolder.resolve("_shared.adoc")));
+        assertThat(includeGraph.includingFiles(sourceFolder.resolve("_shared.adoc")), containsInAnyOrder(sourceFolder.resolve("index.adoc"), sourceFolder.resolve("index/sub-page.adoc")));
+    }
+
+    @Test
+    public void structure_sharedIncludeGraphAndUnmodifiedSourceFile_doesNotReadSourceFileAgain() throws Exception {
+        // arrange
+        Path sourceFolder = this.temporaryFolder.newFolder("source").toPath();
+        Path workingFolder = this.temporaryFolder.newFolder("working").toPath();
+        Path indexPath = file(sourceFolder.resolve("index.adoc"), "= Index\n");
+        FileTime lastModifiedTime = getLastModifiedTime(indexPath);
+
+        IncludeGraph includeGraph = new IncludeGraph();
+        includeBasedProvider(sourceFolder, workingFolder, includeGraph);
+
+        file(indexPath, "= Other\n");
+        setLastModifiedTime(indexPath, lastModifiedTime);
+
+        // act
+        includeBasedProvider(sourceFolder, workingFolder, includeGraph);
+
+        // assert
+        assertThat(content(workingFolder.resolve("index.adoc")), is("= Index\n"));
+    }
+
+    @Test
+    public void structure_sharedIncludeGraphAndModifiedSourceFile_readsSourceFileAgain() throws Exception {
+        // arrange
+        Path sourceFolder = this.temporaryFolder.newFolder("source").toPath();
+        Path workingFolder = this.temporaryFolder.newFolder("working").toPath();
+        Path indexPath = file(sourceFolder.resolve("index.adoc"), "= Index\n");
+        FileTime lastModifiedTime = getLastModifiedTime(indexPath);
+
+        IncludeGraph includeGraph = new IncludeGraph();
+        includeBasedProvider(sourceFolder, workingFolder, includeGraph);
+
+        file(indexPath, "= Other page\n");
+        setLastModifiedTime(indexPath, FileTime.fromMillis(lastModifiedTime.toMillis() + 1000));
+
+        // act
+        includeBasedProvider(sourceFolder, workingFolder, includeGraph);
+
+        // assert
+        assertThat(content(workingFolder.resolve("index.adoc")), is("= Other page\n"));
+    }
+
+    @Test
+    public void structure_repeatedPreprocessingWithOneModifiedSourceFile_rewritesOnlyChangedTargetFile() throws Exception {
+        // arrange
+        Path sourceFolder = this.temporaryFolder.newFolder("source").toPath();
+        Path workingFolder = this.temporaryFolder.newFolder("working").toPath();
+        file(sourceFolder.resolve("index.adoc"), "= Index\n\ninclude::index/sub-page.adoc[]\n");
+        Path subPagePath = file(sourceFolder.resolve("index/sub-page.adoc"), "= Sub Page\n");
+
+        includeBasedProvider(sourceFolder, workingFolder, new IncludeGraph());
+        FileTime indexLastModifiedTime = FileTime.fromMillis(0);
+        setLastModifiedTime(workingFolder.resolve("index.adoc"), indexLastModifiedTime);
+
+        file(subPagePath, "= Modified Sub Page\n");
+
+        // act
+        includeBasedProvider(sourceFolder, workingFolder, new IncludeGraph());
+
+        // assert
+        assertThat(getLastModifiedTime(workingFolder.resolve("index.adoc")), is(indexLastModifiedTime));
+        assertThat(content(workingFolder.resolve("index/sub-page.adoc")), is("= Modified Sub Page\n"));
+    }
+
+    @Test
+    public void affectedPages_changedIncludeFile_returnsAllPagesIncludingIt() throws Exception {
+        // arrange
+        Path sourceFolder = this.temporaryFolder.newFolder("source").toPath();
+        Path workingFolder = this.temporaryFolder.newFolder("working").toPath();
+        file(sourceFolder.resolve("index.adoc"), "= Index\n\ninclude::index/sub-page.adoc[]\n\ninclude::_shared.adoc[]\n");
+        file(sourceFolder.resolve("index/sub-page.adoc"), "= Sub Page\n\ninclude::../_shared.adoc[]\n");
+        file(sourceFolder.resolve("index/other-page.adoc"), "= Other Page\n");
+        Path sharedPath = file(sourceFolder.resolve("_shared.adoc"), "shared content\n");
+
+        IncludeBasedAsciidocPagesStructureProvider includeBasedProvider = includeBasedProvider(sourceFolder, workingFolder, new IncludeGraph());
+
+        // act
+        Optional<List<Path>> affectedPages = includeBasedProvider.affectedPages(singletonList(sharedPath));
+
+        // assert
+        assertThat(affectedPages.get(), containsInAnyOrder(workingFolder.resolve("index.adoc"), workingFolder.resolve("index/sub-page.adoc")));
+    }
+
+    @Test
+    public void affectedPages_changedChildPage_returnsChildPageOnly() throws Exception {
+        // arrange
+        Path sourceFolder = this.temporaryFolder.newFolder("source").toPath();
+        Path workingFolder = this.temporaryFolder.newFolder("working").toPath();
+        file(sourceFolder.resolve("index.adoc"), "= Index\n\ninclude::index/sub-page.adoc[]\n");
+        Path subPagePath = file(sourceFolder.resolve("index/sub-page.adoc"), "= Sub Page\n");
+
+        IncludeBasedAsciidocPagesStructureProvider includeBasedProvider = includeBasedProvider(sourceFolder, workingFolder, new IncludeGraph());
+
+        // act
+        Optional<List<Path>> affectedPages = includeBasedProvider.affectedPages(singletonList(subPagePath));
+
+        // assert
+        assertThat(affectedPages.get(), contains(workingFolder.resolve("index/sub-page.adoc")));
+    }
+
+    @Test
+    public void affectedPages_changedNonAsciidocFile_returnsEmptyOptional() throws Exception {
+        // arrange
+        Path sourceFolder = this.temporaryFolder.newFolder("source").toPath();
+        Path workingFolder = this.temporaryFolder.newFolder("working").toPath();
+        file(sourceFolder.resolve("index.adoc"), "= Index\n\nimage::images/one.png[]\n");
+        Path imagePath = file(sourceFolder.resolve("images/one.png"), "image");
+
+        IncludeBasedAsciidocPagesStructureProvider includeBasedProvider = includeBasedProvider(sourceFolder, workingFolder, new IncludeGraph());
+
+        // act
+        Optional<List<Path>> affectedPages = includeBasedProvider.affectedPages(singletonList(imagePath));
+
+        // assert
+        assertThat(affectedPages.isPresent(), is(false));
+    }
+
+    @Test
+    public void structure_parallelPreprocessing_returnsSameStructureAndReportsSameEventsAsSequentialPreprocessing() throws Exception {
+        // arrange
+        Path sourceFolder = this.temporaryFolder.newFolder("source").toPath();
+        for (int i = 0; i < 8; i++) {
+            file(sourceFolder.resolve("page-" + i + ".adoc"), "= Page " + i + "\n\ninclude::page-" + i + "/child.adoc[]\n\ninclude::_shared.adoc[]\n");
+            file(sourceFolder.resolve("page-" + i + "/child.adoc"), "= Child " + i + "\n\ninclude::../_shared.adoc[]\n");
+        }
+        file(sourceFolder.resolve("_shared.adoc"), "image::missing.png[]\n");
+
+        List<String> sequentialEvents = new ArrayList<>();
+        List<String> parallelEvents = new ArrayList<>();
+
+        // act
+        AsciidocPagesStructure sequentialStructure = new IncludeBasedAsciidocPagesStructureProvider(sourceFolder, this.temporaryFolder.newFolder("sequential").toPath(), emptyMap(), UTF_8, recordingListener(sequentialEvents), new IncludeGraph(), false).structure();
+        AsciidocPagesStructure parallelStructure = new IncludeBasedAsciidocPagesStructureProvider(sourceFolder, this.temporaryFolder.newFolder("parallel").toPath(), emptyMap(), UTF_8, recordingListener(parallelEvents), new IncludeGraph(), true).structure();
+
+        // assert
+        assertThat(fileNames(parallelStructure.pages()), is(fileNames(sequentialStructure.pages())));
+        assertThat(parallelEvents.size(), is(sequentialEvents.size()));
+        assertThat(parallelEvents, is(sequentialEvents.stream().map(event -> event.replace("sequential", "parallel")).collect(toList())));
+    }
+
+    private static List<String> fileNames(List<AsciidocPage> pages) {
+        return pages.stream()
+                .flatMap((page) -> concat(Stream.of(page.path().getFileName().toString()), fileNames(page.children()).stream()))
+                .collect(toList());
+    }
+
+    private static IncludeBasedAsciidocPagesStructureProviderListener recordingListener(List<String> events) {
+        return new NoOpIncludeBasedAsciidocPagesStructureProviderListener() {
+
+            @Override
+            public void processFile(Path file, Path targetFile) {
+                events.add("processFile " + file + " " + targetFile);
+            }
+
+            @Override
+            public void processInclude(Path file, Path targetFile) {
+                events.add("processInclude " + file + " " + targetFile);
+            }
+
+            @Override
+            public void missingPath(String path, Path actualPath, Path file, Path targetFile, PathDelimiter delimiter) {
+                events.add("missingPath " + path + " " + file + " " + targetFile);
+            }
+
+        };
+    }
+
+    private static IncludeBasedAsciidocPagesStructureProvider includeBasedProvider(Path sourceFolder, Path workingFolder, IncludeGraph includeGraph) {
+        IncludeBasedAsciidocPagesStructureProvider includeBasedProvider = new IncludeBasedAsciidocPagesStructureProvider(sourceFolder, workingFolder, singletonMap("name", "shared"), UTF_8, new NoOpIncludeBasedAsciidocPagesStructureProviderListener(), includeGraph);
+        includeBasedProvider.structure();
+
+        return includeBasedProvider;
+    }
+
+    private static Path file(Path path, String content) throws IOException {
+        createDirectories(path.getParent());
+        write(path, content.getBytes(UTF_8));
+
+        return path;
+    }
+
+    private static String content(Path path) throws IOException {
+        return new String(readAllBytes(path), UTF_8);
+    }
+
+}
@@ -16,39 +16,69 @@
 
 package org.sahli.asciidoc.confluence.publisher.maven.plugin;
 
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.lifecycle.DefaultLifecycles;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
 import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
 import org.asciidoctor.Attributes;
 import org.sahli.asciidoc.confluence.publisher.client.ConfluencePublisher;
 import org.sahli.asciidoc.confluence.publisher.client.ConfluencePublisherListener;
+import org.sahli.asciidoc.confluence.publisher.client.http.CachingConfluenceClient;
+import org.sahli.asciidoc.confluence.publisher.client.http.ConfluenceClient;
 import org.sahli.asciidoc.confluence.publisher.client.http.ConfluencePage;
 import org.sahli.asciidoc.confluence.publisher.client.http.ConfluenceRestClient;
+import org.sahli.asciidoc.confluence.publisher.client.http.RateLimitingConfluenceClient;
 import org.sahli.asciidoc.confluence.publisher.client.metadata.ConfluencePublisherMetadata;
 import org.sahli.asciidoc.confluence.publisher.client.metadata.ConfluencePublisherPublishStrategy;
+import org.sahli.asciidoc.confluence.publisher.client.metadata.ConfluencePublisherTarget;
 import org.sahli.asciidoc.confluence.publisher.converter.AsciidocConfluenceConverter;
 import org.sahli.asciidoc.confluence.publisher.converter.PageTitlePostProcessor;
 import org.sahli.asciidoc.confluence.publisher.converter.PrefixAndSuffixPageTitlePostProcessor;
 import org.sahli.asciidoc.confluence.publisher.converter.providers.AsciidocPagesStructureProvider;
 import org.sahli.asciidoc.confluence.publisher.converter.providers.FolderBasedAsciidocPagesStructureProvider;
+import org.sahli.asciidoc.confluence.publisher.converter.providers.GitChangedFiles;
 import org.sahli.asciidoc.confluence.publisher.converter.providers.IncludeBasedAsciidocPagesStructureProvider;
 import org.sahli.asciidoc.confluence.publisher.converter.providers.IncludeBasedAsciidocPagesStructureProvider.PathDelimiter;
 import org.sahli.asciidoc.confluence.publisher.converter.providers.IncludeBasedAsciidocPagesStructureProviderListener;
+import org.sahli.asciidoc.confluence.publisher.converter.providers.IncludeGraph;
 
 import java.io.File;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import static java.util.Collections.emptyList;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static org.sahli.asciidoc.confluence.publisher.client.http.ConfluenceRestClient.REQUEST_COMPRESSION_DISABLED;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 
 /**
  * @author Alain Sahli
  * @author Christian Stettler
  */
-@Mojo(name = "publish")
+@Mojo(name = AsciidocConfluencePublisherMojo.PUBLISH_GOAL, threadSafe = true)
 public class AsciidocConfluencePublisherMojo extends AbstractMojo {
 
+    static final String PUBLISH_GOAL = "publish";
+
     @Parameter(defaultValue = "${project.build.directory}/asciidoc-confluence-publisher", readonly = true)
     private File confluencePublisherBuildFolder;
 
@@ -73,6 +103,63 @@ public class AsciidocConfluencePublisherMojo extends AbstractMojo {
     @Parameter(defaultValue = "INCLUDE")
     private AsciidocPagesStructureProviderType providerType;
 
+    @Parameter
+    private List<String> includes;
+
+    @Parameter
+    private List<String> excludes;
+
+    @Parameter(defaultValue = "false")
+    private boolean parallelPreprocessing;
+
+    @Parameter(defaultValue = "false")
+    private boolean pipelined;
+
+    @Parameter
+    private List<String> scope;
+
+    @Parameter
+    private String changedSinceRevision;
+
+    @Parameter
+    private File journalFile;
+
+    @Parameter
+    private String sharedAttachmentsPageTitle;
+
+    @Parameter(defaultValue = "false")
+    private boolean optimizeImages;
+
+    @Parameter
+    private Integer maxImageWidth;
+
+    @Parameter
+    private File imageCacheFolder;
+
+    @Parameter
+    private Integer requestCompressionThreshold;
+
+    @Parameter
+    private Double maxRequestsPerSecond;
+
+    @Parameter
+    private List<ConfluencePublisherTarget> additionalTargets;
+
+    @Parameter(defaultValue = "false")
+    private boolean publishAtEnd;
+
+    @Parameter(defaultValue = "${session}", readonly = true)
+    private MavenSession session;
+
+    @Parameter(defaultValue = "${project}", readonly = true)
+    private MavenProject project;
+
+    @Parameter(defaultValue = "${plugin}", readonly = true)
+    private PluginDescriptor pluginDescriptor;
+
+    @Component
+    private DefaultLifecycles defaultLifecycles;
+
     @Parameter
     private String username;
 
@@ -92,38 +179,269 @@ public class AsciidocConfluencePublisherMojo extends AbstractMojo {
     public void execute() throws MojoExecutionException {
         try {
             PageTitlePostProcessor pageTitlePostProcessor = new PrefixAndSuffixPageTitlePostProcessor(pageTitlePrefix, pageTitleSuffix);
+            AsciidocPagesStructureProvider asciidocPagesStructureProvider = asciidocPagesStructureProvider();
+
+            AsciidocConfluenceConverter asciidocConfluenceConverter = new AsciidocConfluenceConverter(spaceKey, ancestorId, sharedAttachmentsPageTitle, optimizeImages, maxImageWidth, imageCacheFolder != null ? imageCacheFolder.toPath() : null);
+            int requestCompressionThreshold = this.requestCompressionThreshold != null ? this.requestCompressionThreshold : REQUEST_COMPRESSION_DISABLED;
+            Function<ConfluencePublisherTarget, ConfluenceClient> additionalTargetClientFactory = (target) -> confluenceClient(
+                    new ConfluenceRestClient(target.getRootConfluenceUrl(), target.getUsername(), target.getPassword(), requestCompressionThreshold), target.getMaxRequestsPerSecond());
+            ConfluencePublisherListener confluencePublisherListener = new LoggingConfluencePublisherListener(getLog());
 
-            AsciidocPagesStructureProvider asciidocPagesStructureProvider = null;
-            switch (providerType) {
-                case INCLUDE:
-                    IncludeBasedAsciidocPagesStructureProviderListener providerListener = new LoggingIncludeBasedAsciidocPagesStructureProviderListener(getLog());
-                    asciidocPagesStructureProvider = new IncludeBasedAsciidocPagesStructureProvider(asciidocRootFolder.toPath(), confluencePublisherBuildFolder.toPath().resolve("preprocessed"), attributes, Charset.forName(sourceEncoding), providerListener);
-                    break;
-                case FOLDER:
-                    asciidocPagesStructureProvider = new FolderBasedAsciidocPagesStructureProvider(asciidocRootFolder.toPath(), Charset.forName(sourceEncoding));
-                    break;
+            if (publishAtEnd && pipelined) {
+                throw new IllegalArgumentException("publishAtEnd cannot be combined with pipelined publishing");
             }
 
-            AsciidocConfluenceConverter asciidocConfluenceConverter = new AsciidocConfluenceConverter(spaceKey, ancestorId);
-            ConfluencePublisherMetadata confluencePublisherMetadata = asciidocConfluenceConverter.convert(asciidocPagesStructureProvider, pageTitlePostProcessor, confluencePublisherBuildFolder.toPath(), new Attributes(attributes));
-            confluencePublisherMetadata.setPublishStrategy(strategy);
+            if (changedSinceRevision != null && (pipelined || (scope != null && !scope.isEmpty()))) {
+                throw new IllegalArgumentException("changedSinceRevision cannot be combined with scope or pipelined publishing");
+            }
 
-            ConfluenceRestClient confluenceRestClient = new ConfluenceRestClient(rootConfluenceUrl, username, password);
-            ConfluencePublisherListener confluencePublisherListener = new LoggingConfluencePublisherListener(getLog());
+            if (sharedAttachmentsPageTitle != null && (pipelined || (scope != null && !scope.isEmpty()) || changedSinceRevision != null || strategy == ConfluencePublisherPublishStrategy.REPLACE_ANCESTOR)) {
+                throw new IllegalArgumentException("sharedAttachmentsPageTitle cannot be combined with scope, changedSinceRevision, pipelined publishing or strategy REPLACE_ANCESTOR");
+            }
+
+            List<String> scopePagePaths = scopePagePaths(scope);
+            boolean scopeWithoutChildren = false;
+
+            if (changedSinceRevision != null) {
+                Optional<List<Path>> affectedPages = asciidocPagesStructureProvider.affectedPages(GitChangedFiles.changedFilesSince(asciidocRootFolder.toPath(), changedSinceRevision));
+
+                if (!affectedPages.isPresent()) {
+                    getLog().info("Pages affected by changes since '" + changedSinceRevision + "' cannot be determined, publishing all pages");
+                } else if (affectedPages.get().isEmpty()) {
+                    getLog().info("No pages affected by changes since '" + changedSinceRevision + "', skipping publishing");
+                    if (publishAtEnd) {
+                        publishAtEnd(null);
+                    }
+
+                    return;
+                } else {
+                    scopePagePaths = affectedPages.get().stream().map((page) -> page.toAbsolutePath().normalize().toString()).collect(toList());
+                    scopeWithoutChildren = true;
+                    getLog().info("Publishing " + scopePagePaths.size() + " page(s) affected by changes since '" + changedSinceRevision + "'");
+                }
+            }
+
+            if (publishAtEnd) {
+                ConfluencePublisherMetadata confluencePublisherMetadata = asciidocConfluenceConverter.convert(asciidocPagesStructureProvider, pageTitlePostProcessor, emptyList(), confluencePublisherBuildFolder.toPath(), new Attributes(attributes), scopePagePaths, scopeWithoutChildren);
+                confluencePublisherMetadata.getScope().addAll(scopePageTitles(scope));
+                confluencePublisherMetadata.setPublishStrategy(strategy);
+                confluencePublisherMetadata.getAdditionalTargets().addAll(additionalTargets(additionalTargets));
 
-            ConfluencePublisher confluencePublisher = new ConfluencePublisher(confluencePublisherMetadata, confluenceRestClient, confluencePublisherListener);
-            confluencePublisher.publish();
+                publishAtEnd(new ReactorPublication(project.getId(), confluencePublisherMetadata, journalFile != null ? journalFile.toPath() : null,
+                        new ConfluenceConnection(rootConfluenceUrl, username, password, requestCompressionThreshold, maxRequestsPerSecond), additionalTargetClientFactory));
+
+                return;
+            }
+
+            ConfluenceRestClient confluenceRestClient = new ConfluenceRestClient(rootConfluenceUrl, username, password, requestCompressionThreshold);
+            ConfluenceClient confluenceClient = confluenceClient(confluenceRestClient, maxRequestsPerSecond);
+
+            if (pipelined) {
+                if (scope != null && !scope.isEmpty()) {
+                    throw new IllegalArgumentException("scope is not supported for pipelined publishing");
+                }
+
+                ConfluencePublisherMetadata confluencePublisherMetadata = new ConfluencePublisherMetadata();
+                confluencePublisherMetadata.setSpaceKey(spaceKey);
+                confluencePublisherMetadata.setAncestorId(ancestorId);
+                confluencePublisherMetadata.setPublishStrategy(strategy);
+                confluencePublisherMetadata.getAdditionalTargets().addAll(additionalTargets(additionalTargets));
+
+                ConfluencePublisher confluencePublisher = new ConfluencePublisher(confluencePublisherMetadata, confluenceClient, confluencePublisherListener, journalFile != null ? journalFile.toPath() : null, additionalTargetClientFactory);
+                confluencePublisher.publish((pageSink) -> asciidocConfluenceConverter.convert(asciidocPagesStructureProvider, pageTitlePostProcessor, emptyList(), confluencePublisherBuildFolder.toPath(), new Attributes(attributes), pageSink));
+            } else {
+                ConfluencePublisherMetadata confluencePublisherMetadata = asciidocConfluenceConverter.convert(asciidocPagesStructureProvider, pageTitlePostProcessor, emptyList(), confluencePublisherBuildFolder.toPath(), new Attributes(attributes), scopePagePaths, scopeWithoutChildren);
+                confluencePublisherMetadata.getScope().addAll(scopePageTitles(scope));
+                confluencePublisherMetadata.setPublishStrategy(strategy);
+                confluencePublisherMetadata.getAdditionalTargets().addAll(additionalTargets(additionalTargets));
+
+                ConfluencePublisher confluencePublisher = new ConfluencePublisher(confluencePublisherMetadata, confluenceClient, confluencePublisherListener, journalFile != null ? journalFile.toPath() : null, additionalTargetClientFactory);
+                confluencePublisher.publish();
+            }
+
+            getLog().info("Compressed transport: " + confluenceRestClient.transferStatistics());
         } catch (Exception e) {
             getLog().error("Publishing to Confluence failed: " + e.getMessage());
             throw new MojoExecutionException("Publishing to Confluence failed", e);
         }
     }
 
+    /**
+     * Registers the publication of this project with the other projects of the reactor build using this plugin, and
+     * publishes the publications of all of them concurrently if this project is the last one to register. Projects
+     * connecting to Confluence with the same settings share a client.
+     */
+    private void publishAtEnd(ReactorPublication publication) {
+        Set<String> expectedProjectIds = new HashSet<>(ReactorPublications.projectIdsExecutingGoalWith(session, pluginDescriptor, PUBLISH_GOAL,
+                ReactorPublications.plannedPhases(session, defaultLifecycles), "publishAtEnd"));
+        expectedProjectIds.add(project.getId());
+
+        Set<String> finishedProjectIds = session.getProjects().stream()
+                .filter((reactorProject) -> session.getResult().getBuildSummary(reactorProject) != null)
+                .map(MavenProject::getId)
+                .collect(toSet());
+
+        ReactorPublications<ReactorPublication> reactorPublications = ReactorPublications.forSession(session, expectedProjectIds);
+        Optional<List<ReactorPublication>> allPublications = reactorPublications.register(project.getId(), publication, finishedProjectIds);
+
+        if (!allPublications.isPresent()) {
+            getLog().info("Publishing deferred until all projects of the reactor build are converted");
+            return;
+        }
+
+        Map<ConfluenceConnection, ConfluenceRestClient> confluenceRestClientsByConnection = new LinkedHashMap<>();
+        Map<ConfluenceConnection, ConfluenceClient> confluenceClientsByConnection = new HashMap<>();
+        allPublications.get().forEach((reactorPublication) -> confluenceClientsByConnection.computeIfAbsent(reactorPublication.connection, (connection) -> {
+            ConfluenceRestClient confluenceRestClient = new ConfluenceRestClient(connection.rootConfluenceUrl, connection.username, connection.password, connection.requestCompressionThreshold);
+            confluenceRestClientsByConnection.put(connection, confluenceRestClient);
+
+            return confluenceClient(confluenceRestClient, connection.maxRequestsPerSecond);
+        }));
+
+        getLog().info("Publishing " + allPublications.get().size() + " project(s) of the reactor build");
+        ExecutorService publicationExecutor = newFixedThreadPool(Math.max(1, allPublications.get().size()));
+        try {
+            Map<String, Future<?>> publications = new LinkedHashMap<>();
+            allPublications.get().forEach((reactorPublication) -> publications.put(reactorPublication.projectId, publicationExecutor.submit(() ->
+                    new ConfluencePublisher(reactorPublication.metadata, confluenceClientsByConnection.get(reactorPublication.connection), new LoggingConfluencePublisherListener(getLog()),
+                            reactorPublication.journalFile, reactorPublication.additionalTargetClientFactory).publish())));
+
+            RuntimeException failure = null;
+            for (Map.Entry<String, Future<?>> projectPublication : publications.entrySet()) {
+                try {
+                    awaitPublication(projectPublication.getKey(), projectPublication.getValue());
+                } catch (RuntimeException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            publicationExecutor.shutdownNow();
+        }
+
+        confluenceRestClientsByConnection.forEach((connection, confluenceRestClient) -> getLog().info("Compressed transport to " + connection.rootConfluenceUrl + ": " + confluenceRestClient.transferStatistics()));
+    }
+
+    private static void awaitPublication(String projectId, Future<?> publication) {
+        try {
+            publication.get();
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Could not publish project '" + projectId + "'", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Could not wait for publication of project '" + projectId + "'", e);
+        }
+    }
+
+    private static ConfluenceClient confluenceClient(ConfluenceRestClient confluenceRestClient, Double maxRequestsPerSecond) {
+        ConfluenceClient confluenceClient = confluenceRestClient;
+        if (maxRequestsPerSecond != null) {
+            confluenceClient = new RateLimitingConfluenceClient(confluenceClient, maxRequestsPerSecond);
+        }
+
+        return new CachingConfluenceClient(confluenceClient);
+    }
+
+    private static List<ConfluencePublisherTarget> additionalTargets(List<ConfluencePublisherTarget> additionalTargets) {
+        return additionalTargets == null ? emptyList() : additionalTargets;
+    }
+
+    private static List<String> scopePagePaths(List<String> scope) {
+        return scope == null ? emptyList() : scope.stream().filter(AsciidocConfluencePublisherMojo::isPagePath).collect(toList());
+    }
+
+    private static List<String> scopePageTitles(List<String> scope) {
+        return scope == null ? emptyList() : scope.stream().filter((scopeEntry) -> !isPagePath(scopeEntry)).collect(toList());
+    }
+
+    private static boolean isPagePath(String scopeEntry) {
+        return scopeEntry.endsWith(".adoc");
+    }
+
+    private AsciidocPagesStructureProvider asciidocPagesStructureProvider() {
+        switch (providerType) {
+            case INCLUDE:
+                IncludeBasedAsciidocPagesStructureProviderListener providerListener = new LoggingIncludeBasedAsciidocPagesStructureProviderListener(getLog());
+                return new IncludeBasedAsciidocPagesStructureProvider(asciidocRootFolder.toPath(), confluencePublisherBuildFolder.toPath().resolve("preprocessed"), attributes, Charset.forName(sourceEncoding), providerListener, new IncludeGraph(), parallelPreprocessing);
+            case FOLDER:
+                return new FolderBasedAsciidocPagesStructureProvider(asciidocRootFolder.toPath(), Charset.forName(sourceEncoding), includes, excludes);
+            default:
+                throw new IllegalStateException("Invalid provider type defined: " + providerType);
+        }
+    }
+
     private static enum AsciidocPagesStructureProviderType {
         INCLUDE,
         FOLDER
     }
 
+    private static class ReactorPublication {
+
+        private final String projectId;
+        private final ConfluencePublisherMetadata metadata;
+        private final Path journalFile;
+        private final ConfluenceConnection connection;
+        private final Function<ConfluencePublisherTarget, ConfluenceClient> additionalTargetClientFactory;
+
+        ReactorPublication(String projectId, ConfluencePublisherMetadata metadata, Path journalFile, ConfluenceConnection connection, Function<ConfluencePublisherTarget, ConfluenceClient> additionalTargetClientFactory) {
+            this.projectId = projectId;
+            this.metadata = metadata;
+            this.journalFile = journalFile;
+            this.connection = connection;
+            this.additionalTargetClientFactory = additionalTargetClientFactory;
+        }
+
+    }
+
+    private static class ConfluenceConnection {
+
+        private final String rootConfluenceUrl;
+        private final String username;
+        private final String password;
+        private final int requestCompressionThreshold;
+        private final Double maxRequestsPerSecond;
+
+        ConfluenceConnection(String rootConfluenceUrl, String username, String password, int requestCompressionThreshold, Double maxRequestsPerSecond) {
+            this.rootConfluenceUrl = rootConfluenceUrl;
+            this.username = username;
+            this.password = password;
+            this.requestCompressionThreshold = requestCompressionThreshold;
+            this.maxRequestsPerSecond = maxRequestsPerSecond;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+
+            if (!(other instanceof ConfluenceConnection)) {
+                return false;
+            }
+
+            ConfluenceConnection that = (ConfluenceConnection) other;
+
+            return Objects.equals(this.rootConfluenceUrl, that.rootConfluenceUrl)
+                    && Objects.equals(this.username, that.username)
+                    && Objects.equals(this.password, that.password)
+                    && this.requestCompressionThreshold == that.requestCompressionThreshold
+                    && Objects.equals(this.maxRequestsPerSecond, that.maxRequestsPerSecond);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.rootConfluenceUrl, this.username, this.password, this.requestCompressionThreshold, this.maxRequestsPerSecond);
+        }
+
+    }
+
     private static class LoggingConfluencePublisherListener implements ConfluencePublisherListener {
 
         private Log log;
@@ -147,6 +465,11 @@ public class AsciidocConfluencePublisherMojo extends AbstractMojo {
             log.info("Deleted page '" + deletedPage.getTitle() + "' (id " + deletedPage.getContentId() + ")");
         }
 
+        @Override
+        public void deletionProgress(int deletedPages, int pagesToDelete) {
+            log.info("Deleted " + deletedPages + " of " + pagesToDelete + " pages");
+        }
+
         @Override
         public void publishCompleted() {
             log.info("Publishing was succesfully completed!");
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.sahli.asciidoc.confluence.publisher.maven.plugin;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.lifecycle.DefaultLifecycles;
+import org.apache.maven.lifecycle.Lifecycle;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Collects the publications of the projects of a build (e.g. the modules of a Maven reactor build), so that they can be
+ * published together once every expected project has registered its publication. Thread-safe, as projects may be
+ * built concurrently.
+ */
+final class ReactorPublications<T> {
+
+    private static final String CLI_EXECUTION_ID = "default-cli";
+
+    private static final Map<Object, ReactorPublications<?>> PUBLICATIONS_BY_BUILD = new WeakHashMap<>();
+
+    private final Set<String> pendingProjectIds;
+    private final List<T> publications = new ArrayList<>();
+
+    private ReactorPublications(Collection<String> expectedProjectIds) {
+        this.pendingProjectIds = new HashSet<>(expectedProjectIds);
+    }
+
+    /**
+     * Returns the publications of the given build, expecting publications from the given projects. The build is only
+     * referenced weakly, so that the publications of finished builds are discarded.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> ReactorPublications<T> forBuild(Object build, Collection<String> expectedProjectIds) {
+        synchronized (PUBLICATIONS_BY_BUILD) {
+            return (ReactorPublications<T>) PUBLICATIONS_BY_BUILD.computeIfAbsent(build, (ignored) -> new ReactorPublications<>(expectedProjectIds));
+        }
+    }
+
+    /**
+     * Returns the publications of the build of the given session, expecting publications from the given projects. The
+     * publications are kept per build rather than per session, as Maven hands a copy of the session to each project
+     * built concurrently.
+     */
+    static <T> ReactorPublications<T> forSession(MavenSession session, Collection<String> expectedProjectIds) {
+        return forBuild(session.getRequest(), expectedProjectIds);
+    }
+
+    /**
+     * Returns the ids of the projects of the given session that will execute the given goal of the given plugin with
+     * the given boolean parameter enabled, either because the goal has been invoked directly or because it is bound
+     * to an execution of the plugin in a planned phase of the project.
+     */
+    static Set<String> projectIdsExecutingGoalWith(MavenSession session, PluginDescriptor pluginDescriptor, String goal, Set<String> plannedPhases, String parameter) {
+        boolean goalInvokedDirectly = session.getGoals().stream().anyMatch((invokedGoal) -> invokedGoal.equals(pluginDescriptor.getGoalPrefix() + ":" + goal)
+                || invokedGoal.equals(pluginDescriptor.getPluginLookupKey() + ":" + goal)
+                || invokedGoal.equals(pluginDescriptor.getPluginLookupKey() + ":" + pluginDescriptor.getVersion() + ":" + goal));
+
+        return session.getProjects().stream()
+                .filter((project) -> (goalInvokedDirectly && invokesGoalWith(session, project, pluginDescriptor, parameter))
+                        || executesGoalWith(session, project, pluginDescriptor, goal, plannedPhases, parameter))
+                .map(MavenProject::getId)
+                .collect(toSet());
+    }
+
+    private static boolean invokesGoalWith(MavenSession session, MavenProject project, PluginDescriptor pluginDescriptor, String parameter) {
+        Plugin plugin = plugin(project, pluginDescriptor);
+        if (plugin == null) {
+            return false;
+        }
+
+        PluginExecution cliExecution = plugin.getExecutionsAsMap().get(CLI_EXECUTION_ID);
+
+        return isEnabled(session, project, plugin, cliExecution, parameter);
+    }
+
+    private static boolean executesGoalWith(MavenSession session, MavenProject project, PluginDescriptor pluginDescriptor, String goal, Set<String> plannedPhases, String parameter) {
+        Plugin plugin = project.getPlugin(pluginDescriptor.getPluginLookupKey());
+        if (plugin == null) {
+            return false;
+        }
+
+        return plugin.getExecutions().stream()
+                .filter((execution) -> execution.getGoals().contains(goal) && plannedPhases.contains(execution.getPhase()))
+                .anyMatch((execution) -> isEnabled(session, project, plugin, execution, parameter));
+    }
+
+    private static Plugin plugin(MavenProject project, PluginDescriptor pluginDescriptor) {
+        Plugin plugin = project.getPlugin(pluginDescriptor.getPluginLookupKey());
+        if (plugin == null && project.getPluginManagement() != null) {
+            plugin = project.getPluginManagement().getPluginsAsMap().get(pluginDescriptor.getPluginLookupKey());
+        }
+
+        return plugin;
+    }
+
+    private static boolean isEnabled(MavenSession session, MavenProject project, Plugin plugin, PluginExecution execution, String parameter) {
+        String value = execution != null ? parameterValue(execution.getConfiguration(), parameter) : null;
+        if (value == null) {
+            value = parameterValue(plugin.getConfiguration(), parameter);
+        }
+
+        if (value != null && value.startsWith("${") && value.endsWith("}")) {
+            String property = value.substring(2, value.length() - 1);
+            value = session.getUserProperties().getProperty(property, project.getProperties().getProperty(property, session.getSystemProperties().getProperty(property)));
+        }
+
+        return Boolean.parseBoolean(value != null ? value.trim() : null);
+    }
+
+    private static String parameterValue(Object configuration, String parameter) {
+        if (!(configuration instanceof Xpp3Dom)) {
+            return null;
+        }
+
+        Xpp3Dom parameterConfiguration = ((Xpp3Dom) configuration).getChild(parameter);
+
+        return parameterConfiguration != null ? parameterConfiguration.getValue() : null;
+    }
+
+    /**
+     * Returns the phases of the standard lifecycles reached by the given session, i.e. every phase up to each phase
+     * invoked on the command line.
+     */
+    static Set<String> plannedPhases(MavenSession session, DefaultLifecycles defaultLifecycles) {
+        Set<String> plannedPhases = new HashSet<>();
+        session.getGoals().forEach((invokedGoal) -> {
+            Lifecycle lifecycle = defaultLifecycles.getPhaseToLifecycleMap().get(invokedGoal);
+            if (lifecycle != null) {
+                plannedPhases.addAll(lifecycle.getPhases().subList(0, lifecycle.getPhases().indexOf(invokedGoal) + 1));
+            }
+        });
+
+        return plannedPhases;
+    }
+
+    /**
+     * Registers the publication of the given project ({@code null} if the project has nothing to publish). Once the last
+     * expected project has registered, returns the publications of all projects in registration order, otherwise
+     * returns nothing. Fails if an expected project is among the given finished projects without having registered,
+     * as the publications would never be published otherwise.
+     */
+    synchronized Optional<List<T>> register(String projectId, T publication, Set<String> finishedProjectIds) {
+        if (publication != null) {
+            this.publications.add(publication);
+        }
+
+        if (!this.pendingProjectIds.remove(projectId)) {
+            return Optional.empty();
+        }
+
+        Set<String> unregisteredProjectIds = new TreeSet<>(this.pendingProjectIds);
+        unregisteredProjectIds.retainAll(finishedProjectIds);
+        if (!unregisteredProjectIds.isEmpty()) {
+            throw new IllegalStateException("Could not publish at end of build, as projects " + unregisteredProjectIds + " finished without registering their publication");
+        }
+
+        if (!this.pendingProjectIds.isEmpty()) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new ArrayList<>(this.publications));
+    }
+
+}
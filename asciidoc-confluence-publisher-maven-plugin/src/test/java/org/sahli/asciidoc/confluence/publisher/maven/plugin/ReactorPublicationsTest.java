@@ -0,0 +1,220 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.sahli.asciidoc.confluence.publisher.maven.plugin;
+
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.rules.ExpectedException.none;
+
+public class ReactorPublicationsTest {
+
+    @Rule
+    public final ExpectedException expectedException = none();
+
+    @Test
+    public void register_withPendingProjects_returnsNoPublications() {
+        // arrange
+        ReactorPublications<String> reactorPublications = ReactorPublications.forBuild(new Object(), asList("module-a", "module-b"));
+
+        // act
+        Optional<List<String>> publications = reactorPublications.register("module-a", "publication-a", emptySet());
+
+        // assert
+        assertThat(publications.isPresent(), is(false));
+    }
+
+    @Test
+    public void register_lastExpectedProject_returnsPublicationsOfAllProjectsInRegistrationOrder() {
+        // arrange
+        ReactorPublications<String> reactorPublications = ReactorPublications.forBuild(new Object(), asList("module-a", "module-b", "module-c"));
+        reactorPublications.register("module-b", "publication-b", emptySet());
+        reactorPublications.register("module-c", null, emptySet());
+
+        // act
+        Optional<List<String>> publications = reactorPublications.register("module-a", "publication-a", emptySet());
+
+        // assert
+        assertThat(publications.get(), contains("publication-b", "publication-a"));
+    }
+
+    @Test
+    public void forBuild_calledRepeatedlyForSameBuild_returnsSamePublications() {
+        // arrange
+        Object build = new Object();
+        ReactorPublications<String> reactorPublications = ReactorPublications.forBuild(build, asList("module-a", "module-b"));
+
+        // act
+        ReactorPublications<String> sameReactorPublications = ReactorPublications.forBuild(build, asList("module-a", "module-b"));
+
+        // assert
+        assertThat(sameReactorPublications, is(sameInstance(reactorPublications)));
+    }
+
+    @Test
+    public void forSession_calledWithCopiesOfSameSession_returnsSamePublications() {
+        // arrange
+        MavenSession session = mavenSession(emptyList(), project("module-a"), project("module-b"));
+        MavenSession sessionCopy = session.clone();
+
+        // act
+        ReactorPublications<String> reactorPublications = ReactorPublications.forSession(session, asList("module-a", "module-b"));
+        ReactorPublications<String> sameReactorPublications = ReactorPublications.forSession(sessionCopy, asList("module-a", "module-b"));
+
+        // assert
+        assertThat(sameReactorPublications, is(sameInstance(reactorPublications)));
+    }
+
+    @Test
+    public void register_withExpectedProjectFinishedWithoutRegistering_throwsException() {
+        // arrange
+        ReactorPublications<String> reactorPublications = ReactorPublications.forBuild(new Object(), asList("module-a", "module-b", "module-c"));
+
+        // assert
+        this.expectedException.expect(IllegalStateException.class);
+        this.expectedException.expectMessage("[module-b]");
+
+        // act
+        reactorPublications.register("module-a", "publication-a", new HashSet<>(asList("module-a", "module-b")));
+    }
+
+    @Test
+    public void projectIdsExecutingGoalWith_withGoalBoundInSomeProjects_returnsIdsOfProjectsExecutingGoalWithParameterInPlannedPhaseOnly() {
+        // arrange
+        MavenProject projectExecutingGoal = project("module-a", "publish", "deploy", "true");
+        MavenProject projectExecutingOtherGoal = project("module-b", "other", "deploy", "true");
+        MavenProject projectWithoutPlugin = project("module-c");
+        MavenProject projectExecutingGoalInUnplannedPhase = project("module-d", "publish", "site-deploy", "true");
+        MavenSession session = mavenSession(singletonList("deploy"), projectExecutingGoal, projectExecutingOtherGoal, projectWithoutPlugin, projectExecutingGoalInUnplannedPhase);
+
+        // act
+        Set<String> projectIds = ReactorPublications.projectIdsExecutingGoalWith(session, pluginDescriptor(), "publish", new HashSet<>(asList("install", "deploy")), "publishAtEnd");
+
+        // assert
+        assertThat(projectIds, contains(projectExecutingGoal.getId()));
+    }
+
+    @Test
+    public void projectIdsExecutingGoalWith_withProjectExecutingGoalWithoutParameter_returnsIdsOfOtherProjectsOnly() {
+        // arrange
+        MavenProject projectPublishingAtEnd = project("module-a", "publish", "deploy", "true");
+        MavenProject projectPublishingImmediately = project("module-b", "publish", "deploy", null);
+        MavenSession session = mavenSession(singletonList("deploy"), projectPublishingAtEnd, projectPublishingImmediately);
+
+        // act
+        Set<String> projectIds = ReactorPublications.projectIdsExecutingGoalWith(session, pluginDescriptor(), "publish", singleton("deploy"), "publishAtEnd");
+
+        // assert
+        assertThat(projectIds, contains(projectPublishingAtEnd.getId()));
+    }
+
+    @Test
+    public void projectIdsExecutingGoalWith_withGoalInvokedDirectly_returnsIdsOfAllProjectsConfiguringParameter() {
+        // arrange
+        MavenProject projectA = project("module-a", "publish", null, "true");
+        MavenProject projectB = project("module-b", "publish", null, "true");
+        MavenProject projectWithoutPlugin = project("module-c");
+        MavenSession session = mavenSession(singletonList("asciidoc-confluence-publisher:publish"), projectA, projectB, projectWithoutPlugin);
+
+        // act
+        Set<String> projectIds = ReactorPublications.projectIdsExecutingGoalWith(session, pluginDescriptor(), "publish", emptySet(), "publishAtEnd");
+
+        // assert
+        assertThat(projectIds, containsInAnyOrder(projectA.getId(), projectB.getId()));
+    }
+
+    private static MavenSession mavenSession(List<String> goals, MavenProject... projects) {
+        MavenExecutionRequest request = new DefaultMavenExecutionRequest();
+        request.setGoals(goals);
+
+        return new MavenSession(null, request, new DefaultMavenExecutionResult(), asList(projects));
+    }
+
+    private static MavenProject project(String artifactId) {
+        MavenProject project = new MavenProject();
+        project.setGroupId("org.example");
+        project.setArtifactId(artifactId);
+        project.setVersion("1.0.0");
+        project.setBuild(new Build());
+
+        return project;
+    }
+
+    private static MavenProject project(String artifactId, String goal, String phase, String publishAtEnd) {
+        MavenProject project = project(artifactId);
+
+        PluginExecution pluginExecution = new PluginExecution();
+        pluginExecution.setGoals(singletonList(goal));
+        pluginExecution.setPhase(phase);
+
+        Plugin plugin = new Plugin();
+        plugin.setGroupId("org.sahli.asciidoc.confluence.publisher");
+        plugin.setArtifactId("asciidoc-confluence-publisher-maven-plugin");
+        plugin.addExecution(pluginExecution);
+
+        if (publishAtEnd != null) {
+            Xpp3Dom publishAtEndConfiguration = new Xpp3Dom("publishAtEnd");
+            publishAtEndConfiguration.setValue(publishAtEnd);
+
+            Xpp3Dom configuration = new Xpp3Dom("configuration");
+            configuration.addChild(publishAtEndConfiguration);
+            plugin.setConfiguration(configuration);
+        }
+
+        project.getBuild().addPlugin(plugin);
+
+        return project;
+    }
+
+    private static PluginDescriptor pluginDescriptor() {
+        PluginDescriptor pluginDescriptor = new PluginDescriptor();
+        pluginDescriptor.setGroupId("org.sahli.asciidoc.confluence.publisher");
+        pluginDescriptor.setArtifactId("asciidoc-confluence-publisher-maven-plugin");
+        pluginDescriptor.setVersion("1.0.0");
+        pluginDescriptor.setGoalPrefix("asciidoc-confluence-publisher");
+
+        return pluginDescriptor;
+    }
+
+}